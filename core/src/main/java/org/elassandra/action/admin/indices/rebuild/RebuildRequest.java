@@ -33,6 +33,7 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 public class RebuildRequest extends BroadcastRequest<RebuildRequest> {
 
     int numThreads = 1;
+    int rangeSplits = 0;    // 0 to rebuild with cassandra, otherwise number of token sub-ranges rebuilt in parallel
     
     public RebuildRequest() {
     }
@@ -49,21 +50,32 @@ public class RebuildRequest extends BroadcastRequest<RebuildRequest> {
         this.numThreads = numThreads;
     }
 
+    public int rangeSplits() {
+        return rangeSplits;
+    }
+
+    public void rangeSplits(int rangeSplits) {
+        this.rangeSplits = rangeSplits;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeInt(numThreads);
+        out.writeInt(rangeSplits);
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         numThreads = in.readInt();
+        rangeSplits = in.readInt();
     }
 
     @Override
     public String toString() {
         return "RebuildRequest{" +
-                "numThreads=" + numThreads + "}";
+                "numThreads=" + numThreads + 
+                ", rangeSplits=" + rangeSplits + "}";
     }
 }
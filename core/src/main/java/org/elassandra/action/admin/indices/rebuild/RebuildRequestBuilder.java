@@ -30,4 +30,9 @@ public class RebuildRequestBuilder extends BroadcastOperationRequestBuilder<Rebu
         request.numThreads(numThread);
         return this;
     }
+    
+    public RebuildRequestBuilder setRangeSplits(int rangeSplits) {
+        request.rangeSplits(rangeSplits);
+        return this;
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elassandra.action.admin.indices.rebuild;
+
+import org.elassandra.index.TokenRangeIndexRebuilder;
+import org.elasticsearch.action.support.replication.ReplicationTask;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Task of a shard rebuild, reporting the progress of each token range rebuilt in parallel.
+ */
+public class RebuildTask extends ReplicationTask {
+
+    private final List<TokenRangeIndexRebuilder> rebuilders = new CopyOnWriteArrayList<>();
+
+    public RebuildTask(long id, String type, String action, String description, TaskId parentTaskId) {
+        super(id, type, action, description, parentTaskId);
+    }
+
+    public void addRebuilder(TokenRangeIndexRebuilder rebuilder) {
+        rebuilders.add(rebuilder);
+    }
+
+    @Override
+    public Task.Status getStatus() {
+        List<RangeStatus> ranges = new ArrayList<>();
+        for (TokenRangeIndexRebuilder rebuilder : rebuilders) {
+            for (TokenRangeIndexRebuilder.RangeProgress progress : rebuilder.ranges()) {
+                ranges.add(new RangeStatus(rebuilder.table(),
+                        (Long) progress.range().left.getTokenValue(), (Long) progress.range().right.getTokenValue(),
+                        progress.partitions(), progress.rows(), progress.done()));
+            }
+        }
+        return new Status(getPhase(), ranges);
+    }
+
+    public static class RangeStatus implements Writeable, ToXContent {
+        private final String table;
+        private final long start;
+        private final long end;
+        private final long partitions;
+        private final long rows;
+        private final boolean done;
+
+        public RangeStatus(String table, long start, long end, long partitions, long rows, boolean done) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+            this.partitions = partitions;
+            this.rows = rows;
+            this.done = done;
+        }
+
+        public RangeStatus(StreamInput in) throws IOException {
+            table = in.readString();
+            start = in.readLong();
+            end = in.readLong();
+            partitions = in.readVLong();
+            rows = in.readVLong();
+            done = in.readBoolean();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(table);
+            out.writeLong(start);
+            out.writeLong(end);
+            out.writeVLong(partitions);
+            out.writeVLong(rows);
+            out.writeBoolean(done);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("table", table);
+            builder.field("start", start);
+            builder.field("end", end);
+            builder.field("partitions", partitions);
+            builder.field("rows", rows);
+            builder.field("done", done);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    public static class Status implements Task.Status {
+        public static final String NAME = "rebuild";
+
+        private final String phase;
+        private final List<RangeStatus> ranges;
+
+        public Status(String phase, List<RangeStatus> ranges) {
+            this.phase = phase;
+            this.ranges = ranges;
+        }
+
+        public Status(StreamInput in) throws IOException {
+            phase = in.readString();
+            ranges = in.readList(RangeStatus::new);
+        }
+
+        @Override
+        public String getWriteableName() {
+            return NAME;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            long partitions = 0, rows = 0, completed = 0;
+            for (RangeStatus range : ranges) {
+                partitions += range.partitions;
+                rows += range.rows;
+                if (range.done)
+                    completed++;
+            }
+            builder.startObject();
+            builder.field("phase", phase);
+            builder.field("total_ranges", ranges.size());
+            builder.field("completed_ranges", completed);
+            builder.field("partitions", partitions);
+            builder.field("rows", rows);
+            builder.startArray("ranges");
+            for (RangeStatus range : ranges)
+                range.toXContent(builder, params);
+            builder.endArray();
+            builder.endObject();
+            return builder;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(phase);
+            out.writeList(ranges);
+        }
+
+        @Override
+        public String toString() {
+            return Strings.toString(this);
+        }
+    }
+}
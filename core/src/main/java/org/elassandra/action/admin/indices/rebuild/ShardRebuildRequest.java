@@ -6,10 +6,13 @@ import org.elasticsearch.action.support.replication.ReplicationRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
 
 public class ShardRebuildRequest extends ReplicationRequest<ShardRebuildRequest> {
 
     private RebuildRequest request = new RebuildRequest();
+    private volatile RebuildTask task;  // task of the shard operation on this node
 
     public ShardRebuildRequest(RebuildRequest request, ShardId shardId) {
         super(shardId);
@@ -23,6 +26,16 @@ public class ShardRebuildRequest extends ReplicationRequest<ShardRebuildRequest>
         return request;
     }
 
+    RebuildTask getTask() {
+        return task;
+    }
+
+    @Override
+    public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+        this.task = new RebuildTask(id, type, action, getDescription(), parentTaskId);
+        return this.task;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
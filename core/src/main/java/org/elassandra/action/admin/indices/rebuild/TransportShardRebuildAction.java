@@ -19,8 +19,13 @@ package org.elassandra.action.admin.indices.rebuild;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.index.Index;
 import org.apache.cassandra.schema.IndexMetadata;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elassandra.index.TokenRangeIndexRebuilder;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.replication.ReplicationResponse;
 import org.elasticsearch.action.support.replication.TransportReplicationAction;
@@ -31,6 +36,7 @@ import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.indices.IndicesService;
@@ -40,6 +46,8 @@ import org.elasticsearch.transport.TransportService;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -84,15 +92,57 @@ public class TransportShardRebuildAction extends TransportReplicationAction<Shar
             }
         }
         
-        // Cassandra flush and rebuild_index for all mapped tables.
-        StorageService.instance.forceKeyspaceFlush(indexService.keyspace(), tables.toArray(new String[tables.size()]));
-        for(int i=0; i < tables.size(); i++)
-            StorageService.instance.rebuildSecondaryIndex(shardRequest.getRequest().numThreads(), indexService.keyspace(), tables.get(i), indexes.get(i));
+        if (shardRequest.getRequest().rangeSplits() > 0) {
+            rebuildTokenRanges(shardRequest, primary, indexService.keyspace(), tables, indexes);
+            primary.refresh("rebuild");
+        } else {
+            // Cassandra flush and rebuild_index for all mapped tables.
+            StorageService.instance.forceKeyspaceFlush(indexService.keyspace(), tables.toArray(new String[tables.size()]));
+            for(int i=0; i < tables.size(); i++)
+                StorageService.instance.rebuildSecondaryIndex(shardRequest.getRequest().numThreads(), indexService.keyspace(), tables.get(i), indexes.get(i));
+        }
         
         logger.trace("index=[{}] rebuild request executed on keyspace=[{}] tables={} with numThreads={}", shardRequest.shardId().getIndex(), indexService.mapperService().keyspace(), tables, shardRequest.getRequest().numThreads());
         return new PrimaryResult(shardRequest, new ReplicationResponse());
     }
 
+    /**
+     * Rebuild the elastic secondary indices by scanning token sub-ranges in parallel, progress is reported by the {@link RebuildTask}.
+     */
+    private void rebuildTokenRanges(ShardRebuildRequest shardRequest, IndexShard primary, String keyspace, List<String> tables, List<String> indexes) throws IOException {
+        final RebuildTask task = shardRequest.getTask();
+        final List<TokenRangeIndexRebuilder> rebuilders = new ArrayList<>(indexes.size());
+        for(int i=0; i < indexes.size(); i++) {
+            Index index = Keyspace.open(keyspace).getColumnFamilyStore(tables.get(i)).indexManager.getIndexByName(indexes.get(i));
+            if (index instanceof ElasticSecondaryIndex) {
+                TokenRangeIndexRebuilder rebuilder = new TokenRangeIndexRebuilder((ElasticSecondaryIndex) index, shardRequest.getRequest().rangeSplits());
+                rebuilders.add(rebuilder);
+                if (task != null)
+                    task.addRebuilder(rebuilder);
+            }
+        }
+        
+        final ExecutorService executor = EsExecutors.newFixed("rebuild", Math.max(1, shardRequest.getRequest().numThreads()), -1, 
+                EsExecutors.daemonThreadFactory(settings, "rebuild"), threadPool.getThreadContext());
+        try {
+            for(int i=0; i < rebuilders.size(); i++) {
+                if (task != null)
+                    task.setPhase("rebuilding " + rebuilders.get(i).table());
+                rebuilders.get(i).rebuild(executor);
+                // with asynchronous_indexing, rebuilt documents are applied by the shard queue.
+                primary.secondaryIndexingQueue().drain();
+                SystemKeyspace.setIndexBuilt(keyspace, indexes.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     @Override
     protected ReplicaResult shardOperationOnReplica(ShardRebuildRequest request, IndexShard replica) {
         return new ReplicaResult();
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.action.bulk;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Cassandra mutations of the index items of a shard bulk request, merged by keyspace and partition key, and written 
+ * partition by partition with {@link StorageProxy#mutateWithTriggers}, at most maxConcurrentWrites partitions at a time.
+ * <p>
+ * Each partition is written by its own call, so that a failed write only fails the items of its partition.
+ */
+public class BulkMutations {
+
+    private static final class PartitionMutations {
+        final List<Mutation> mutations = new ArrayList<>(1);
+        final List<Integer> items = new ArrayList<>(1);
+    }
+
+    private final int maxConcurrentWrites;
+    private final ExecutorService executor;
+    private final Map<ConsistencyLevel, Map<Pair<String, DecoratedKey>, PartitionMutations>> pending = new EnumMap<>(ConsistencyLevel.class);
+    private int size = 0;
+
+    /**
+     * @param executor runs the partition writes, must not be the executor of the calling thread, which waits for them.
+     */
+    public BulkMutations(int maxConcurrentWrites, ExecutorService executor) {
+        if (maxConcurrentWrites < 1)
+            throw new IllegalArgumentException("Number of concurrent writes must be greater than 0");
+        this.maxConcurrentWrites = maxConcurrentWrites;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the number of buffered items.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Buffer the mutation of a bulk item, merged with the mutations of the same partition written with the same consistency level.
+     */
+    public void add(int item, Mutation mutation, ConsistencyLevel cl) {
+        PartitionMutations partition = pending.computeIfAbsent(cl, k -> new LinkedHashMap<>())
+                .computeIfAbsent(Pair.create(mutation.getKeyspaceName(), mutation.key()), k -> new PartitionMutations());
+        partition.mutations.add(mutation);
+        partition.items.add(item);
+        size++;
+    }
+
+    /**
+     * Write the buffered mutations and clear the buffer.
+     * @return the failure of each failed item.
+     */
+    public Map<Integer, Exception> flush() {
+        final Map<Integer, Exception> failures = new HashMap<>();
+        for (Map.Entry<ConsistencyLevel, Map<Pair<String, DecoratedKey>, PartitionMutations>> entry : pending.entrySet()) {
+            final ConsistencyLevel cl = entry.getKey();
+            final List<PartitionMutations> partitions = new ArrayList<>(entry.getValue().values());
+            for (int from = 0; from < partitions.size(); from += maxConcurrentWrites) {
+                final List<PartitionMutations> group = partitions.subList(from, Math.min(partitions.size(), from + maxConcurrentWrites));
+                final List<Future<?>> writes = new ArrayList<>(group.size());
+                for (PartitionMutations partition : group) {
+                    final Mutation mutation = partition.mutations.size() == 1 ? partition.mutations.get(0) : Mutation.merge(partition.mutations);
+                    writes.add(executor.submit(() -> {
+                        StorageProxy.mutateWithTriggers(Collections.singletonList(mutation), cl, false, System.nanoTime());
+                        return null;
+                    }));
+                }
+                for (int i = 0; i < group.size(); i++) {
+                    Exception failure = null;
+                    try {
+                        writes.get(i).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failure = e;
+                    } catch (ExecutionException e) {
+                        failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                    }
+                    if (failure != null)
+                        for (Integer item : group.get(i).items)
+                            failures.put(item, failure);
+                }
+            }
+        }
+        pending.clear();
+        size = 0;
+        return failures;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.Slice;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.index.mapper.UidFieldMapper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * Matches the documents of a query having a clustering key in a cassandra slice, when the slice cannot be translated
+ * into an exact lucene query. The clustering key is decoded from the stored _uid of the documents matching the query,
+ * so that a range tombstone can be buffered as an index writer delete instead of a refresh and a search.
+ */
+public class ClusteringSliceQuery extends Query {
+
+    private final Query query;
+    private final Slice slice;
+    private final ClusteringComparator comparator;
+    private final CheckedFunction<String, Clustering, IOException> clustering;  // _uid to clustering key, null for a static document
+
+    public ClusteringSliceQuery(Query query, Slice slice, ClusteringComparator comparator, CheckedFunction<String, Clustering, IOException> clustering) {
+        this.query = query;
+        this.slice = slice;
+        this.comparator = comparator;
+        this.clustering = clustering;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        final Weight queryWeight = searcher.createNormalizedWeight(query, false);
+        return new ConstantScoreWeight(this) {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                final Scorer s = queryWeight.scorer(context);
+                if (s == null) {
+                    return null;
+                }
+                final DocIdSetIterator approximation = s.iterator();
+                final TwoPhaseIterator twoPhaseIterator = new TwoPhaseIterator(approximation) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        final String uid = context.reader().document(approximation.docID(), Collections.singleton(UidFieldMapper.NAME)).get(UidFieldMapper.NAME);
+                        final Clustering c = (uid == null) ? null : clustering.apply(uid);
+                        return c != null && slice.includes(comparator, c);
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        // a stored field read per candidate document.
+                        return 100.0f;
+                    }
+                };
+                return new ConstantScoreScorer(this, score(), twoPhaseIterator);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (sameClassAs(o) == false) return false;
+        ClusteringSliceQuery other = (ClusteringSliceQuery) o;
+        return query.equals(other.query) && slice.equals(other.slice) && clustering == other.clustering;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + Objects.hash(query, slice);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "ClusteringSliceQuery(" + query.toString(field) + ", " + slice.toString(comparator) + ")";
+    }
+}
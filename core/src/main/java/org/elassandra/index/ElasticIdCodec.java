@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import com.google.common.net.InetAddresses;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Encode and decode the elasticsearch _id of a document from the values of the cassandra primary key columns.
+ * <p>
+ * A single column key is the string value of the column. A composite key is a JSON array of the column values,
+ * where text, uuid, inet and blob values are quoted strings, timestamps are milliseconds since epoch and
+ * other values are written as is. The produced _id is exactly the one previously produced with Jackson, and
+ * the decoder accepts any JSON array of scalars, so existing indices are read and written unchanged.
+ */
+public final class ElasticIdCodec {
+
+    private static final char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
+
+    private ElasticIdCodec() {
+    }
+
+    /**
+     * Build the _id from the first length values, or the single value when the key has only one column.
+     */
+    public static String encode(Object[] cols, int length) {
+        if (cols.length == 1)
+            return toIdValue(cols[0]).toString();
+
+        StringBuilder sb = new StringBuilder(16 * length);
+        sb.append('[');
+        for (int i = 0; i < length; i++) {
+            if (i > 0)
+                sb.append(',');
+            Object val = toIdValue(cols[i]);
+            if (val instanceof String) {
+                appendQuoted(sb, (String) val);
+            } else {
+                sb.append(val);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Convert a column value to its _id representation, a String or a value written with toString().
+     */
+    public static Object toIdValue(Object o) {
+        if (o instanceof UUID)
+            return o.toString();
+        if (o instanceof Date)
+            return ((Date) o).getTime();
+        if (o instanceof ByteBuffer)
+            // encode byte[] as Base64 encoded string
+            return Base64.getEncoder().encodeToString(ByteBufferUtil.getArray((ByteBuffer) o));
+        if (o instanceof InetAddress)
+            return InetAddresses.toAddrString((InetAddress) o);
+        return o;
+    }
+
+    /**
+     * Append a JSON quoted and escaped string.
+     */
+    public static StringBuilder appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\b': sb.append("\\b"); break;
+            case '\f': sb.append("\\f"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00").append(HEX_CHARS[c >> 4]).append(HEX_CHARS[c & 0xF]);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * @return true if the _id is a JSON array of the primary key values.
+     */
+    public static boolean isComposite(String id) {
+        return id.length() > 1 && id.charAt(0) == '[' && id.charAt(id.length() - 1) == ']';
+    }
+
+    /**
+     * Decode a composite _id into the string representation of its elements, unescaped strings or number and boolean literals.
+     * @throws IllegalArgumentException if the _id is not a JSON array of scalar values.
+     */
+    public static String[] decode(String id) {
+        Parser parser = new Parser(id);
+        return parser.parse();
+    }
+
+    static final class Parser {
+        private final String s;
+        private int pos;
+        private String[] elements = new String[4];
+        private int count = 0;
+        private StringBuilder sb;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        String[] parse() {
+            skipWhitespaces();
+            expect('[');
+            skipWhitespaces();
+            if (peek() == ']') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespaces();
+                    add(peek() == '"' ? string() : literal());
+                    skipWhitespaces();
+                    char c = next();
+                    if (c == ']')
+                        break;
+                    if (c != ',')
+                        throw error("expecting ',' or ']'");
+                }
+            }
+            skipWhitespaces();
+            if (pos != s.length())
+                throw error("unexpected trailing characters");
+            if (count == elements.length)
+                return elements;
+            String[] result = new String[count];
+            System.arraycopy(elements, 0, result, 0, count);
+            return result;
+        }
+
+        private void add(String element) {
+            if (count == elements.length) {
+                String[] grown = new String[count * 2];
+                System.arraycopy(elements, 0, grown, 0, count);
+                elements = grown;
+            }
+            elements[count++] = element;
+        }
+
+        private String string() {
+            expect('"');
+            int start = pos;
+            // fast path for strings without escape
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == '"') {
+                    return s.substring(start, pos++);
+                }
+                if (c == '\\')
+                    break;
+                pos++;
+            }
+            if (sb == null)
+                sb = new StringBuilder();
+            sb.setLength(0);
+            sb.append(s, start, pos);
+            while (true) {
+                char c = next();
+                if (c == '"')
+                    return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                case '"':
+                case '\\':
+                case '/':  sb.append(c); break;
+                case 'b':  sb.append('\b'); break;
+                case 'f':  sb.append('\f'); break;
+                case 'n':  sb.append('\n'); break;
+                case 'r':  sb.append('\r'); break;
+                case 't':  sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > s.length())
+                        throw error("truncated unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("invalid escape character");
+                }
+            }
+        }
+
+        // number or boolean literal, returned as is.
+        private String literal() {
+            int start = pos;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == ',' || c == ']' || Character.isWhitespace(c))
+                    break;
+                pos++;
+            }
+            if (start == pos)
+                throw error("expecting a value");
+            String literal = s.substring(start, pos);
+            if ("null".equals(literal))
+                throw error("null primary key value");
+            return literal;
+        }
+
+        private void skipWhitespaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+                pos++;
+        }
+
+        private char peek() {
+            if (pos >= s.length())
+                throw error("unexpected end");
+            return s.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (next() != c)
+                throw error("expecting '" + c + "'");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid _id=" + s + " at position " + pos + ": " + message);
+        }
+    }
+}
@@ -24,16 +24,15 @@ import com.google.common.collect.Maps;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
-import org.apache.cassandra.cql3.CQL3Type;
 import org.apache.cassandra.cql3.ColumnIdentifier;
 import org.apache.cassandra.cql3.Operator;
 import org.apache.cassandra.cql3.statements.IndexTarget;
 import org.apache.cassandra.db.Clustering;
-import org.apache.cassandra.db.ClusteringBound;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.LivenessInfo;
 import org.apache.cassandra.db.PartitionColumns;
 import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.ReadCommand;
@@ -74,10 +73,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.apache.lucene.document.BinaryDocValuesField;
-import org.apache.lucene.document.DoublePoint;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FloatPoint;
-import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StoredField;
@@ -85,9 +81,9 @@ import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CloseableThreadLocal;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
@@ -102,17 +98,20 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.cluster.service.ClusterService.DocPrimaryKey;
+import org.elasticsearch.common.CheckedRunnable;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.geo.builders.ShapeBuilder;
 import org.elasticsearch.common.logging.Loggers;
-import org.elasticsearch.common.lucene.BytesRefs;
 import org.elasticsearch.common.lucene.all.AllEntries;
 import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -227,6 +226,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
     protected final IndexMetadata indexMetadata;
     int initCounter = 0;
     
+    // documents reindexed or deleted by compactions, and removed rows ignored because their indexed content did not change.
+    final CounterMetric compactionDocuments = new CounterMetric();
+    final CounterMetric compactionSkippedRows = new CounterMetric();
+    
     ElasticSecondaryIndex(ColumnFamilyStore baseCfs, IndexMetadata indexDef) {
         this.baseCfs = baseCfs;
         this.typeName = ClusterService.cfNameToType(baseCfs.keyspace.getName(), ElasticSecondaryIndex.this.baseCfs.metadata.cfName);
@@ -241,6 +244,20 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         return esi;
     }
     
+    /**
+     * Add the row cache statistics of the tables indexed in the given elasticsearch index.
+     */
+    public static void stats(String indexName, SecondaryIndexStats stats) {
+        for(ElasticSecondaryIndex esi : elasticSecondayIndices.values()) {
+            ImmutableMappingInfo mappingInfo = esi.mappingInfo;
+            if (mappingInfo != null && mappingInfo.indexToIdx.containsKey(indexName)) {
+                if (mappingInfo.rowCache != null)
+                    mappingInfo.rowCache.stats(stats);
+                stats.addCompaction(esi.baseCfs.metadata.ksName + "." + esi.baseCfs.metadata.cfName, esi.compactionDocuments.count(), esi.compactionSkippedRows.count());
+            }
+        }
+    }
+    
     // Public because it's also used to convert index metadata into a thrift-compatible format
     public static Pair<ColumnDefinition, IndexTarget.Type> parseTarget(CFMetaData cfm, IndexMetadata indexDef)
     {
@@ -295,6 +312,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         }
     };
 
+    // reusable per thread rowcument buffers
+    private CloseableThreadLocal<RowcumentPool> perThreadRowcumentPool = new CloseableThreadLocal<RowcumentPool>() {
+        @Override
+        protected RowcumentPool initialValue() {
+            return new RowcumentPool();
+        }
+    };
+
     abstract class FilterableDocument extends ParseContext.Document implements Predicate<IndexableField> {
         boolean applyFilter = false; 
         
@@ -805,6 +830,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             final boolean index_on_compaction;
             final boolean index_static_document;
             final boolean versionLessEngine;
+            final boolean asyncIndexing;
+            final TimeValue refreshWindow;
+            final long rowCacheSize;
+            final boolean storedSource;
             
             Mapper[] mappers;   // inititalized in the ImmutableMappingInfo constructor.
             ReadWriteLock dynamicMappingUpdateLock;
@@ -828,6 +857,11 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 this.index_static_columns = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_COLUMNS_SETTING);
                 this.index_static_only = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_ONLY_SETTING);
                 this.index_static_document = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING);
+                this.asyncIndexing = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_SETTING);
+                this.refreshWindow = indexService.getIndexSettings().getValue(IndexMetaData.INDEX_SYNCHRONOUS_REFRESH_WINDOW_SETTING);
+                this.rowCacheSize = indexService.getIndexSettings().getValue(IndexMetaData.INDEX_ROW_CACHE_SIZE_SETTING).getBytes();
+                this.storedSource = indexService.getIndexSettings().getValue(IndexMetaData.INDEX_STORED_SOURCE_SETTING) &&
+                        indexService.mapperService().documentMapper(this.type).sourceMapper().enabled();
             }
 
             // get _meta, index, cluster or system settings.
@@ -865,110 +899,81 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 return indexShard;
             }
             
+            /**
+             * Apply a lucene operation on the shard, or submit it to the shard secondary indexing queue when asynchronous indexing is enabled.
+             */
+            public void apply(IndexShard shard, CheckedRunnable<IOException> op) {
+                if (this.asyncIndexing) {
+                    shard.secondaryIndexingQueue().submit(op::run);
+                } else {
+                    try {
+                        op.run();
+                    } catch (IOException e) {
+                        logger.error("[{}] failed to apply a secondary index operation on table {}.{}", e, name, baseCfs.metadata.ksName, baseCfs.name);
+                    }
+                }
+            }
+            
             public void refresh() {
                 if (this.refresh) {
                     IndexShard shard = shard();
                     if (shard != null) {
-                        try {
-                            shard.refresh("synchronous_refresh");
-                        } catch (Throwable e) {
-                            logger.error("error", e);
-                        }
+                        // with asynchronous indexing, apply previously submitted operations so that the write is visible when the refresh returns.
+                        if (this.asyncIndexing)
+                            shard.secondaryIndexingQueue().drain();
+                        // share the refresh with concurrent writers.
+                        shard.refreshCoalescer().refresh(refreshWindow);
                     }
                 }
             }
             
-            public void deleteByQuery(RangeTombstone tombstone) {
+            /**
+             * Delete the documents of a partition slice, checking matching documents against the slice when
+             * some clustering columns cannot be translated into an exact lucene query.
+             */
+            public void deleteByQuery(long token, String partitionKey, RangeTombstone tombstone) {
                 IndexShard shard = shard();
                 if (shard != null) {
-                    Slice slice = tombstone.deletedSlice();
-                    ClusteringBound start = slice.start();
-                    ClusteringBound end = slice.end();
-    
-                    DocumentMapper docMapper = indexService.mapperService().documentMapper(typeName);
+                    final Slice slice = tombstone.deletedSlice();
+                    final DocumentMapper docMapper = indexService.mapperService().documentMapper(typeName);
+                    final SliceQueryBuilder sliceQueryBuilder = new SliceQueryBuilder(baseCfs.metadata, docMapper, indexedPkColumns);
+                    final Query sliceQuery = sliceQueryBuilder.build(slice);
+                    if (sliceQuery instanceof MatchNoDocsQuery)
+                        return;
+                    
                     BooleanQuery.Builder builder = new BooleanQuery.Builder();
                     builder.add( typeTermQuery, Occur.FILTER);
+                    builder.add( LongPoint.newExactQuery(TokenFieldMapper.NAME, token), Occur.FILTER);
+                    if (sliceQuery != null)
+                        builder.add( sliceQuery, Occur.FILTER);
+                    if (index_static_document) // range tombstones do not delete the static row.
+                        builder.add( new TermQuery(new Term(UidFieldMapper.NAME, Uid.createUid(typeName, partitionKey))), Occur.MUST_NOT);
+                    final Query query = builder.build();
                     
-                    // build the primary key part of the delete by query
-                    int i = 0;
-                    for(ColumnDefinition cd : baseCfs.metadata.primaryKeyColumns()) {
-                        if (i >= start.size())
-                            break;
-                        if (indexedPkColumns[i]) {
-                            FieldMapper mapper = docMapper.mappers().smartNameFieldMapper(cd.name.toString());
-                            builder.add( buildQuery( cd, mapper, start.get(i), end.get(i), start.isInclusive(), end.isInclusive()), Occur.FILTER);
-                        }
-                        i++;
-                    }
-                    
-                    Query query = builder.build();
                     if (logger.isTraceEnabled()) {
-                        logger.trace("delete rangeTombstone from ks.cf={}.{} query={} in elasticsearch index=[{}]", baseCfs.metadata.ksName, baseCfs.name, query, name);
+                        logger.trace("delete rangeTombstone from ks.cf={}.{} query={} exact={} in elasticsearch index=[{}]", 
+                                baseCfs.metadata.ksName, baseCfs.name, query, sliceQueryBuilder.isExact(), name);
                     }
                     if (!updated)
                         updated = true;
-                    DeleteByQuery deleteByQuery = new DeleteByQuery(query, null, null, null, null, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
-                    shard.getEngine().delete(deleteByQuery);
+                    // clustering keys out of the slice are filtered when the buffered delete is applied, without refreshing the shard.
+                    final Query rangeQuery = sliceQueryBuilder.isExact() ? query : new ClusteringSliceQuery(query, slice, baseCfs.metadata.comparator, this::clustering);
+                    apply(shard, () -> shard.tombstoneBuffer().deleteRange(token, rangeQuery));
                 }
             }
             
             /**
-             * Build range query to remove a row slice.
-             * @param cd
-             * @param mapper
-             * @param lower
-             * @param upper
-             * @param includeLower
-             * @param includeUpper
-             * @return
+             * @return the clustering key of a document _uid, or null for a static document.
              */
-            @SuppressForbidden(reason="unchecked")
-            private Query buildQuery(ColumnDefinition cd, FieldMapper mapper, ByteBuffer lower, ByteBuffer upper, boolean includeLower, boolean includeUpper) {
-                Object start = cd.type.compose(lower);
-                Object end = cd.type.compose(upper);
-                Query query = null;
-                if (mapper != null) {
-                    CQL3Type cql3Type = cd.type.asCQL3Type();
-                    if (cql3Type instanceof CQL3Type.Native) {
-                        switch ((CQL3Type.Native) cql3Type) {
-                        case ASCII:
-                        case TEXT:
-                        case VARCHAR:
-                            if (start.equals(end)) {
-                                query = new TermQuery(new Term(cd.name.toString(),  BytesRefs.toBytesRef(start)));
-                            } else {
-                                query = new TermRangeQuery(cd.name.toString(),  BytesRefs.toBytesRef(start),  BytesRefs.toBytesRef(end),includeLower, includeUpper);
-                            }
-                            break;
-                        case INT:
-                        case SMALLINT:
-                        case TINYINT:
-                            query = IntPoint.newRangeQuery(cd.name.toString(), (Integer) start, (Integer) end);
-                            break;
-                        case INET:
-                        case TIMESTAMP:
-                        case BIGINT:
-                            query = LongPoint.newRangeQuery(cd.name.toString(), (Long) start, (Long) start);
-                            break;
-                        case DOUBLE:
-                            query = DoublePoint.newRangeQuery(cd.name.toString(), (Double) start, (Double) start);
-                            break;
-                        case FLOAT:
-                            query = FloatPoint.newRangeQuery(cd.name.toString(), (Float) start, (Float) start);
-                            break;
-                            
-                        case DECIMAL:
-                        case TIMEUUID:
-                        case UUID:
-                        case BLOB:
-                        case BOOLEAN:
-                            throw new UnsupportedOperationException("Unsupported data type in primary key");
-                        }
-                    }
-                } else {
-                    throw new UnsupportedOperationException("Object type in primary key not supported");
-                }
-                return query;
+            private Clustering clustering(String uid) throws IOException {
+                DocPrimaryKey docPk = clusterService.parseElasticId(indexService, typeName, Uid.createUid(uid).id());
+                if (docPk.isStaticDocument)
+                    return null;
+                int ptLen = baseCfs.metadata.partitionKeyColumns().size();
+                ByteBuffer[] clusteringValues = new ByteBuffer[baseCfs.metadata.clusteringColumns().size()];
+                for(int i = 0; i < clusteringValues.length; i++)
+                    clusteringValues[i] = baseCfs.metadata.clusteringColumns().get(i).type.decompose(docPk.values[ptLen + i]);
+                return Clustering.make(clusteringValues);
             }
         
             public boolean indexStaticOnly() {
@@ -987,6 +992,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             final int[]    fieldsIdx;   // column position in Rowcument.values
             final Set<String> indices;  // associated indices
             final PartitionFunction partitionFunction;
+            final PartitionFunction.Formatter formatter; // pattern compiled once per mapping
             
             ImmutablePartitionFunction(String[] args) {
                 this(args, new MessageFormatPartitionFunction());
@@ -1000,6 +1006,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 System.arraycopy(args, 2, this.fields, 0, args.length-2);
                 this.indices = new HashSet<String>();
                 this.partitionFunction = partitionFunc;
+                this.formatter = partitionFunc.compile(this.pattern);
             }
             
             // values = indexed values in the same order as MappingInfo.fields
@@ -1007,7 +1014,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 Object[] args = new Object[fields.length];
                 for(int i=0; i < fieldsIdx.length; i++)
                     args[i] = (fieldsIdx[i] < values.length) ? values[fieldsIdx[i]] : null; 
-                return partitionFunction.format(pattern, args);
+                return formatter.format(args);
             }
             
             public String toString() {
@@ -1022,6 +1029,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         final ObjectIntHashMap<String> fieldsToIdx;
         final BitSet fieldsToRead;
         final BitSet staticColumns;
+        final ColumnDefinition[] columnDefinitions;
+        final RowCache rowCache;  // null when disabled
+        final int sourceIdx;      // index of the _source column when stored in lucene, -1 otherwise
         final boolean hasIndexedMultiCell;
         final boolean indexSomeStaticColumnsOnWideRow; 
         final boolean[] indexedPkColumns;   // bit mask of indexed PK columns.
@@ -1040,6 +1050,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 this.fieldsToIdx = null;
                 this.fieldsToRead = null;
                 this.staticColumns = null;
+                this.columnDefinitions = null;
+                this.rowCache = null;
+                this.sourceIdx = -1;
                 this.hasIndexedMultiCell = false;
                 this.indexSomeStaticColumnsOnWideRow = false;
                 this.indexedPkColumns = null;
@@ -1098,6 +1111,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                 fieldsMap.put(fieldName, mandartory);
                             }
                         }
+                        if (indexInfo.storedSource) {
+                            // read-before-write of the _source column on partial updates, to keep the lucene copy up to date.
+                            fieldsMap.put(SourceFieldMapper.NAME, true);
+                        }
                         if (mappingMetaData.hasParentField()) {
                             Map<String,Object> parentsProps = (Map<String,Object>)mappingMap.get(ParentFieldMapper.NAME);
                             String pkColumns = (String)parentsProps.get(ParentFieldMapper.CQL_PARENT_PK);
@@ -1137,6 +1154,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 this.fieldsToIdx = null;
                 this.fieldsToRead = null;
                 this.staticColumns = null;
+                this.columnDefinitions = null;
+                this.rowCache = null;
+                this.sourceIdx = -1;
                 this.hasIndexedMultiCell = false;
                 this.indexSomeStaticColumnsOnWideRow = false;
                 this.indexedPkColumns = null;
@@ -1183,13 +1203,17 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             
             this.fieldsToRead = new BitSet(fields.length);
             this.staticColumns = (baseCfs.metadata.hasStaticColumns()) ? new BitSet(fields.length) : null;
+            this.columnDefinitions = new ColumnDefinition[fields.length];
+            final BitSet cachedColumns = new BitSet(fields.length);
             boolean hasMultiCellColumn = false;
             for(int i=0; i < fields.length; i++) {
                 ColumnIdentifier colId = new ColumnIdentifier(fields[i], true);
                 ColumnDefinition colDef = baseCfs.metadata.getColumnDefinition(colId);
+                this.columnDefinitions[i] = colDef;
                 if (colDef != null) {
                     // colDef may be null when mapping an object with no sub-field (and no underlying column, see #144)
                     this.fieldsToRead.set(i, fieldsMap.get(fields[i]) && !colDef.isPrimaryKeyColumn());
+                    cachedColumns.set(i, this.fieldsToRead.get(i) && !colDef.type.isMultiCell());
                     hasMultiCellColumn |= colDef.type.isMultiCell();
                     if (staticColumns != null)
                         this.staticColumns.set(i, colDef.isStatic());
@@ -1199,6 +1223,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             }
             this.hasIndexedMultiCell = hasMultiCellColumn;
             
+            // row cache sized to the largest row_cache_size of the indices, disabled when multi-cell columns are indexed.
+            long rowCacheSize = 0;
+            for(ImmutableIndexInfo indexInfo : this.indices)
+                rowCacheSize = Math.max(rowCacheSize, indexInfo.rowCacheSize);
+            this.rowCache = (rowCacheSize > 0 && !hasMultiCellColumn) ? new RowCache(rowCacheSize, this.fieldsToIdx, cachedColumns, this.staticColumns) : null;
+            this.sourceIdx = this.fieldsToIdx.getOrDefault(SourceFieldMapper.NAME, -1);
+            
             if (partFuncs != null && partFuncs.size() > 0) {
                 for(ImmutablePartitionFunction func : partFuncs.values()) {
                     int i = 0;
@@ -1214,6 +1245,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             for(ImmutableIndexInfo indexInfo : this.indices) {
                 indexInfo.mappers = new Mapper[fields.length];
                 for(int i=0; i < fields.length; i++) {
+                    if (i == this.sourceIdx)
+                        continue; // _source is stored by the Rowcument, not mapped.
                     DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                     Mapper mapper = fields[i].startsWith(ParentFieldMapper.NAME) ?
                             docMapper.parentFieldMapper() : docMapper.mappers().smartNameFieldMapper(fields[i]); // workaround for _parent#<join_type>
@@ -1290,8 +1323,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         }
 
         class WideRowcumentIndexer extends RowcumentIndexer {        
-            NavigableSet<Clustering> clusterings = new java.util.TreeSet<Clustering>(baseCfs.metadata.comparator);
-            Map<Clustering, WideRowcument> rowcuments = new TreeMap<Clustering, WideRowcument>(baseCfs.metadata.comparator);
+            final TreeMap<Clustering, WideRowcument> rowcuments = new TreeMap<Clustering, WideRowcument>(baseCfs.metadata.comparator);
+            final NavigableSet<Clustering> clusterings = rowcuments.navigableKeySet();
             Row inStaticRow, outStaticRow;
             
             public WideRowcumentIndexer(final DecoratedKey key,
@@ -1344,8 +1377,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         inStaticRow = inRow;
                         outStaticRow = outRow;
                     } else {
-                        clusterings.add(inRow.clustering());
-                        rowcuments.put(inRow.clustering(), new WideRowcument(inRow, outRow));
+                        WideRowcument previous = rowcuments.put(inRow.clustering(), new WideRowcument(inRow, outRow));
+                        if (previous != null)
+                            previous.release();
                     }
                 } catch(Throwable t) {
                     logger.error("Unexpected error", t);
@@ -1359,6 +1393,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 
                 switch(transactionType) {
                 case CLEANUP:
+                    if (rowCache != null)
+                        rowCache.invalidate(key);
                     for(WideRowcument rowcument : rowcuments.values())
                         rowcument.delete();
                     break;
@@ -1367,7 +1403,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     if (!clusterings.isEmpty()) {
                         boolean hasMissingFields = false;
                         for(WideRowcument rowcument : rowcuments.values()) {
-                            if (rowcument.hasLiveData && rowcument.hasMissingFields()) {
+                            if (!rebuild && rowcument.hasLiveData && rowcument.hasMissingFields() && !rowcument.fillFromRowCache()) {
                                 hasMissingFields = true;
                                 break;
                             }
@@ -1375,11 +1411,16 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         if (hasMissingFields) {
                             if (logger.isTraceEnabled())
                                 logger.trace("indexer={} read partition for clusterings={}", this.hashCode(), clusterings);
+                            final long generation = (rowCache == null) ? 0 : rowCache.generation(key);
                             SinglePartitionReadCommand command = SinglePartitionReadCommand.create(baseCfs.metadata, nowInSec, key, clusterings);
                             RowIterator rowIt = read(command);
                             this.inStaticRow = rowIt.staticRow();
+                            if (rowCache != null && staticColumns != null)
+                                rowCache.load(key, generation, inStaticRow);
                             for(; rowIt.hasNext(); ) {
                                 Row row = rowIt.next();
+                                if (rowCache != null)
+                                    rowCache.load(key, generation, row);
                                 try {
                                     WideRowcument rowcument = new WideRowcument(row, null);
                                     try {
@@ -1388,10 +1429,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                     } catch (IOException e) {
                                         logger.error("Unexpected error", e);
                                     }
-                                    if (rowcument.hasLiveData(nowInSec)) {
-                                        rowcument.index();
-                                    } else {
-                                        rowcument.delete();
+                                    try {
+                                        if (rowcument.hasLiveData(nowInSec)) {
+                                            rowcument.index();
+                                        } else {
+                                            rowcument.delete();
+                                        }
+                                    } finally {
+                                        rowcument.release();
                                     }
                                 } catch (IOException e) {
                                     logger.error("Unexpected error", e);
@@ -1413,39 +1458,26 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 if (this.inStaticRow != null) {
                     try {
                         WideRowcument rowcument = new WideRowcument(inStaticRow, outStaticRow);
-                        if (rowcument.hasLiveData(nowInSec)) {
-                            rowcument.index();
-                        } else {
-                            rowcument.delete();
+                        try {
+                            if (rowcument.hasLiveData(nowInSec)) {
+                                rowcument.index();
+                            } else {
+                                rowcument.delete();
+                            }
+                        } finally {
+                            rowcument.release();
                         }
                     } catch (IOException e) {
                         logger.error("Unexpected error", e);
                     }
                 }
             }
-            
-            /**
-             * Notification of a RangeTombstone.
-             * An update of a single partition may contain multiple RangeTombstones,
-             * and a notification will be passed for each of them.
-             * @param tombstone
-             */
+
             @Override
-            public void rangeTombstone(RangeTombstone tombstone) {
-                logger.trace("range tombestone row {}: {}", this.transactionType, tombstone);
-                try {
-                    BitSet targets = targetIndices(pkCols);
-                    if (targets == null) {
-                        for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
-                            indexInfo.deleteByQuery(tombstone);
-                    } else {
-                        for(int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i+1))
-                            indices[i].deleteByQuery(tombstone);
-                    }
-                } catch(Throwable t) {
-                    logger.error("Unexpected error", t);
-                }
-            }    
+            public void release() {
+                for(WideRowcument rowcument : rowcuments.values())
+                    rowcument.release();
+            }
         }
         
         class SkinnyRowcumentIndexer extends RowcumentIndexer {
@@ -1469,6 +1501,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             @Override
             public void collect(Row inRow, Row outRow) {
                 try {
+                    if (this.rowcument != null)
+                        this.rowcument.release();
                     this.rowcument = new SkinnyRowcument(inRow, outRow);
                 } catch (IOException e) {
                     logger.error("Unexpected error", e);
@@ -1480,16 +1514,24 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 if (rowcument != null) {
                     switch(transactionType) {
                     case CLEANUP:
+                        if (rowCache != null)
+                            rowCache.invalidate(key);
                         this.rowcument.delete();
                         break;
                     case COMPACTION: // remove expired row or reindex a doc when a column has expired, happen only when index_on_compaction=true for at least one elasticsearch index.
                     case UPDATE:
-                        if (rowcument.hasMissingFields()) {
+                        if (!rebuild && rowcument.hasMissingFields() && !rowcument.fillFromRowCache()) {
+                            final long generation = (rowCache == null) ? 0 : rowCache.generation(key);
                             SinglePartitionReadCommand command = SinglePartitionReadCommand.fullPartitionRead(baseCfs.metadata, nowInSec, key);
                             RowIterator rowIt = read(command);
                             if (rowIt.hasNext())
                                 try {
-                                    this.rowcument = new SkinnyRowcument(rowIt.next(), null);
+                                    Row row = rowIt.next();
+                                    if (rowCache != null)
+                                        rowCache.load(key, generation, row);
+                                    SkinnyRowcument readRowcument = new SkinnyRowcument(row, null);
+                                    this.rowcument.release();
+                                    this.rowcument = readRowcument;
                                 } catch (IOException e) {
                                     logger.error("Unexpected error", e);
                                 }
@@ -1502,6 +1544,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     }
                 }
             }
+
+            @Override
+            public void release() {
+                if (this.rowcument != null) {
+                    this.rowcument.release();
+                    this.rowcument = null;
+                }
+            }
         }
         
         abstract class RowcumentIndexer implements Index.Indexer {
@@ -1512,6 +1562,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             final Object[] pkCols = new Object[baseCfs.metadata.partitionKeyColumns().size()+baseCfs.metadata.clusteringColumns().size()];
             final String partitionKey;
             BitSet targets = null;
+            boolean rebuild = false;    // rows are complete and shards are not refreshed
             
             public RowcumentIndexer(final DecoratedKey key,
                     final PartitionColumns columns,
@@ -1557,6 +1608,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             @Override
             public void insertRow(Row row) {
                 logger.trace("insert row {}: {}", this.transactionType, row);
+                updateRowCache(row);
                 collect(row, null);
             }
 
@@ -1582,6 +1634,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             @Override
             public void updateRow(Row oldRowData, Row newRowData) {
                 logger.trace("update row {}: {} to {}", this.transactionType, oldRowData, newRowData);
+                updateRowCache(newRowData);
                 collect(newRowData, oldRowData);
             }
 
@@ -1604,8 +1657,27 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             @Override
             public void removeRow(Row row) {
                 logger.trace("remove row {}: {}", this.transactionType, row);
+                if (transactionType == IndexTransaction.Type.COMPACTION && !hasExpiredIndexedData(row)) {
+                    // overwritten cells and purged tombstones do not change the indexed document.
+                    compactionSkippedRows.inc();
+                    return;
+                }
                 collect(null, row);
             }
+            
+            /**
+             * @return true if the row removed by a compaction has expired, or contains an expired cell of an indexed column.
+             */
+            boolean hasExpiredIndexedData(Row row) {
+                LivenessInfo livenessInfo = row.primaryKeyLivenessInfo();
+                if (livenessInfo.isExpiring() && !livenessInfo.isLive(nowInSec))
+                    return true;
+                for(Cell cell : row.cells()) {
+                    if (cell.isExpiring() && !cell.isLive(nowInSec) && fieldsToIdx.containsKey(cell.column().name.toString()))
+                        return true;
+                }
+                return false;
+            }
 
             /**
              * Notification of the end of the partition update.
@@ -1613,7 +1685,16 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
              */
             @Override
             public void finish() {
-                flush();
+                try {
+                    flush();
+                } finally {
+                    release();
+                    // also when the flush failed, the partition update is applied to the table anyway.
+                    if (transactionType == IndexTransaction.Type.UPDATE)
+                        invalidateSourceCaches();
+                }
+                if (this.rebuild)
+                    return;
                 if (this.targets == null) {
                     // refresh all associated indices.
                     for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
@@ -1625,10 +1706,30 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
             }
             
+            // the partition update is visible when finished, so a _source cached by a concurrent read is dropped.
+            void invalidateSourceCaches() {
+                for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices) {
+                    IndexShard indexShard = indexInfo.indexService.getShardOrNull(0);
+                    if (indexShard != null && indexShard.sourceCache() != null)
+                        indexShard.sourceCache().invalidate(typeName, key.getKey());
+                }
+            }
+            
+            // merge written cells into the row cache.
+            void updateRowCache(Row row) {
+                if (rowCache != null && row != null && transactionType == IndexTransaction.Type.UPDATE)
+                    rowCache.update(key, row);
+            }
+            
             public abstract void collect(Row inRow, Row outRow);
             
             public abstract void flush(); 
             
+            /**
+             * Return the buffers of the collected rowcuments to the per thread pool.
+             */
+            public abstract void release();
+            
             public RowIterator read(SinglePartitionReadCommand command) {
                 try(ReadExecutionController control = command.executionController()) {
                     UnfilteredRowIterator unfilteredRows = command.queryMemtableAndDisk(baseCfs, control);
@@ -1638,13 +1739,15 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             
             class Rowcument {
                 final String id;
-                final Object[] values = new Object[fieldsToIdx.size()];
-                final BitSet fieldsNotNull = new BitSet(fieldsToIdx.size());     // regular or static columns only
-                final BitSet tombstoneColumns = new BitSet(fieldsToIdx.size());  // regular or static columns only
+                RowcumentPool.Buffer buffer = ElasticSecondaryIndex.this.perThreadRowcumentPool.get().acquire(fieldsToIdx.size());
+                final Object[] values = buffer.values;
+                final BitSet fieldsNotNull = buffer.fieldsNotNull;         // regular or static columns only
+                final BitSet tombstoneColumns = buffer.tombstoneColumns;   // regular or static columns only
                 int   docTtl = Integer.MAX_VALUE;
                 int   inRowDataSize;
                 final boolean isStatic;
                 final boolean hasLiveData;
+                final Clustering clustering;
                 
                 /**
                  * 
@@ -1656,6 +1759,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     inRowDataSize =  inRow != null ? inRow.dataSize() : 0;
                     Row row = inRow != null ? inRow : outRow;
                     this.isStatic = row.isStatic();
+                    this.clustering = row.clustering();
                     this.hasLiveData = inRow != null && inRow.hasLiveData(nowInSec, baseCfs.metadata.enforceStrictLiveness());
                     //if (inRow != null && inRow.isStatic())
                     //   logger.error("indexer={} inRow static hasLive={} inRow.timestamp={}", RowcumentIndexer.this.hashCode(), hasLiveData, inRow.primaryKeyLivenessInfo().timestamp());
@@ -1692,6 +1796,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     return hasLiveData;
                 }
                 
+                public void release() {
+                    if (buffer != null) {
+                        ElasticSecondaryIndex.this.perThreadRowcumentPool.get().release(buffer);
+                        buffer = null;
+                    }
+                }
+                
                 public boolean isStatic() {
                     return isStatic;
                 }
@@ -1781,10 +1892,36 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 public boolean hasMissingFields() {
                     if (hasIndexedMultiCell)
                         return true;
-                    
+                    return (mustReadFields().cardinality() > 0);
+                }
+                
+                /**
+                 * Complete missing fields from the row cache.
+                 * @return true if all missing fields were found in the row cache.
+                 */
+                public boolean fillFromRowCache() {
+                    if (rowCache == null || hasIndexedMultiCell || transactionType != IndexTransaction.Type.UPDATE)
+                        return false;
+                    try {
+                        return rowCache.fill(key, clustering, mustReadFields(), nowInSec, (idx, value, localDeletionTime) -> {
+                            if (value != null) {
+                                docTtl = Math.min(localDeletionTime, docTtl);
+                                values[idx] = ClusterService.deserialize(columnDefinitions[idx].type, value);
+                                fieldsNotNull.set(idx, values[idx] != null);
+                            }
+                        });
+                    } catch (IOException e) {
+                        logger.error("Unexpected error", e);
+                        return false;
+                    }
+                }
+                
+                BitSet mustReadFields() {
                     // add missing or collection columns that should be read before indexing the document.
                     // read missing static or regular columns
-                    final BitSet mustReadFields = (BitSet)fieldsToRead.clone();
+                    final BitSet mustReadFields = buffer.mustReadFields;
+                    mustReadFields.clear();
+                    mustReadFields.or(fieldsToRead);
                     boolean completeOnlyStatic = isStatic();
                     if (staticColumns != null) {
                         if (isStatic() || ImmutableMappingInfo.this.indexSomeStaticColumnsOnWideRow) {
@@ -1801,7 +1938,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     }
                     mustReadFields.andNot(fieldsNotNull);
                     mustReadFields.andNot(tombstoneColumns);
-                    return (mustReadFields.cardinality() > 0);
+                    return mustReadFields;
                 }
                 
                 
@@ -1839,6 +1976,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                 logger.error("error", e);
                             }
                     }
+                    
+                    // store the _source column written by the index API.
+                    if (indexInfo.storedSource && sourceIdx != -1 && values[sourceIdx] instanceof ByteBuffer) {
+                        ByteBuffer bb = (ByteBuffer) values[sourceIdx];
+                        if (bb.hasRemaining()) {
+                            context.doc().add(new StoredField(SourceFieldMapper.NAME, new BytesRef(ByteBufferUtil.getArray(bb))));
+                        }
+                    }
                    
                     // postCreate for all metadata fields.
                     Mapping mapping = context.docMapper.mapping();
@@ -1885,6 +2030,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
                 
                 public void index() {
+                    if (transactionType == IndexTransaction.Type.COMPACTION)
+                        compactionDocuments.inc();
                     long startTime = System.nanoTime();
                     long ttl = (long)((this.docTtl < Integer.MAX_VALUE) ? this.docTtl : 0);
                     
@@ -1922,11 +2069,11 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                     context.version(),
                                     (isStatic()) ? partitionKey : id,
                                     context.type(),
-                                    ClusterService.stringify(pkCols, baseCfs.metadata.partitionKeyColumns().size()), // routing
+                                    partitionKey, // routing
                                     System.currentTimeMillis(), // timstamp
                                     ttl,
                                     ((Long)key.getToken().getTokenValue()).longValue(), 
-                                    context.docs(), 
+                                    indexInfo.asyncIndexing ? new ArrayList<>(context.docs()) : context.docs(), // context is reused by the next row
                                     context.source(), // source 
                                     XContentType.JSON,
                                     (Mapping)null); // mappingUpdate
@@ -1943,7 +2090,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                             if (indexShard != null) {
                                 if (!indexInfo.updated)
                                     indexInfo.updated = true;
-                                final Engine.Index operation = new Engine.Index(context.docMapper.uidMapper().term(Uid.createUid(context.docMapper.type(), id)), 
+                                final DocumentMapper docMapper = context.docMapper;
+                                final Engine.Index operation = new Engine.Index(docMapper.uidMapper().term(Uid.createUid(docMapper.type(), id)), 
                                         parsedDoc, 
                                         1L, 
                                         VersionType.INTERNAL, 
@@ -1952,18 +2100,20 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                         startTime, false) {
                                     @Override
                                     public int estimatedSizeInBytes() {
-                                        return (id.length() + context.docMapper.type().length()) * 2 + inRowDataSize + 12;
+                                        return (id.length() + docMapper.type().length()) * 2 + inRowDataSize + 12;
                                     }
                                 };
                                 
-                                IndexResult result = indexShard.index(indexShard.getEngine(), operation);
-                                
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("document CF={}.{} index/type={}/{} id={} version={} created={} static={} ttl={} refresh={} ", 
-                                        baseCfs.metadata.ksName, baseCfs.metadata.cfName,
-                                        context.indexInfo.name, typeName,
-                                        parsedDoc.id(), operation.version(), result.isCreated(), isStatic(), ttl, context.indexInfo.refresh);
-                                }
+                                indexInfo.apply(indexShard, () -> {
+                                    IndexResult result = indexShard.index(indexShard.getEngine(), operation);
+                                    
+                                    if (logger.isDebugEnabled()) {
+                                        logger.debug("document CF={}.{} index/type={}/{} id={} version={} created={} static={} ttl={} refresh={} ", 
+                                            baseCfs.metadata.ksName, baseCfs.metadata.cfName,
+                                            indexInfo.name, typeName,
+                                            parsedDoc.id(), operation.version(), result.isCreated(), isStatic(), ttl, indexInfo.refresh);
+                                    }
+                                });
                              }
                         } catch (IOException e) {
                             logger.error("error", e);
@@ -1972,6 +2122,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
                 
                 public void delete() {
+                    if (transactionType == IndexTransaction.Type.COMPACTION)
+                        compactionDocuments.inc();
                     targets = ImmutableMappingInfo.this.targetIndices(values);
                     if (targets == null) {
                         // delete for associated indices
@@ -1999,11 +2151,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         Engine.Delete delete = indexShard.prepareDeleteOnPrimary(typeName, id, 
                                 indexInfo.versionLessEngine ? 1L : Versions.MATCH_ANY, 
                                 indexInfo.versionLessEngine ? VersionType.EXTERNAL : VersionType.INTERNAL);
-                        try {
-                            indexShard.delete(delete);
-                        } catch (IOException e) {
-                            logger.error("Document deletion error", e);
-                        }
+                        indexInfo.apply(indexShard, () -> indexShard.delete(delete));
                     }
                 }
             }
@@ -2016,13 +2164,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             @Override
             public void partitionDelete(DeletionTime deletionTime) {
                 logger.trace("Delete partition {}: {}", this.transactionType, deletionTime);
+                if (rowCache != null && !deletionTime.isLive())
+                    rowCache.invalidate(key);
                 if (deletionTime.isLive() || !deletionTime.deletes(System.currentTimeMillis())) {
                     // ignore non-expired partition-tombestone. 
                     return;
                 }
                     
-                Long  token_long = (Long) key.getToken().getTokenValue();
-                Query tokenRangeQuery = LongPoint.newRangeQuery(TokenFieldMapper.NAME, token_long, token_long);
+                final long token_long = (Long) key.getToken().getTokenValue();
                 
                 mappingInfoLock.readLock().lock();
                 try {
@@ -2034,11 +2183,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         if (indexShard != null) {
                             if (!indexInfo.updated)
                                 indexInfo.updated = true;
-                            BooleanQuery.Builder builder = new BooleanQuery.Builder();
-                            builder.add(typeTermQuery, Occur.FILTER);
-                            builder.add(tokenRangeQuery, Occur.FILTER);
-                            DeleteByQuery deleteByQuery = new DeleteByQuery(builder.build(), null, null, null, null, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
-                            indexShard.getEngine().delete(deleteByQuery);
+                            // buffered and merged with other partition deletes in a single _token set query.
+                            indexInfo.apply(indexShard, () -> indexShard.tombstoneBuffer().deletePartition(typeName, token_long));
                         }
                     }
                 } catch(Throwable t) {
@@ -2056,7 +2202,22 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
              */
             @Override
             public void rangeTombstone(RangeTombstone tombstone) {
-                logger.warn("Ignoring range tombstone {}", tombstone);
+                logger.trace("range tombestone row {}: {}", this.transactionType, tombstone);
+                try {
+                    if (rowCache != null)
+                        rowCache.invalidate(key);
+                    final long token = (Long) key.getToken().getTokenValue();
+                    BitSet targets = targetIndices(pkCols);
+                    if (targets == null) {
+                        for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
+                            indexInfo.deleteByQuery(token, partitionKey, tombstone);
+                    } else {
+                        for(int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i+1))
+                            indices[i].deleteByQuery(token, partitionKey, tombstone);
+                    }
+                } catch(Throwable t) {
+                    logger.error("Unexpected error", t);
+                }
             }
         }
     }
@@ -2185,6 +2346,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
                     try {
                         IndexShard indexShard = indexInfo.indexService.getShardOrNull(0);
+                        if (indexShard != null && indexInfo.asyncIndexing)
+                            indexShard.secondaryIndexingQueue().drain();
                         if (indexShard != null && indexInfo.updated) {
                             if (indexShard.state() == IndexShardState.STARTED)  {
                                 long start = System.currentTimeMillis();
@@ -2273,10 +2436,16 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
     public Callable<?> getTruncateTask(long truncatedAt) {
         return () -> {
             if (isIndexing()) {
+                if (mappingInfo.rowCache != null)
+                    mappingInfo.rowCache.invalidateAll();
                 for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
                     try {
                         IndexShard indexShard = indexInfo.indexService.getShardOrNull(0);
                         if (indexShard != null) {
+                            if (indexShard.sourceCache() != null)
+                                indexShard.sourceCache().invalidateAll();
+                            // apply pending operations before removing all documents of the type.
+                            indexShard.secondaryIndexingQueue().drain();
                             DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                             if (logger.isDebugEnabled()) {
                                 logger.debug("truncating from ks.cf={}.{} query={} in elasticsearch index=[{}]", baseCfs.metadata.ksName, baseCfs.name, typeTermQuery, indexInfo.name);
@@ -2386,4 +2555,14 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         return null;
     }
 
+    /**
+     * Indexer of complete rows read from the table by the {@link TokenRangeIndexRebuilder}, 
+     * without read-before-write and without refreshing the shards.
+     */
+    public Indexer rebuildIndexerFor(DecoratedKey key, int nowInSec, Group opGroup) {
+        Indexer indexer = indexerFor(key, PartitionColumns.NONE, nowInSec, opGroup, Type.UPDATE);
+        if (indexer != null)
+            ((ImmutableMappingInfo.RowcumentIndexer)indexer).rebuild = true;
+        return indexer;
+    }
 }
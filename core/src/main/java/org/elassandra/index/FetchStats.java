@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per shard statistics of the search fetch phase, splitting the time spent to load the lucene stored fields
+ * from the time spent to read the rows from cassandra, with a latency histogram of each part per fetch request.
+ * Rows read by GET requests are counted as local or remote reads, fetch phase reads being always local.
+ */
+public class FetchStats {
+
+    /**
+     * Upper bounds in milliseconds of the histogram buckets, the last bucket counting slower requests.
+     */
+    public static final long[] LATENCY_BUCKETS_MILLIS = new long[] { 1, 5, 10, 50, 100, 500, 1000 };
+
+    private final CounterMetric fetchMetric = new CounterMetric();
+    private final CounterMetric hitsMetric = new CounterMetric();
+    private final CounterMetric readsMetric = new CounterMetric();
+    private final CounterMetric luceneNanos = new CounterMetric();
+    private final CounterMetric cassandraNanos = new CounterMetric();
+    private final CounterMetric localGetReadsMetric = new CounterMetric();
+    private final CounterMetric remoteGetReadsMetric = new CounterMetric();
+    private final AtomicLongArray luceneLatency = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+    private final AtomicLongArray cassandraLatency = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+
+    /**
+     * Record a fetch request.
+     * @param hits fetched hits
+     * @param reads cassandra reads
+     * @param luceneTimeInNanos time spent to load lucene stored fields
+     * @param cassandraTimeInNanos elapsed time spent to read and decode cassandra rows
+     */
+    public void onFetch(int hits, int reads, long luceneTimeInNanos, long cassandraTimeInNanos) {
+        fetchMetric.inc();
+        hitsMetric.inc(hits);
+        readsMetric.inc(reads);
+        luceneNanos.inc(luceneTimeInNanos);
+        cassandraNanos.inc(cassandraTimeInNanos);
+        luceneLatency.incrementAndGet(bucket(luceneTimeInNanos));
+        cassandraLatency.incrementAndGet(bucket(cassandraTimeInNanos));
+    }
+
+    /**
+     * Record a row read by a GET request.
+     * @param local true when read from the local tables, false when read through the coordinator.
+     */
+    public void onGetRead(boolean local) {
+        if (local)
+            localGetReadsMetric.inc();
+        else
+            remoteGetReadsMetric.inc();
+    }
+
+    static int bucket(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+            if (millis < LATENCY_BUCKETS_MILLIS[i])
+                return i;
+        }
+        return LATENCY_BUCKETS_MILLIS.length;
+    }
+
+    private static long[] toArray(AtomicLongArray histogram) {
+        long[] values = new long[histogram.length()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = histogram.get(i);
+        return values;
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addFetch(fetchMetric.count(), hitsMetric.count(), readsMetric.count(),
+                TimeUnit.NANOSECONDS.toMillis(luceneNanos.count()), TimeUnit.NANOSECONDS.toMillis(cassandraNanos.count()),
+                toArray(luceneLatency), toArray(cassandraLatency));
+        stats.addReads(readsMetric.count() + localGetReadsMetric.count(), remoteGetReadsMetric.count());
+    }
+}
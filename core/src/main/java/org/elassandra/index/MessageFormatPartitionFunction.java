@@ -16,6 +16,14 @@
 package org.elassandra.index;
 
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -33,4 +41,262 @@ public class MessageFormatPartitionFunction implements PartitionFunction {
         MessageFormat mf = new MessageFormat(pattern, Locale.ROOT);
         return mf.format(args);
     }
+
+    /**
+     * Compile patterns made of literal text, plain {n} arguments and {n,date,pattern} arguments,
+     * where the date pattern only use the y, M, d, H, m and s fields, into a thread safe formatter
+     * producing the same output as {@link MessageFormat}. Other patterns, or argument types
+     * formatted by MessageFormat with a locale dependent format, are formatted with a per-thread MessageFormat.
+     */
+    @Override
+    public Formatter compile(String pattern) {
+        return new CompiledPattern(pattern);
+    }
+
+    static class CompiledPattern implements Formatter {
+        final String pattern;
+        final Segment[] segments;   // null when the pattern is not supported by the fast path
+        final ThreadLocal<MessageFormat> messageFormat;
+
+        CompiledPattern(String pattern) {
+            this.pattern = pattern;
+            this.segments = parse(pattern);
+            this.messageFormat = ThreadLocal.withInitial(() -> new MessageFormat(pattern, Locale.ROOT));
+        }
+
+        @Override
+        public String format(Object... args) {
+            if (segments != null) {
+                StringBuilder sb = new StringBuilder(pattern.length() + 16);
+                boolean formatted = true;
+                for (int i = 0; formatted && i < segments.length; i++)
+                    formatted = segments[i].append(sb, args);
+                if (formatted)
+                    return sb.toString();
+            }
+            return messageFormat.get().format(args);
+        }
+
+        boolean isCompiled() {
+            return segments != null;
+        }
+    }
+
+    interface Segment {
+        /**
+         * Append the formatted segment.
+         * @return false if the argument cannot be formatted without MessageFormat.
+         */
+        boolean append(StringBuilder sb, Object[] args);
+    }
+
+    static class LiteralSegment implements Segment {
+        final String text;
+
+        LiteralSegment(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean append(StringBuilder sb, Object[] args) {
+            sb.append(text);
+            return true;
+        }
+    }
+
+    static class ArgumentSegment implements Segment {
+        final int index;
+
+        ArgumentSegment(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean append(StringBuilder sb, Object[] args) {
+            if (args == null || index >= args.length)
+                return false;
+            Object arg = args[index];
+            // numbers and dates are formatted with locale formats by MessageFormat.
+            if (arg instanceof Number || arg instanceof Date)
+                return false;
+            sb.append(arg == null ? "null" : arg.toString());
+            return true;
+        }
+    }
+
+    /**
+     * Date argument formatted with a thread-safe formatter. As all dates of the same period
+     * (day, hour, minute or second depending on the pattern fields) produce the same index name,
+     * the last formatted period is cached, so daily indices format the date once per day.
+     */
+    static class DateSegment implements Segment {
+        final int index;
+        final DateTimeFormatter formatter;
+        final ZoneId zone;
+        final ChronoUnit period;
+        volatile FormattedPeriod last;
+
+        DateSegment(int index, String datePattern, ChronoUnit period) {
+            this.index = index;
+            // MessageFormat date sub-formats use the default time zone.
+            this.zone = ZoneId.systemDefault();
+            this.formatter = DateTimeFormatter.ofPattern(datePattern, Locale.ROOT).withZone(zone);
+            this.period = period;
+        }
+
+        @Override
+        public boolean append(StringBuilder sb, Object[] args) {
+            if (args == null || index >= args.length)
+                return false;
+            Object arg = args[index];
+            long millis;
+            if (arg instanceof Date)
+                millis = ((Date) arg).getTime();
+            else if (arg instanceof Number)
+                millis = ((Number) arg).longValue();
+            else
+                return false;
+
+            FormattedPeriod p = last;
+            if (p == null || millis < p.start || millis >= p.end) {
+                ZonedDateTime start = Instant.ofEpochMilli(millis).atZone(zone).truncatedTo(period);
+                p = new FormattedPeriod(start.toInstant().toEpochMilli(), start.plus(1, period).toInstant().toEpochMilli(), formatter.format(start));
+                last = p;
+            }
+            sb.append(p.text);
+            return true;
+        }
+    }
+
+    static class FormattedPeriod {
+        final long start;  // inclusive epoch millis
+        final long end;    // exclusive epoch millis
+        final String text;
+
+        FormattedPeriod(long start, long end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Parse a MessageFormat pattern into segments, or return null if the pattern contains
+     * a format element not supported by the fast path.
+     */
+    static Segment[] parse(String pattern) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i += 2;
+                } else {
+                    quoted = !quoted;
+                    i++;
+                }
+                continue;
+            }
+            if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                if (end < 0)
+                    return null;
+                Segment segment = parseElement(pattern.substring(i + 1, end));
+                if (segment == null)
+                    return null;
+                if (literal.length() > 0) {
+                    segments.add(new LiteralSegment(literal.toString()));
+                    literal.setLength(0);
+                }
+                segments.add(segment);
+                i = end + 1;
+                continue;
+            }
+            literal.append(c);
+            i++;
+        }
+        if (literal.length() > 0)
+            segments.add(new LiteralSegment(literal.toString()));
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+    static Segment parseElement(String element) {
+        if (element.indexOf('{') >= 0 || element.indexOf('\'') >= 0)
+            return null;
+        String[] parts = element.split(",", 3);
+        int index = parseIndex(parts[0]);
+        if (index < 0)
+            return null;
+        if (parts.length == 1)
+            return new ArgumentSegment(index);
+        if (parts.length == 3 && "date".equals(parts[1].trim())) {
+            ChronoUnit period = datePeriod(parts[2]);
+            if (period != null)
+                return new DateSegment(index, parts[2], period);
+        }
+        return null;
+    }
+
+    static int parseIndex(String s) {
+        if (s.isEmpty() || s.length() > 4)
+            return -1;
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) < '0' || s.charAt(i) > '9')
+                return -1;
+        return Integer.parseInt(s);
+    }
+
+    /**
+     * Check that the SimpleDateFormat pattern has the same meaning with DateTimeFormatter,
+     * and return the smallest period of its fields, or null if not supported.
+     */
+    static ChronoUnit datePeriod(String datePattern) {
+        ChronoUnit period = ChronoUnit.DAYS;
+        int i = 0;
+        while (i < datePattern.length()) {
+            char c = datePattern.charAt(i);
+            int count = 1;
+            while (i + count < datePattern.length() && datePattern.charAt(i + count) == c)
+                count++;
+            i += count;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                switch (c) {
+                case 'y':
+                    break;
+                case 'M':
+                case 'd':
+                    if (count > 2)
+                        return null;
+                    break;
+                case 'H':
+                    if (count > 2)
+                        return null;
+                    if (period == ChronoUnit.DAYS)
+                        period = ChronoUnit.HOURS;
+                    break;
+                case 'm':
+                    if (count > 2)
+                        return null;
+                    if (period != ChronoUnit.SECONDS)
+                        period = ChronoUnit.MINUTES;
+                    break;
+                case 's':
+                    if (count > 2)
+                        return null;
+                    period = ChronoUnit.SECONDS;
+                    break;
+                default:
+                    return null;
+                }
+            } else if (c == '[' || c == ']' || c == '#' || c == '}') {
+                // reserved by DateTimeFormatter
+                return null;
+            }
+        }
+        return period;
+    }
 }
@@ -22,4 +22,21 @@ package org.elassandra.index;
  */
 public interface PartitionFunction {
     public String format(String pattern, Object...args);
+
+    /**
+     * Compile the pattern once when the mapping is built. The returned formatter is shared
+     * by indexing threads and must be thread safe. The default implementation calls
+     * {@link #format(String, Object...)} for each row.
+     */
+    default Formatter compile(String pattern) {
+        return args -> format(pattern, args);
+    }
+
+    /**
+     * A compiled partition function pattern.
+     */
+    @FunctionalInterface
+    public interface Formatter {
+        public String format(Object...args);
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.IndexShard;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a single shard refresh between concurrent synchronous_refresh writers.
+ * Each caller takes a ticket and returns once a refresh started after its ticket has completed, so documents
+ * indexed before calling {@link #refresh(TimeValue)} are visible when it returns. The first waiting caller becomes
+ * the leader, waits for the coalescing window to let other writers join, and refreshes for all of them.
+ */
+public class RefreshCoalescer {
+
+    private final Logger logger;
+    private final IndexShard indexShard;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition refreshed = lock.newCondition();
+    private long requestedTicket = 0;  // last ticket given to a caller
+    private long refreshedTicket = 0;  // all callers up to this ticket have seen a refresh
+    private boolean refreshing = false;
+
+    private final CounterMetric requestedMetric = new CounterMetric();
+    private final CounterMetric performedMetric = new CounterMetric();
+
+    public RefreshCoalescer(Logger logger, IndexShard indexShard) {
+        this.logger = logger;
+        this.indexShard = indexShard;
+    }
+
+    /**
+     * Block until a shard refresh covering all previous index operations of the calling thread has completed.
+     * @param window time the leader waits for concurrent callers before refreshing.
+     */
+    public void refresh(TimeValue window) {
+        requestedMetric.inc();
+        lock.lock();
+        try {
+            final long ticket = ++requestedTicket;
+            while (refreshedTicket < ticket) {
+                if (refreshing) {
+                    refreshed.awaitUninterruptibly();
+                    continue;
+                }
+                refreshing = true;
+                long target = ticket;
+                lock.unlock();
+                try {
+                    if (window.nanos() > 0)
+                        LockSupport.parkNanos(window.nanos());
+                    lock.lock();
+                    try {
+                        // callers registered before the refresh starts are covered by it.
+                        target = requestedTicket;
+                    } finally {
+                        lock.unlock();
+                    }
+                    indexShard.refresh("synchronous_refresh");
+                    performedMetric.inc();
+                } catch (Exception e) {
+                    logger.error("synchronous refresh failed", e);
+                } finally {
+                    lock.lock();
+                    refreshing = false;
+                    refreshedTicket = Math.max(refreshedTicket, target);
+                    refreshed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addRefresh(requestedMetric.count(), performedMetric.count());
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import com.carrotsearch.hppc.ObjectIntHashMap;
+
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.memory.HeapAllocator;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.metrics.CounterMetric;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Size bounded cache of the last known values of the indexed columns, per partition and clustering, used by
+ * the {@link ElasticSecondaryIndex} to complete a partial row update without reading the partition.
+ * <p>
+ * Cells are merged by timestamp as Cassandra does, so the order of concurrent updates does not matter. A row is
+ * only completed from the cache when all its missing columns are known, either from a previous read or from writes.
+ * Deletions invalidate cached rows, and a per key generation prevents a read started before a deletion,
+ * an eviction or an update of an uncached row from loading stale values.
+ * Values are kept serialized, on heap, and the cache is bounded by the size of the cached values.
+ */
+public class RowCache {
+
+    static final long UNKNOWN = Long.MIN_VALUE;     // no value known for this column
+    static final long ABSENT = Long.MIN_VALUE + 1;  // column read without value
+
+    private static final int LOCKS = 1024;
+
+    /**
+     * Receives the cached values completing a row.
+     */
+    public interface CellConsumer {
+        void accept(int idx, ByteBuffer value, int localDeletionTime) throws IOException;
+    }
+
+    static class CachedRow {
+        final long[] timestamps;
+        final int[] localDeletionTimes;
+        final ByteBuffer[] values;
+
+        CachedRow(int size) {
+            this.timestamps = new long[size];
+            this.localDeletionTimes = new int[size];
+            this.values = new ByteBuffer[size];
+            Arrays.fill(timestamps, UNKNOWN);
+        }
+
+        // return the weight delta
+        long merge(int idx, long timestamp, int localDeletionTime, ByteBuffer value) {
+            if (timestamp <= timestamps[idx])
+                return 0;
+            long delta = (value == null ? 0 : value.remaining()) - (values[idx] == null ? 0 : values[idx].remaining());
+            timestamps[idx] = timestamp;
+            localDeletionTimes[idx] = localDeletionTime;
+            values[idx] = value;
+            return delta;
+        }
+
+        long baseWeight() {
+            return 32 + 20L * timestamps.length;
+        }
+
+        long weight() {
+            long weight = baseWeight();
+            for (ByteBuffer value : values)
+                if (value != null)
+                    weight += value.remaining();
+            return weight;
+        }
+    }
+
+    static class CachedPartition {
+        CachedRow staticRow;
+        final Map<Clustering, CachedRow> rows = new HashMap<>();
+        long weight = 64;
+    }
+
+    private final Cache<DecoratedKey, CachedPartition> cache;
+    private final Object[] locks = new Object[LOCKS];
+    private final AtomicLongArray generations = new AtomicLongArray(LOCKS);
+
+    private final ObjectIntHashMap<String> fieldsToIdx;
+    private final BitSet cachedColumns;   // simple regular or static columns
+    private final BitSet staticColumns;
+
+    private final CounterMetric hitMetric = new CounterMetric();
+    private final CounterMetric missMetric = new CounterMetric();
+    private final CounterMetric evictionMetric = new CounterMetric();
+
+    public RowCache(long maxWeightInBytes, ObjectIntHashMap<String> fieldsToIdx, BitSet cachedColumns, BitSet staticColumns) {
+        this.fieldsToIdx = fieldsToIdx;
+        this.cachedColumns = cachedColumns;
+        this.staticColumns = staticColumns;
+        for (int i = 0; i < LOCKS; i++)
+            locks[i] = new Object();
+        this.cache = CacheBuilder.<DecoratedKey, CachedPartition>builder()
+                .setMaximumWeight(maxWeightInBytes)
+                .weigher((k, p) -> k.getKey().remaining() + p.weight)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    private void onRemoval(RemovalNotification<DecoratedKey, CachedPartition> notification) {
+        if (notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED) {
+            evictionMetric.inc();
+            generations.incrementAndGet(stripe(notification.getKey()));
+        }
+    }
+
+    private static int stripe(DecoratedKey key) {
+        return (key.hashCode() & 0x7fffffff) % LOCKS;
+    }
+
+    private boolean isStatic(int idx) {
+        return staticColumns != null && staticColumns.get(idx);
+    }
+
+    private CachedRow row(CachedPartition partition, Clustering clustering, boolean create) {
+        if (clustering == Clustering.STATIC_CLUSTERING) {
+            if (partition.staticRow == null && create) {
+                partition.staticRow = new CachedRow(fieldsToIdx.size());
+                partition.weight += partition.staticRow.baseWeight();
+            }
+            return partition.staticRow;
+        }
+        CachedRow row = partition.rows.get(clustering);
+        if (row == null && create) {
+            row = new CachedRow(fieldsToIdx.size());
+            partition.rows.put(clustering.copy(HeapAllocator.instance), row);
+            partition.weight += row.baseWeight() + clustering.dataSize();
+        }
+        return row;
+    }
+
+    private long merge(CachedRow cachedRow, Cell cell) {
+        if (cell.column().isComplex())
+            return 0;
+        int idx = fieldsToIdx.getOrDefault(cell.column().name.toString(), -1);
+        if (idx < 0 || !cachedColumns.get(idx))
+            return 0;
+        ByteBuffer value = cell.isTombstone() ? null : ByteBufferUtil.clone(cell.value());
+        return cachedRow.merge(idx, cell.timestamp(), cell.isExpiring() ? cell.localDeletionTime() : Integer.MAX_VALUE, value);
+    }
+
+    /**
+     * Generation to capture before reading a partition to be loaded with {@link #load(DecoratedKey, long, Row)}.
+     */
+    public long generation(DecoratedKey key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Merge the cells of an updated row into the cached row, if any.
+     */
+    public void update(DecoratedKey key, Row row) {
+        final int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            CachedPartition partition = cache.get(key);
+            if (partition == null) {
+                generations.incrementAndGet(stripe);
+                return;
+            }
+            if (!row.deletion().isLive()) {
+                invalidate(partition, key, row.clustering());
+                return;
+            }
+            CachedRow cachedRow = row(partition, row.clustering(), false);
+            if (cachedRow == null) {
+                generations.incrementAndGet(stripe);
+                return;
+            }
+            for (Cell cell : row.cells())
+                partition.weight += merge(cachedRow, cell);
+            cache.put(key, partition); // update the weight
+        }
+    }
+
+    /**
+     * Load a row read from the partition, unless the key generation has changed since the read started.
+     */
+    public void load(DecoratedKey key, long generation, Row row) {
+        final int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            if (generations.get(stripe) != generation)
+                return;
+            CachedPartition partition = cache.get(key);
+            if (partition == null) {
+                partition = new CachedPartition();
+                key = new BufferDecoratedKey(key.getToken(), ByteBufferUtil.clone(key.getKey()));
+            }
+            CachedRow cachedRow = row(partition, row.clustering(), true);
+            for (Cell cell : row.cells())
+                partition.weight += merge(cachedRow, cell);
+            // columns without value in the read row are known as absent.
+            for (int idx = cachedColumns.nextSetBit(0); idx >= 0; idx = cachedColumns.nextSetBit(idx + 1)) {
+                if (isStatic(idx) == row.isStatic())
+                    cachedRow.merge(idx, ABSENT, Integer.MAX_VALUE, null);
+            }
+            cache.put(key, partition);
+        }
+    }
+
+    /**
+     * Complete the missing fields of a row from the cache.
+     * @return true if all missing fields were known and passed to the consumer.
+     */
+    public boolean fill(DecoratedKey key, Clustering clustering, BitSet missingFields, int nowInSec, CellConsumer consumer) throws IOException {
+        synchronized (locks[stripe(key)]) {
+            CachedPartition partition = cache.get(key);
+            if (partition != null) {
+                CachedRow regularRow = clustering == Clustering.STATIC_CLUSTERING ? null : row(partition, clustering, false);
+                boolean complete = true;
+                for (int idx = missingFields.nextSetBit(0); complete && idx >= 0; idx = missingFields.nextSetBit(idx + 1)) {
+                    CachedRow cachedRow = isStatic(idx) ? partition.staticRow : regularRow;
+                    complete = cachedRow != null && cachedColumns.get(idx) && cachedRow.timestamps[idx] != UNKNOWN;
+                }
+                if (complete) {
+                    for (int idx = missingFields.nextSetBit(0); idx >= 0; idx = missingFields.nextSetBit(idx + 1)) {
+                        CachedRow cachedRow = isStatic(idx) ? partition.staticRow : regularRow;
+                        int ldt = cachedRow.localDeletionTimes[idx];
+                        // expired cells are seen as null values.
+                        consumer.accept(idx, ldt > nowInSec ? cachedRow.values[idx] : null, ldt);
+                    }
+                    hitMetric.inc();
+                    return true;
+                }
+            }
+        }
+        missMetric.inc();
+        return false;
+    }
+
+    private void invalidate(CachedPartition partition, DecoratedKey key, Clustering clustering) {
+        generations.incrementAndGet(stripe(key));
+        CachedRow removed;
+        if (clustering == Clustering.STATIC_CLUSTERING) {
+            removed = partition.staticRow;
+            partition.staticRow = null;
+        } else {
+            removed = partition.rows.remove(clustering);
+            if (removed != null)
+                partition.weight -= clustering.dataSize();
+        }
+        if (removed != null) {
+            partition.weight -= removed.weight();
+            cache.put(key, partition);
+        }
+    }
+
+    /**
+     * Remove the cached rows of a partition, on partition deletion, range tombstone or cleanup.
+     */
+    public void invalidate(DecoratedKey key) {
+        final int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            generations.incrementAndGet(stripe);
+            cache.invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < LOCKS; i++)
+            generations.incrementAndGet(i);
+        cache.invalidateAll();
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addRowCache(hitMetric.count(), missMetric.count(), evictionMetric.count(), cache.count(), cache.weight());
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.cql3.CQL3Type;
+import org.apache.cassandra.cql3.ColumnSpecification;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.serializers.SimpleDateSerializer;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.BooleanFieldMapper;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MetadataFieldMapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.mapper.ParentFieldMapper;
+import org.elasticsearch.index.mapper.SourceFieldMapper;
+import org.elasticsearch.index.mapper.TextFieldMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Render the _source of a document directly from the serialized values of a cassandra row, without
+ * building the intermediate map of {@link ClusterService#rowAsMap}. The column to mapper plan is computed once per
+ * column and document mapper, and text, number and boolean values mapped to the same elasticsearch type are written
+ * without boxing. Rows having a column not supported by the plan (collections, UDT, unmapped or not enabled objects)
+ * are not rendered, so the caller falls back to the map based source.
+ */
+public class RowSourceRenderer {
+
+    private static final ThreadLocal<BytesStreamOutput> OUTPUT = ThreadLocal.withInitial(BytesStreamOutput::new);
+
+    private final DocumentMapper docMapper;
+    private final ConcurrentMap<String, ColumnWriter> writers = ConcurrentCollections.newConcurrentMap();
+
+    public RowSourceRenderer(DocumentMapper docMapper) {
+        this.docMapper = docMapper;
+    }
+
+    /**
+     * Write the source of a row.
+     * @return the source bytes, or null if the row has a column not supported by the renderer.
+     */
+    public BytesReference render(UntypedResultSet.Row row, boolean forStaticDocument, XContentType xContentType) throws IOException {
+        if (docMapper.sourceMapper().enabled()) {
+            // retreive from _source columns stored as blob in cassandra if available.
+            ByteBuffer bb = row.getBytes(SourceFieldMapper.NAME);
+            if (bb != null && bb.hasRemaining())
+                return new BytesArray(ByteBufferUtil.getArray(bb));
+        }
+
+        final ColumnSpecification[] columns = row.getColumns().toArray(new ColumnSpecification[row.getColumns().size()]);
+        final ColumnWriter[] plan = new ColumnWriter[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            plan[i] = writer(columns[i]);
+            if (plan[i].kind == Kind.UNSUPPORTED)
+                return null;
+        }
+
+        BytesStreamOutput out = OUTPUT.get();
+        out.reset();
+        try (XContentBuilder builder = new XContentBuilder(xContentType.xContent(), out)) {
+            builder.humanReadable(true);
+            builder.startObject();
+            for (int i = 0; i < columns.length; i++) {
+                ByteBuffer bb = row.getBytes(columns[i].name.toString());
+                if (plan[i].kind == Kind.SKIP || bb == null || !bb.hasRemaining())
+                    continue;
+                if (forStaticDocument && !plan[i].staticOrPartitionKey)
+                    continue;
+                plan[i].write(builder, bb);
+            }
+            builder.endObject();
+        }
+        // the pooled output is reused by the next row.
+        return new BytesArray(BytesRef.deepCopyOf(out.bytes().toBytesRef()));
+    }
+
+    private ColumnWriter writer(ColumnSpecification colSpec) {
+        final String name = colSpec.name.toString();
+        ColumnWriter writer = writers.get(name);
+        if (writer == null || !writer.type.equals(colSpec.type)) {
+            writer = ColumnWriter.build(docMapper, name, colSpec.type);
+            writers.put(name, writer);
+        }
+        return writer;
+    }
+
+    enum Kind {
+        SKIP,
+        UNSUPPORTED,
+        UTF8,           // text column mapped to a text or keyword field
+        STRING,         // uuid column mapped to a text or keyword field
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        BOOLEAN,
+        OBJECT          // decoded and converted for display by the field type
+    }
+
+    static class ColumnWriter {
+        final Kind kind;
+        final String name;
+        final AbstractType<?> type;
+        final MappedFieldType fieldType;
+        final boolean cqlValue;               // apply the field type cqlValue() as ClusterService.rowAsArray()
+        final boolean staticOrPartitionKey;
+
+        ColumnWriter(Kind kind, String name, AbstractType<?> type, FieldMapper fieldMapper, boolean cqlValue, boolean staticOrPartitionKey) {
+            this.kind = kind;
+            this.name = name;
+            this.type = type;
+            this.fieldType = (fieldMapper == null) ? null : fieldMapper.fieldType();
+            this.cqlValue = cqlValue;
+            this.staticOrPartitionKey = staticOrPartitionKey;
+        }
+
+        static ColumnWriter build(DocumentMapper docMapper, String name, AbstractType<?> type) {
+            if (IdFieldMapper.NAME.equals(name) || ParentFieldMapper.NAME.equals(name))
+                return new ColumnWriter(Kind.SKIP, name, type, null, false, false);
+            final FieldMapper fieldMapper = docMapper.mappers().smartNameFieldMapper(name);
+            final CQL3Type cql3Type = type.asCQL3Type();
+            if (fieldMapper == null || !(cql3Type instanceof CQL3Type.Native))
+                return new ColumnWriter(Kind.UNSUPPORTED, name, type, null, false, false);
+            if (fieldMapper instanceof MetadataFieldMapper)
+                return new ColumnWriter(Kind.SKIP, name, type, null, false, false);
+
+            final boolean staticOrPartitionKey = ClusterService.isStaticOrPartitionKey(fieldMapper);
+            final MappedFieldType fieldType = fieldMapper.fieldType();
+            final boolean stringField = fieldType instanceof KeywordFieldMapper.KeywordFieldType || fieldType instanceof TextFieldMapper.TextFieldType;
+            final String numberType = (fieldType.getClass() == NumberFieldMapper.NumberFieldType.class) ? fieldType.typeName() : null;
+            Kind kind;
+            boolean cqlValue = true;
+            switch ((CQL3Type.Native) cql3Type) {
+            case ASCII:
+            case TEXT:
+            case VARCHAR:
+                kind = stringField ? Kind.UTF8 : Kind.OBJECT;
+                cqlValue = false;
+                break;
+            case UUID:
+                kind = stringField ? Kind.STRING : Kind.OBJECT;
+                cqlValue = false;
+                break;
+            case TIMEUUID:
+                kind = (stringField && !(fieldMapper instanceof DateFieldMapper)) ? Kind.STRING : Kind.OBJECT;
+                cqlValue = false;
+                break;
+            case INT:
+                kind = "integer".equals(numberType) ? Kind.INT : Kind.OBJECT;
+                break;
+            case BIGINT:
+                kind = "long".equals(numberType) ? Kind.LONG : Kind.OBJECT;
+                break;
+            case FLOAT:
+                kind = "float".equals(numberType) ? Kind.FLOAT : Kind.OBJECT;
+                break;
+            case DOUBLE:
+                kind = "double".equals(numberType) ? Kind.DOUBLE : Kind.OBJECT;
+                break;
+            case BOOLEAN:
+                kind = (fieldType instanceof BooleanFieldMapper.BooleanFieldType) ? Kind.BOOLEAN : Kind.OBJECT;
+                break;
+            case TIMESTAMP:
+            case DATE:
+            case TIME:
+            case SMALLINT:
+            case TINYINT:
+            case BLOB:
+            case INET:
+                kind = Kind.OBJECT;
+                break;
+            case COUNTER:
+                // ignored by ClusterService.rowAsArray()
+                return new ColumnWriter(Kind.SKIP, name, type, null, false, false);
+            default:
+                return new ColumnWriter(Kind.UNSUPPORTED, name, type, null, false, false);
+            }
+            return new ColumnWriter(kind, name, type, fieldMapper, cqlValue, staticOrPartitionKey);
+        }
+
+        void write(XContentBuilder builder, ByteBuffer bb) throws IOException {
+            switch (kind) {
+            case UTF8:
+                if (bb.hasArray()) {
+                    builder.utf8Field(name, new BytesRef(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining()));
+                } else {
+                    builder.utf8Field(name, new BytesRef(ByteBufferUtil.getArray(bb)));
+                }
+                break;
+            case STRING:
+                builder.field(name, UUIDGen.getUUID(bb).toString());
+                break;
+            case INT:
+                builder.field(name, ByteBufferUtil.toInt(bb));
+                break;
+            case LONG:
+                builder.field(name, ByteBufferUtil.toLong(bb));
+                break;
+            case FLOAT:
+                builder.field(name, ByteBufferUtil.toFloat(bb));
+                break;
+            case DOUBLE:
+                builder.field(name, ByteBufferUtil.toDouble(bb));
+                break;
+            case BOOLEAN:
+                builder.field(name, bb.get(bb.position()) != 0);
+                break;
+            case OBJECT:
+                Object value = decode(bb);
+                if (cqlValue)
+                    value = fieldType.cqlValue(value);
+                builder.field(name, fieldType.valueForDisplay(value));
+                break;
+            default:
+                break;
+            }
+        }
+
+        // decode the column value as ClusterService.rowAsArray()
+        private Object decode(ByteBuffer bb) {
+            Object value = type.compose(bb);
+            switch ((CQL3Type.Native) type.asCQL3Type()) {
+            case TIMESTAMP:
+                return ((Date) value).getTime();
+            case DATE:
+                return SimpleDateSerializer.dayToTimeInMillis((Integer) value);
+            case UUID:
+                return value.toString();
+            case TIMEUUID:
+                return (fieldType instanceof DateFieldMapper.DateFieldType) ? UUIDGen.unixTimestamp((UUID) value) : value.toString();
+            default:
+                return value;
+            }
+        }
+    }
+}
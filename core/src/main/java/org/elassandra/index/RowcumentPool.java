@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Per thread pool of the buffers holding the decoded values of a row being indexed by the {@link ElasticSecondaryIndex}.
+ * Buffers are acquired when a row is collected and released when the partition update is flushed,
+ * so indexing rows does not allocate new value arrays and bitsets for each row.
+ * A pool is not thread safe and must only be used by its owner thread.
+ */
+public class RowcumentPool {
+
+    static final int MAX_POOLED_BUFFERS = 64;
+
+    public static class Buffer {
+        public final Object[] values;
+        public final BitSet fieldsNotNull;     // regular or static columns only
+        public final BitSet tombstoneColumns;  // regular or static columns only
+        public final BitSet mustReadFields;    // scratch bitset of the columns to read
+
+        Buffer(int size) {
+            this.values = new Object[size];
+            this.fieldsNotNull = new BitSet(size);
+            this.tombstoneColumns = new BitSet(size);
+            this.mustReadFields = new BitSet(size);
+        }
+
+        void clear() {
+            Arrays.fill(values, null);
+            fieldsNotNull.clear();
+            tombstoneColumns.clear();
+            mustReadFields.clear();
+        }
+    }
+
+    private final ArrayDeque<Buffer> buffers = new ArrayDeque<>();
+
+    /**
+     * Return a cleared buffer for size fields.
+     */
+    public Buffer acquire(int size) {
+        Buffer buffer;
+        while ((buffer = buffers.pollFirst()) != null) {
+            // buffers sized for a previous mapping are dropped.
+            if (buffer.values.length == size)
+                return buffer;
+        }
+        return new Buffer(size);
+    }
+
+    /**
+     * Clear and return a buffer to the pool, so that decoded values are not retained.
+     */
+    public void release(Buffer buffer) {
+        buffer.clear();
+        if (buffers.size() < MAX_POOLED_BUFFERS)
+            buffers.addFirst(buffer);
+    }
+
+    public int size() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per shard statistics of the elassandra secondary index.
+ * The stream format is not versioned, stats are only exchanged between nodes running the same elassandra release.
+ */
+public class SecondaryIndexStats implements Streamable, ToXContent {
+
+    /**
+     * Operations waiting in the asynchronous indexing queue.
+     */
+    private long pending;
+
+    /**
+     * Operations applied by the asynchronous indexing queue.
+     */
+    private long total;
+
+    /**
+     * Sum of the time operations spent in the asynchronous indexing queue.
+     */
+    private long totalLagInMillis;
+
+    /**
+     * Operations applied by the mutation thread because the asynchronous indexing queue was full.
+     */
+    private long rejected;
+
+    private long batches;
+
+    /**
+     * Synchronous refresh requested by writers.
+     */
+    private long refreshRequested;
+
+    /**
+     * Shard refresh actually performed for these requests.
+     */
+    private long refreshPerformed;
+
+    /**
+     * Row cache of the indexed tables, partial updates completed from the cache or read from the table.
+     */
+    private long rowCacheHits;
+    private long rowCacheMisses;
+    private long rowCacheEvictions;
+    private long rowCacheCount;
+    private long rowCacheSizeInBytes;
+
+    /**
+     * Partition and range tombstones buffered before being applied in a single lucene delete.
+     */
+    private long tombstonesPending;
+    private long tombstonesTotal;
+    private long tombstoneBatches;
+
+    /**
+     * Documents reindexed or deleted by compactions and removed rows ignored by compactions, per indexed table (keyspace.table).
+     */
+    private Map<String, long[]> compactions = new TreeMap<>();
+
+    /**
+     * Search fetch requests, fetched hits and cassandra reads, with the time spent in lucene and in cassandra
+     * and the per request latency histograms of each part, bucketed by {@link FetchStats#LATENCY_BUCKETS_MILLIS}.
+     */
+    private long fetchTotal;
+    private long fetchHits;
+    private long fetchReads;
+    private long fetchLuceneTimeInMillis;
+    private long fetchCassandraTimeInMillis;
+    private long[] fetchLuceneLatency = new long[FetchStats.LATENCY_BUCKETS_MILLIS.length + 1];
+    private long[] fetchCassandraLatency = new long[FetchStats.LATENCY_BUCKETS_MILLIS.length + 1];
+
+    /**
+     * Cache of the _source rendered from cassandra rows for the fetch phase and GET.
+     */
+    private long sourceCacheHits;
+    private long sourceCacheMisses;
+    private long sourceCacheEvictions;
+    private long sourceCacheCount;
+    private long sourceCacheSizeInBytes;
+
+    /**
+     * Rows read from the local tables by the fetch phase and GET requests, and rows read through the coordinator
+     * because the local node is not a replica of the partition.
+     */
+    private long localReads;
+    private long remoteReads;
+
+    public SecondaryIndexStats() {
+    }
+
+    public void addQueue(long pending, long total, long totalLagInMillis, long rejected, long batches) {
+        this.pending += pending;
+        this.total += total;
+        this.totalLagInMillis += totalLagInMillis;
+        this.rejected += rejected;
+        this.batches += batches;
+    }
+
+    public void addRefresh(long refreshRequested, long refreshPerformed) {
+        this.refreshRequested += refreshRequested;
+        this.refreshPerformed += refreshPerformed;
+    }
+
+    public void addRowCache(long hits, long misses, long evictions, long count, long sizeInBytes) {
+        this.rowCacheHits += hits;
+        this.rowCacheMisses += misses;
+        this.rowCacheEvictions += evictions;
+        this.rowCacheCount += count;
+        this.rowCacheSizeInBytes += sizeInBytes;
+    }
+
+    public void addTombstones(long pending, long total, long batches) {
+        this.tombstonesPending += pending;
+        this.tombstonesTotal += total;
+        this.tombstoneBatches += batches;
+    }
+
+    public void addCompaction(String table, long documents, long skippedRows) {
+        long[] counters = compactions.computeIfAbsent(table, t -> new long[2]);
+        counters[0] += documents;
+        counters[1] += skippedRows;
+    }
+
+    public void addFetch(long total, long hits, long reads, long luceneTimeInMillis, long cassandraTimeInMillis, long[] luceneLatency, long[] cassandraLatency) {
+        this.fetchTotal += total;
+        this.fetchHits += hits;
+        this.fetchReads += reads;
+        this.fetchLuceneTimeInMillis += luceneTimeInMillis;
+        this.fetchCassandraTimeInMillis += cassandraTimeInMillis;
+        for (int i = 0; i < fetchLuceneLatency.length && i < luceneLatency.length; i++)
+            this.fetchLuceneLatency[i] += luceneLatency[i];
+        for (int i = 0; i < fetchCassandraLatency.length && i < cassandraLatency.length; i++)
+            this.fetchCassandraLatency[i] += cassandraLatency[i];
+    }
+
+    public void addSourceCache(long hits, long misses, long evictions, long count, long sizeInBytes) {
+        this.sourceCacheHits += hits;
+        this.sourceCacheMisses += misses;
+        this.sourceCacheEvictions += evictions;
+        this.sourceCacheCount += count;
+        this.sourceCacheSizeInBytes += sizeInBytes;
+    }
+
+    public void addReads(long localReads, long remoteReads) {
+        this.localReads += localReads;
+        this.remoteReads += remoteReads;
+    }
+
+    public void add(SecondaryIndexStats stats) {
+        if (stats == null) {
+            return;
+        }
+        addQueue(stats.pending, stats.total, stats.totalLagInMillis, stats.rejected, stats.batches);
+        addRefresh(stats.refreshRequested, stats.refreshPerformed);
+        addRowCache(stats.rowCacheHits, stats.rowCacheMisses, stats.rowCacheEvictions, stats.rowCacheCount, stats.rowCacheSizeInBytes);
+        addTombstones(stats.tombstonesPending, stats.tombstonesTotal, stats.tombstoneBatches);
+        for (Map.Entry<String, long[]> entry : stats.compactions.entrySet())
+            addCompaction(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        addFetch(stats.fetchTotal, stats.fetchHits, stats.fetchReads, stats.fetchLuceneTimeInMillis, stats.fetchCassandraTimeInMillis,
+                stats.fetchLuceneLatency, stats.fetchCassandraLatency);
+        addSourceCache(stats.sourceCacheHits, stats.sourceCacheMisses, stats.sourceCacheEvictions, stats.sourceCacheCount, stats.sourceCacheSizeInBytes);
+        addReads(stats.localReads, stats.remoteReads);
+    }
+
+    public long getPending() {
+        return this.pending;
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+
+    public long getTotalLagInMillis() {
+        return this.totalLagInMillis;
+    }
+
+    public TimeValue getTotalLag() {
+        return new TimeValue(totalLagInMillis);
+    }
+
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    public long getBatches() {
+        return this.batches;
+    }
+
+    public long getRefreshRequested() {
+        return this.refreshRequested;
+    }
+
+    public long getRefreshPerformed() {
+        return this.refreshPerformed;
+    }
+
+    public long getRowCacheHits() {
+        return this.rowCacheHits;
+    }
+
+    public long getRowCacheMisses() {
+        return this.rowCacheMisses;
+    }
+
+    public long getRowCacheEvictions() {
+        return this.rowCacheEvictions;
+    }
+
+    public long getRowCacheCount() {
+        return this.rowCacheCount;
+    }
+
+    public ByteSizeValue getRowCacheSize() {
+        return new ByteSizeValue(rowCacheSizeInBytes);
+    }
+
+    public long getTombstonesPending() {
+        return this.tombstonesPending;
+    }
+
+    public long getTombstonesTotal() {
+        return this.tombstonesTotal;
+    }
+
+    public long getTombstoneBatches() {
+        return this.tombstoneBatches;
+    }
+
+    public long getCompactionDocuments() {
+        long documents = 0;
+        for (long[] counters : compactions.values())
+            documents += counters[0];
+        return documents;
+    }
+
+    /**
+     * @return the indexed tables (keyspace.table) reporting compaction counters.
+     */
+    public Set<String> getCompactionTables() {
+        return compactions.keySet();
+    }
+
+    public long getCompactionSkippedRows() {
+        long skippedRows = 0;
+        for (long[] counters : compactions.values())
+            skippedRows += counters[1];
+        return skippedRows;
+    }
+
+    public long getFetchTotal() {
+        return this.fetchTotal;
+    }
+
+    public long getFetchHits() {
+        return this.fetchHits;
+    }
+
+    public long getFetchReads() {
+        return this.fetchReads;
+    }
+
+    public TimeValue getFetchLuceneTime() {
+        return new TimeValue(fetchLuceneTimeInMillis);
+    }
+
+    public TimeValue getFetchCassandraTime() {
+        return new TimeValue(fetchCassandraTimeInMillis);
+    }
+
+    public long[] getFetchLuceneLatency() {
+        return this.fetchLuceneLatency;
+    }
+
+    public long[] getFetchCassandraLatency() {
+        return this.fetchCassandraLatency;
+    }
+
+    public long getSourceCacheHits() {
+        return this.sourceCacheHits;
+    }
+
+    public long getSourceCacheMisses() {
+        return this.sourceCacheMisses;
+    }
+
+    public double getSourceCacheHitRatio() {
+        long lookups = sourceCacheHits + sourceCacheMisses;
+        return (lookups == 0) ? 0.0 : (double) sourceCacheHits / lookups;
+    }
+
+    public long getSourceCacheEvictions() {
+        return this.sourceCacheEvictions;
+    }
+
+    public long getSourceCacheCount() {
+        return this.sourceCacheCount;
+    }
+
+    public ByteSizeValue getSourceCacheSize() {
+        return new ByteSizeValue(sourceCacheSizeInBytes);
+    }
+
+    public long getLocalReads() {
+        return this.localReads;
+    }
+
+    public long getRemoteReads() {
+        return this.remoteReads;
+    }
+
+    private static void latencyHistogram(XContentBuilder builder, String name, long[] histogram) throws IOException {
+        builder.startObject(name);
+        for (int i = 0; i < FetchStats.LATENCY_BUCKETS_MILLIS.length; i++)
+            builder.field("lt_" + FetchStats.LATENCY_BUCKETS_MILLIS[i] + "ms", histogram[i]);
+        builder.field("gte_" + FetchStats.LATENCY_BUCKETS_MILLIS[FetchStats.LATENCY_BUCKETS_MILLIS.length - 1] + "ms", histogram[FetchStats.LATENCY_BUCKETS_MILLIS.length]);
+        builder.endObject();
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("secondary_index");
+        builder.startObject("asynchronous_indexing");
+        builder.field("pending", pending);
+        builder.field("total", total);
+        builder.timeValueField("total_lag_in_millis", "total_lag", totalLagInMillis);
+        builder.field("rejected", rejected);
+        builder.field("batches", batches);
+        builder.endObject();
+        builder.startObject("synchronous_refresh");
+        builder.field("requested", refreshRequested);
+        builder.field("performed", refreshPerformed);
+        builder.endObject();
+        builder.startObject("row_cache");
+        builder.field("hits", rowCacheHits);
+        builder.field("misses", rowCacheMisses);
+        builder.field("evictions", rowCacheEvictions);
+        builder.field("count", rowCacheCount);
+        builder.byteSizeField("memory_size_in_bytes", "memory_size", rowCacheSizeInBytes);
+        builder.endObject();
+        builder.startObject("tombstones");
+        builder.field("pending", tombstonesPending);
+        builder.field("total", tombstonesTotal);
+        builder.field("batches", tombstoneBatches);
+        builder.endObject();
+        builder.startObject("compaction");
+        builder.field("documents", getCompactionDocuments());
+        builder.field("skipped_rows", getCompactionSkippedRows());
+        builder.startObject("tables");
+        for (Map.Entry<String, long[]> entry : compactions.entrySet()) {
+            builder.startObject(entry.getKey());
+            builder.field("documents", entry.getValue()[0]);
+            builder.field("skipped_rows", entry.getValue()[1]);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.endObject();
+        builder.startObject("fetch");
+        builder.field("total", fetchTotal);
+        builder.field("hits", fetchHits);
+        builder.field("cassandra_reads", fetchReads);
+        builder.timeValueField("lucene_time_in_millis", "lucene_time", fetchLuceneTimeInMillis);
+        builder.timeValueField("cassandra_time_in_millis", "cassandra_time", fetchCassandraTimeInMillis);
+        latencyHistogram(builder, "lucene_latency", fetchLuceneLatency);
+        latencyHistogram(builder, "cassandra_latency", fetchCassandraLatency);
+        builder.endObject();
+        builder.startObject("source_cache");
+        builder.field("hits", sourceCacheHits);
+        builder.field("misses", sourceCacheMisses);
+        builder.field("hit_ratio", getSourceCacheHitRatio());
+        builder.field("evictions", sourceCacheEvictions);
+        builder.field("count", sourceCacheCount);
+        builder.byteSizeField("memory_size_in_bytes", "memory_size", sourceCacheSizeInBytes);
+        builder.endObject();
+        builder.startObject("reads");
+        builder.field("local", localReads);
+        builder.field("remote", remoteReads);
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        pending = in.readVLong();
+        total = in.readVLong();
+        totalLagInMillis = in.readVLong();
+        rejected = in.readVLong();
+        batches = in.readVLong();
+        refreshRequested = in.readVLong();
+        refreshPerformed = in.readVLong();
+        rowCacheHits = in.readVLong();
+        rowCacheMisses = in.readVLong();
+        rowCacheEvictions = in.readVLong();
+        rowCacheCount = in.readVLong();
+        rowCacheSizeInBytes = in.readVLong();
+        tombstonesPending = in.readVLong();
+        tombstonesTotal = in.readVLong();
+        tombstoneBatches = in.readVLong();
+        int size = in.readVInt();
+        compactions = new TreeMap<>();
+        for (int i = 0; i < size; i++)
+            compactions.put(in.readString(), new long[] { in.readVLong(), in.readVLong() });
+        fetchTotal = in.readVLong();
+        fetchHits = in.readVLong();
+        fetchReads = in.readVLong();
+        fetchLuceneTimeInMillis = in.readVLong();
+        fetchCassandraTimeInMillis = in.readVLong();
+        fetchLuceneLatency = in.readVLongArray();
+        fetchCassandraLatency = in.readVLongArray();
+        sourceCacheHits = in.readVLong();
+        sourceCacheMisses = in.readVLong();
+        sourceCacheEvictions = in.readVLong();
+        sourceCacheCount = in.readVLong();
+        sourceCacheSizeInBytes = in.readVLong();
+        localReads = in.readVLong();
+        remoteReads = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(pending);
+        out.writeVLong(total);
+        out.writeVLong(totalLagInMillis);
+        out.writeVLong(rejected);
+        out.writeVLong(batches);
+        out.writeVLong(refreshRequested);
+        out.writeVLong(refreshPerformed);
+        out.writeVLong(rowCacheHits);
+        out.writeVLong(rowCacheMisses);
+        out.writeVLong(rowCacheEvictions);
+        out.writeVLong(rowCacheCount);
+        out.writeVLong(rowCacheSizeInBytes);
+        out.writeVLong(tombstonesPending);
+        out.writeVLong(tombstonesTotal);
+        out.writeVLong(tombstoneBatches);
+        out.writeVInt(compactions.size());
+        for (Map.Entry<String, long[]> entry : compactions.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVLong(entry.getValue()[0]);
+            out.writeVLong(entry.getValue()[1]);
+        }
+        out.writeVLong(fetchTotal);
+        out.writeVLong(fetchHits);
+        out.writeVLong(fetchReads);
+        out.writeVLong(fetchLuceneTimeInMillis);
+        out.writeVLong(fetchCassandraTimeInMillis);
+        out.writeVLongArray(fetchLuceneLatency);
+        out.writeVLongArray(fetchCassandraLatency);
+        out.writeVLong(sourceCacheHits);
+        out.writeVLong(sourceCacheMisses);
+        out.writeVLong(sourceCacheEvictions);
+        out.writeVLong(sourceCacheCount);
+        out.writeVLong(sourceCacheSizeInBytes);
+        out.writeVLong(localReads);
+        out.writeVLong(remoteReads);
+    }
+}
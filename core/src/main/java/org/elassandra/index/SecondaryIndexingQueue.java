@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.CheckedRunnable;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per shard queue of Lucene operations produced by the {@link ElasticSecondaryIndex} when index.asynchronous_indexing is enabled.
+ * Documents are parsed on the Cassandra mutation thread, and the resulting Lucene writes are applied in batches
+ * by the secondary_index thread pool, in submission order. When the queue is full, the submitting thread drains
+ * the queue and applies its operation inline, providing back-pressure to the write path.
+ * Operations lost on a node crash are recovered by the commitlog replay, as for synchronous indexing.
+ */
+public class SecondaryIndexingQueue {
+
+    private final Logger logger;
+    private final ThreadPool threadPool;
+    private final BlockingQueue<Task> queue;
+    private final int batchSize;
+
+    // only one thread applies operations at a time, this preserves the submission order.
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final MeanMetric lagMetric = new MeanMetric();
+    private final CounterMetric rejectedMetric = new CounterMetric();
+    private final CounterMetric batchMetric = new CounterMetric();
+
+    private volatile boolean closed = false;
+
+    static class Task {
+        final CheckedRunnable<Exception> op;
+        final long submitTime = System.nanoTime();
+
+        Task(CheckedRunnable<Exception> op) {
+            this.op = op;
+        }
+    }
+
+    public SecondaryIndexingQueue(Logger logger, ThreadPool threadPool, int queueSize, int batchSize) {
+        this.logger = logger;
+        this.threadPool = threadPool;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queue a Lucene operation, or apply it in the calling thread if the queue is full or closed.
+     */
+    public void submit(CheckedRunnable<Exception> op) {
+        if (!closed && queue.offer(new Task(op))) {
+            schedule();
+            return;
+        }
+        rejectedMetric.inc();
+        drainLock.lock();
+        try {
+            while (applyBatch() > 0);
+            apply(op);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Synchronously apply all pending operations, called before flushing the shard.
+     */
+    public void drain() {
+        drainLock.lock();
+        try {
+            while (applyBatch() > 0);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addQueue(queue.size(), lagMetric.count(), TimeUnit.NANOSECONDS.toMillis(lagMetric.sum()),
+                rejectedMetric.count(), batchMetric.count());
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            threadPool.executor(ThreadPool.Names.SECONDARY_INDEX).execute(new AbstractRunnable() {
+                boolean rejected = false;
+
+                @Override
+                protected void doRun() throws Exception {
+                    int applied;
+                    do {
+                        // release the lock between batches to let flush or a rejected submitter drain the queue.
+                        drainLock.lock();
+                        try {
+                            applied = applyBatch();
+                        } finally {
+                            drainLock.unlock();
+                        }
+                    } while (applied > 0);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.error("Failed to drain the secondary indexing queue", e);
+                }
+
+                @Override
+                public void onRejection(Exception e) {
+                    // thread pool shutdown, pending operations are applied by the next drain.
+                    rejected = true;
+                    logger.debug("Secondary indexing queue drain rejected", e);
+                }
+
+                @Override
+                public void onAfter() {
+                    scheduled.set(false);
+                    if (!rejected && !closed && !queue.isEmpty())
+                        schedule();
+                }
+            });
+        }
+    }
+
+    // caller must hold the drainLock.
+    private int applyBatch() {
+        List<Task> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+        queue.drainTo(batch, batchSize);
+        if (batch.isEmpty())
+            return 0;
+        for (Task task : batch) {
+            lagMetric.inc(System.nanoTime() - task.submitTime);
+            apply(task.op);
+        }
+        batchMetric.inc();
+        return batch.size();
+    }
+
+    private void apply(CheckedRunnable<Exception> op) {
+        try {
+            op.run();
+        } catch (Exception e) {
+            logger.error("Secondary indexing operation failed", e);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.cql3.CQL3Type;
+import org.apache.cassandra.db.ClusteringBound;
+import org.apache.cassandra.db.Slice;
+import org.apache.cassandra.serializers.SimpleDateSerializer;
+import org.apache.cassandra.utils.UUIDGen;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.InetAddressPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.elasticsearch.common.lucene.BytesRefs;
+import org.elasticsearch.index.mapper.BooleanFieldMapper;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.IpFieldMapper;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Translate a clustering {@link Slice} of a range tombstone into a lucene query on the indexed clustering columns.
+ * <p>
+ * A slice selects the rows whose clustering is lexicographically between its start and end bounds, so a bound
+ * on the leading columns is translated into exact matches, and the first differing column into a range completed
+ * by the bounds of the next columns. Reversed clustering columns swap their bounds.
+ * When a column is not indexed, or when its indexed values do not keep the cassandra ordering (uuid as keyword,
+ * timeuuid as date, inet, decimal, blob...), the built query matches a superset of the slice and {@link #isExact()}
+ * returns false, matching documents must then be checked against the slice.
+ */
+public class SliceQueryBuilder {
+
+    private static final Query NONE = new MatchNoDocsQuery();
+
+    private final CFMetaData metadata;
+    private final DocumentMapper docMapper;
+    private final boolean[] indexedPkColumns;
+    private final int partitionKeySize;
+
+    private ClusteringBound start;
+    private ClusteringBound end;
+    private boolean exact;
+
+    public SliceQueryBuilder(CFMetaData metadata, DocumentMapper docMapper, boolean[] indexedPkColumns) {
+        this.metadata = metadata;
+        this.docMapper = docMapper;
+        this.indexedPkColumns = indexedPkColumns;
+        this.partitionKeySize = metadata.partitionKeyColumns().size();
+    }
+
+    /**
+     * @return the query matching the rows of the slice, or null when the slice covers the whole partition.
+     */
+    public Query build(Slice slice) {
+        this.start = slice.start();
+        this.end = slice.end();
+        this.exact = true;
+        return between(0);
+    }
+
+    /**
+     * @return true if the last built query matches exactly the rows of the slice.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    private boolean isReversed(int k) {
+        return metadata.clusteringColumns().get(k).isReversedType();
+    }
+
+    // rows between start and end bounds, the k first columns being equal in both bounds.
+    private Query between(int k) {
+        if (k < start.size() && k < end.size() && metadata.comparator.subtype(k).compare(start.get(k), end.get(k)) == 0)
+            return and(term(k, start.get(k)), between(k+1));
+        if (k == start.size() && k == end.size())
+            return (start.isInclusive() && end.isInclusive()) ? null : NONE;
+        if (k == start.size())
+            return start.isInclusive() ? before(k) : NONE;
+        if (k == end.size())
+            return end.isInclusive() ? after(k) : NONE;
+
+        Query lower = after(k+1);
+        Query upper = before(k+1);
+        Query query = range(k, start.get(k), end.get(k), lower == null, upper == null);
+        if (lower != null && lower != NONE)
+            query = or(query, and(term(k, start.get(k)), lower));
+        if (upper != null && upper != NONE)
+            query = or(query, and(term(k, end.get(k)), upper));
+        return query;
+    }
+
+    // rows after the start bound from column k.
+    private Query after(int k) {
+        if (k == start.size())
+            return start.isInclusive() ? null : NONE;
+        Query next = after(k+1);
+        Query query = range(k, start.get(k), null, next == null, false);
+        if (next != null && next != NONE)
+            query = or(query, and(term(k, start.get(k)), next));
+        return query;
+    }
+
+    // rows before the end bound from column k.
+    private Query before(int k) {
+        if (k == end.size())
+            return end.isInclusive() ? null : NONE;
+        Query next = before(k+1);
+        Query query = range(k, null, end.get(k), false, next == null);
+        if (next != null && next != NONE)
+            query = or(query, and(term(k, end.get(k)), next));
+        return query;
+    }
+
+    private static Query and(Query q1, Query q2) {
+        if (q1 == NONE || q2 == NONE)
+            return NONE;
+        if (q1 == null)
+            return q2;
+        if (q2 == null)
+            return q1;
+        return new BooleanQuery.Builder().add(q1, Occur.FILTER).add(q2, Occur.FILTER).build();
+    }
+
+    private static Query or(Query q1, Query q2) {
+        if (q1 == null || q2 == null)
+            return null;
+        if (q1 == NONE)
+            return q2;
+        if (q2 == NONE)
+            return q1;
+        return new BooleanQuery.Builder().add(q1, Occur.SHOULD).add(q2, Occur.SHOULD).setMinimumNumberShouldMatch(1).build();
+    }
+
+    private FieldMapper mapper(int k) {
+        if (!indexedPkColumns[partitionKeySize + k])
+            return null;
+        FieldMapper mapper = docMapper.mappers().smartNameFieldMapper(metadata.clusteringColumns().get(k).name.toString());
+        return (mapper == null || mapper.fieldType().indexOptions() == IndexOptions.NONE) ? null : mapper;
+    }
+
+    // documents having the column value, or null when not supported.
+    private Query term(int k, ByteBuffer bb) {
+        return range(k, bb, bb, true, true);
+    }
+
+    /**
+     * Documents having the column value in the range given in the clustering order, null bounds are unbounded.
+     * When the range cannot be translated exactly, return a larger query or null.
+     */
+    private Query range(int k, ByteBuffer lowerBB, ByteBuffer upperBB, boolean includeLower, boolean includeUpper) {
+        if (isReversed(k)) {
+            ByteBuffer bb = lowerBB;
+            lowerBB = upperBB;
+            upperBB = bb;
+            boolean b = includeLower;
+            includeLower = includeUpper;
+            includeUpper = b;
+        }
+        final ColumnDefinition cd = metadata.clusteringColumns().get(k);
+        final FieldMapper mapper = mapper(k);
+        if (mapper == null) {
+            exact = false;
+            return null;
+        }
+        final String field = mapper.fieldType().name();
+        final boolean isTerm = lowerBB != null && lowerBB == upperBB;
+        final Object lower = lowerBB == null ? null : cd.type.compose(lowerBB);
+        final Object upper = upperBB == null ? null : cd.type.compose(upperBB);
+        final CQL3Type cql3Type = cd.type.asCQL3Type();
+
+        if (mapper instanceof KeywordFieldMapper) {
+            if (isTerm)
+                return new TermQuery(new Term(field, BytesRefs.toBytesRef(lower)));
+            if (cql3Type == CQL3Type.Native.ASCII || cql3Type == CQL3Type.Native.TEXT || cql3Type == CQL3Type.Native.VARCHAR)
+                return new TermRangeQuery(field, BytesRefs.toBytesRef(lower), BytesRefs.toBytesRef(upper), includeLower, includeUpper);
+        } else if (mapper instanceof BooleanFieldMapper) {
+            // indexed as F and T, false < true as in cassandra.
+            return isTerm ?
+                new TermQuery(new Term(field, ((Boolean)lower) ? "T" : "F")) :
+                new TermRangeQuery(field,
+                    lower == null ? null : BytesRefs.toBytesRef(((Boolean)lower) ? "T" : "F"),
+                    upper == null ? null : BytesRefs.toBytesRef(((Boolean)upper) ? "T" : "F"),
+                    includeLower, includeUpper);
+        } else if (mapper instanceof DateFieldMapper) {
+            if (cql3Type == CQL3Type.Native.TIMEUUID) {
+                // many timeuuid per millisecond.
+                exact = false;
+                includeLower = includeUpper = true;
+            }
+            return longRange(field, toMillis(lower), toMillis(upper), includeLower, includeUpper);
+        } else if (mapper instanceof NumberFieldMapper) {
+            if ((lower == null || lower instanceof Number) && (upper == null || upper instanceof Number)) {
+                if (lower instanceof BigDecimal || upper instanceof BigDecimal || lower instanceof BigInteger || upper instanceof BigInteger) {
+                    // decimal or varint conversion is monotonic, inclusive bounds match a superset.
+                    exact = false;
+                    includeLower = includeUpper = true;
+                }
+                switch (mapper.fieldType().typeName()) {
+                case "byte":
+                case "short":
+                case "integer":
+                    return intRange(field, (Number)lower, (Number)upper, includeLower, includeUpper);
+                case "long":
+                    return longRange(field, (Number)lower, (Number)upper, includeLower, includeUpper);
+                case "double":
+                    return doubleRange(field, (Number)lower, (Number)upper, includeLower, includeUpper);
+                case "float":
+                    return floatRange(field, (Number)lower, (Number)upper, includeLower, includeUpper);
+                }
+            }
+        } else if (mapper instanceof IpFieldMapper) {
+            // cassandra compares raw addresses, ipv4 and ipv6 addresses are not ordered as in lucene.
+            if (isTerm)
+                return InetAddressPoint.newExactQuery(field, (InetAddress)lower);
+        }
+        exact = false;
+        return null;
+    }
+
+    private static Long toMillis(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof Date)
+            return ((Date)value).getTime();
+        if (value instanceof Integer)
+            return SimpleDateSerializer.dayToTimeInMillis((Integer)value);   // CQL date
+        if (value instanceof UUID)
+            return UUIDGen.unixTimestamp((UUID)value);                      // CQL timeuuid
+        return ((Number)value).longValue();
+    }
+
+    private static Query intRange(String field, Number lower, Number upper, boolean includeLower, boolean includeUpper) {
+        int l = Integer.MIN_VALUE, u = Integer.MAX_VALUE;
+        if (lower != null) {
+            l = lower.intValue();
+            if (!includeLower) {
+                if (l == Integer.MAX_VALUE)
+                    return NONE;
+                l++;
+            }
+        }
+        if (upper != null) {
+            u = upper.intValue();
+            if (!includeUpper) {
+                if (u == Integer.MIN_VALUE)
+                    return NONE;
+                u--;
+            }
+        }
+        return IntPoint.newRangeQuery(field, l, u);
+    }
+
+    private static Query longRange(String field, Number lower, Number upper, boolean includeLower, boolean includeUpper) {
+        long l = Long.MIN_VALUE, u = Long.MAX_VALUE;
+        if (lower != null) {
+            l = lower.longValue();
+            if (!includeLower) {
+                if (l == Long.MAX_VALUE)
+                    return NONE;
+                l++;
+            }
+        }
+        if (upper != null) {
+            u = upper.longValue();
+            if (!includeUpper) {
+                if (u == Long.MIN_VALUE)
+                    return NONE;
+                u--;
+            }
+        }
+        return LongPoint.newRangeQuery(field, l, u);
+    }
+
+    private static Query doubleRange(String field, Number lower, Number upper, boolean includeLower, boolean includeUpper) {
+        double l = Double.NEGATIVE_INFINITY, u = Double.POSITIVE_INFINITY;
+        if (lower != null) {
+            l = lower.doubleValue();
+            if (!includeLower)
+                l = DoublePoint.nextUp(l);
+        }
+        if (upper != null) {
+            u = upper.doubleValue();
+            if (!includeUpper)
+                u = DoublePoint.nextDown(u);
+        }
+        return DoublePoint.newRangeQuery(field, l, u);
+    }
+
+    private static Query floatRange(String field, Number lower, Number upper, boolean includeLower, boolean includeUpper) {
+        float l = Float.NEGATIVE_INFINITY, u = Float.POSITIVE_INFINITY;
+        if (lower != null) {
+            l = lower.floatValue();
+            if (!includeLower)
+                l = FloatPoint.nextUp(l);
+        }
+        if (upper != null) {
+            u = upper.floatValue();
+            if (!includeUpper)
+                u = FloatPoint.nextDown(u);
+        }
+        return FloatPoint.newRangeQuery(field, l, u);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per shard size bounded cache of the _source rendered from cassandra rows, used by the fetch phase and GET
+ * to serve hot documents without reading the table.
+ * <p>
+ * Only the complete _source of a document, rendered from all the columns of its mapping, is cached, by type and partition.
+ * The {@link ElasticSecondaryIndex} invalidates a partition when it is updated, and a per partition generation prevents
+ * a read started before an update from loading a stale _source. Entries expire after {@link #EXPIRE_AFTER_WRITE},
+ * so that cells expired by a TTL are not served for long.
+ */
+public class SourceCache {
+
+    static final TimeValue EXPIRE_AFTER_WRITE = TimeValue.timeValueMinutes(1);
+
+    private static final int LOCKS = 1024;
+
+    static final class Key {
+        final String type;
+        final ByteBuffer partitionKey;
+
+        Key(String type, ByteBuffer partitionKey) {
+            this.type = type;
+            this.partitionKey = partitionKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return type.equals(other.type) && partitionKey.equals(other.partitionKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + partitionKey.hashCode();
+        }
+    }
+
+    /**
+     * Immutable cached documents of a partition, replaced when a document is added.
+     */
+    static final class CachedPartition {
+        final Map<String, ColumnDefinition> columnDefs;  // column set of the mapping the documents were rendered with
+        final Map<String, BytesReference> sources;
+        final long weight;
+
+        CachedPartition(Map<String, ColumnDefinition> columnDefs, Map<String, BytesReference> sources, long weight) {
+            this.columnDefs = columnDefs;
+            this.sources = sources;
+            this.weight = weight;
+        }
+    }
+
+    private final Cache<Key, CachedPartition> cache;
+    private final Object[] locks = new Object[LOCKS];
+    private final AtomicLongArray generations = new AtomicLongArray(LOCKS);
+
+    private final CounterMetric hitMetric = new CounterMetric();
+    private final CounterMetric missMetric = new CounterMetric();
+    private final CounterMetric evictionMetric = new CounterMetric();
+
+    public SourceCache(long maxWeightInBytes) {
+        for (int i = 0; i < LOCKS; i++)
+            locks[i] = new Object();
+        this.cache = CacheBuilder.<Key, CachedPartition>builder()
+                .setMaximumWeight(maxWeightInBytes)
+                .setExpireAfterWrite(EXPIRE_AFTER_WRITE)
+                .weigher((k, p) -> k.type.length() + k.partitionKey.remaining() + p.weight)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    private void onRemoval(RemovalNotification<Key, CachedPartition> notification) {
+        if (notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED)
+            evictionMetric.inc();
+    }
+
+    private static int stripe(String type, ByteBuffer partitionKey) {
+        return ((31 * type.hashCode() + partitionKey.hashCode()) & 0x7fffffff) % LOCKS;
+    }
+
+    /**
+     * Generation to capture before reading a row to be loaded with {@link #put}.
+     */
+    public long generation(String type, ByteBuffer partitionKey) {
+        return generations.get(stripe(type, partitionKey));
+    }
+
+    /**
+     * @return the cached _source of the document, or null if not cached or rendered with another column set.
+     */
+    public BytesReference get(String type, ByteBuffer partitionKey, String id, Map<String, ColumnDefinition> columnDefs) {
+        CachedPartition partition = cache.get(new Key(type, partitionKey));
+        BytesReference source = (partition == null || partition.columnDefs != columnDefs) ? null : partition.sources.get(id);
+        if (source == null)
+            missMetric.inc();
+        else
+            hitMetric.inc();
+        return source;
+    }
+
+    /**
+     * Cache the _source of a document, unless its partition was updated since the generation was captured.
+     */
+    public void put(String type, ByteBuffer partitionKey, String id, Map<String, ColumnDefinition> columnDefs, BytesReference source, long generation) {
+        final int stripe = stripe(type, partitionKey);
+        synchronized (locks[stripe]) {
+            if (generations.get(stripe) != generation)
+                return;
+            final Key key = new Key(type, partitionKey);
+            CachedPartition partition = cache.get(key);
+            Map<String, BytesReference> sources;
+            long weight = 64;
+            if (partition == null || partition.columnDefs != columnDefs) {
+                sources = Collections.singletonMap(id, source);
+            } else {
+                sources = new HashMap<>(partition.sources);
+                BytesReference previous = sources.put(id, source);
+                weight = partition.weight - ((previous == null) ? 0 : previous.length() + id.length() * 2);
+            }
+            weight += source.length() + id.length() * 2;
+            cache.put(new Key(type, ByteBufferUtil.clone(partitionKey)), new CachedPartition(columnDefs, sources, weight));
+        }
+    }
+
+    /**
+     * Invalidate the cached documents of an updated partition.
+     */
+    public void invalidate(String type, ByteBuffer partitionKey) {
+        final int stripe = stripe(type, partitionKey);
+        synchronized (locks[stripe]) {
+            generations.incrementAndGet(stripe);
+            cache.invalidate(new Key(type, partitionKey));
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < LOCKS; i++)
+            generations.incrementAndGet(i);
+        cache.invalidateAll();
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addSourceCache(hitMetric.count(), missMetric.count(), evictionMetric.count(), cache.count(), cache.weight());
+    }
+}
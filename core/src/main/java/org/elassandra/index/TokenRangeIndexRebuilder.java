@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DataRange;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadExecutionController;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterators;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.index.Index;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.logging.Loggers;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuild an {@link ElasticSecondaryIndex} by splitting the token ring in sub-ranges scanned in parallel.
+ * Each sub-range is read locally by pages of partitions, so that the read barrier is not held for the whole scan,
+ * and rows are indexed as complete rows without read-before-write nor refresh of the shards.
+ */
+public class TokenRangeIndexRebuilder {
+
+    static final int PAGE_SIZE = 1000;             // partitions read before releasing the read barrier
+    static final int ROWS_PER_INDEXER = 1000;      // rows of a wide partition indexed by the same indexer
+
+    /**
+     * Progress of a token sub-range.
+     */
+    public static class RangeProgress {
+        private final Range<Token> range;
+        private final AtomicLong partitions = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private volatile boolean done = false;
+
+        RangeProgress(Range<Token> range) {
+            this.range = range;
+        }
+
+        public Range<Token> range() {
+            return range;
+        }
+
+        public long partitions() {
+            return partitions.get();
+        }
+
+        public long rows() {
+            return rows.get();
+        }
+
+        public boolean done() {
+            return done;
+        }
+    }
+
+    private final Logger logger;
+    private final ElasticSecondaryIndex index;
+    private final ColumnFamilyStore baseCfs;
+    private final List<RangeProgress> ranges;
+
+    public TokenRangeIndexRebuilder(ElasticSecondaryIndex index, int splits) {
+        this.index = index;
+        this.baseCfs = index.baseCfs;
+        this.logger = Loggers.getLogger(TokenRangeIndexRebuilder.class);
+        List<RangeProgress> progress = new ArrayList<>(splits);
+        for (Range<Token> range : split(splits))
+            progress.add(new RangeProgress(range));
+        this.ranges = Collections.unmodifiableList(progress);
+    }
+
+    /**
+     * Split the murmur3 token ring in contiguous sub-ranges of the same width.
+     */
+    public static List<Range<Token>> split(int splits) {
+        if (splits < 1)
+            throw new IllegalArgumentException("Number of token range splits must be greater than 0");
+        final BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        final BigInteger width = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+        final List<Range<Token>> ranges = new ArrayList<>(splits);
+        long left = Long.MIN_VALUE;
+        for (int i = 1; i <= splits; i++) {
+            long right = (i == splits) ? Long.MAX_VALUE : min.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(splits))).longValue();
+            ranges.add(new Range<Token>(new LongToken(left), new LongToken(right)));
+            left = right;
+        }
+        return ranges;
+    }
+
+    public String keyspace() {
+        return baseCfs.keyspace.getName();
+    }
+
+    public String table() {
+        return baseCfs.name;
+    }
+
+    public List<RangeProgress> ranges() {
+        return ranges;
+    }
+
+    /**
+     * Index all sub-ranges with the executor and wait for completion.
+     */
+    public void rebuild(ExecutorService executor) throws IOException {
+        logger.info("Rebuilding index [{}] of table [{}.{}] with {} token ranges", index.index_name, keyspace(), table(), ranges.size());
+        final List<Future<?>> futures = new ArrayList<>(ranges.size());
+        for (RangeProgress progress : ranges)
+            futures.add(executor.submit(() -> rebuild(progress)));
+
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> f : futures)
+                    f.cancel(true);
+                throw new IOException("Interrupted while rebuilding index " + index.index_name, e);
+            }
+        }
+        if (failure != null)
+            throw new IOException("Failed to rebuild index " + index.index_name, failure);
+        logger.info("Index [{}] of table [{}.{}] rebuilt", index.index_name, keyspace(), table());
+    }
+
+    private void rebuild(RangeProgress progress) {
+        final PartitionPosition stop = progress.range.right.maxKeyBound();
+        Range<PartitionPosition> keyRange = new Range<>(progress.range.left.maxKeyBound(), stop);
+        while (keyRange != null && !Thread.currentThread().isInterrupted()) {
+            final int nowInSec = FBUtilities.nowInSeconds();
+            final PartitionRangeReadCommand command = PartitionRangeReadCommand.create(false, baseCfs.metadata, nowInSec,
+                    ColumnFilter.all(baseCfs.metadata), RowFilter.NONE, DataLimits.NONE, DataRange.forKeyRange(keyRange));
+            DecoratedKey lastKey = null;
+            boolean hasMore = false;
+            try (ReadExecutionController controller = command.executionController();
+                 UnfilteredPartitionIterator partitions = command.executeLocally(controller)) {
+                for (int count = 0; partitions.hasNext(); count++) {
+                    if (count == PAGE_SIZE) {
+                        hasMore = true;
+                        break;
+                    }
+                    try (RowIterator partition = UnfilteredRowIterators.filter(partitions.next(), nowInSec)) {
+                        lastKey = partition.partitionKey();
+                        index(partition, nowInSec, progress);
+                    }
+                }
+            }
+            keyRange = (hasMore) ? new Range<>(lastKey, stop) : null;
+        }
+        // an interrupted (cancelled) range is not done.
+        progress.done = (keyRange == null);
+        if (logger.isDebugEnabled())
+            logger.debug("index [{}] token range {} rebuilt, partitions={} rows={}", index.index_name, progress.range, progress.partitions(), progress.rows());
+    }
+
+    private void index(RowIterator partition, int nowInSec, RangeProgress progress) {
+        final DecoratedKey key = partition.partitionKey();
+        final Row staticRow = partition.staticRow();
+        int rows = 0;
+        Index.Indexer indexer = null;
+        try (OpOrder.Group opGroup = Keyspace.writeOrder.start()) {
+            while (partition.hasNext()) {
+                if (indexer == null)
+                    indexer = begin(key, nowInSec, opGroup, staticRow);
+                if (indexer == null)
+                    return; // index not ready
+                indexer.insertRow(partition.next());
+                if (++rows % ROWS_PER_INDEXER == 0) {
+                    indexer.finish();
+                    indexer = null;
+                }
+            }
+            if (indexer == null && rows == 0 && !staticRow.isEmpty())
+                indexer = begin(key, nowInSec, opGroup, staticRow);
+            if (indexer != null)
+                indexer.finish();
+        }
+        progress.partitions.incrementAndGet();
+        progress.rows.addAndGet(rows);
+    }
+
+    // the static row is provided to each indexer of a wide partition, so that rows can be completed with static columns.
+    private Index.Indexer begin(DecoratedKey key, int nowInSec, OpOrder.Group opGroup, Row staticRow) {
+        Index.Indexer indexer = index.rebuildIndexerFor(key, nowInSec, opGroup);
+        if (indexer != null) {
+            indexer.begin();
+            if (!staticRow.isEmpty())
+                indexer.insertRow(staticRow);
+        }
+        return indexer;
+    }
+}
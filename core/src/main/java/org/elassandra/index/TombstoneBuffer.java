@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import com.carrotsearch.hppc.LongHashSet;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.index.mapper.TypeFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per shard buffer of the partition and range tombstones received by the {@link ElasticSecondaryIndex}.
+ * Buffered tombstones are applied in a single index writer delete when the buffer is full, before the shard is
+ * refreshed or flushed, and before indexing a document of a partition having a buffered tombstone, so that
+ * deletions keep their order with respect to the documents indexed after them.
+ * Partition tombstones of a type are merged in a single set query on the _token field.
+ */
+public class TombstoneBuffer {
+
+    private final Logger logger;
+    private final IndexShard indexShard;
+    private final int maxSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, LongHashSet> partitions = new HashMap<>();  // deleted partition tokens by type
+    private final List<Query> ranges = new ArrayList<>();
+    private final LongHashSet tokens = new LongHashSet();                 // tokens of all buffered tombstones
+    private volatile int size = 0;
+
+    private final CounterMetric tombstoneMetric = new CounterMetric();
+    private final CounterMetric batchMetric = new CounterMetric();
+
+    public TombstoneBuffer(Logger logger, IndexShard indexShard, int maxSize) {
+        this.logger = logger;
+        this.indexShard = indexShard;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Buffer the deletion of all documents of a type in the partition.
+     */
+    public void deletePartition(String type, long token) {
+        lock.lock();
+        try {
+            partitions.computeIfAbsent(type, t -> new LongHashSet()).add(token);
+            add(token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffer the deletion of the documents of the partition matching the query.
+     */
+    public void deleteRange(long token, Query query) {
+        lock.lock();
+        try {
+            ranges.add(query);
+            add(token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(long token) {
+        tokens.add(token);
+        size++;
+        tombstoneMetric.inc();
+        if (size >= maxSize)
+            apply();
+    }
+
+    /**
+     * Apply buffered tombstones before indexing a document of the partition.
+     */
+    public void beforeIndex(long token) {
+        if (size == 0)
+            return;
+        lock.lock();
+        try {
+            if (tokens.contains(token))
+                apply();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply all buffered tombstones.
+     */
+    public void flush() {
+        if (size == 0)
+            return;
+        lock.lock();
+        try {
+            apply();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int pending() {
+        return size;
+    }
+
+    private void apply() {
+        if (size == 0)
+            return;
+        List<Query> queries = new ArrayList<>(partitions.size() + ranges.size());
+        for(Map.Entry<String, LongHashSet> entry : partitions.entrySet()) {
+            queries.add(new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(TypeFieldMapper.NAME, entry.getKey())), Occur.FILTER)
+                    .add(LongPoint.newSetQuery(TokenFieldMapper.NAME, entry.getValue().toArray()), Occur.FILTER)
+                    .build());
+        }
+        queries.addAll(ranges);
+        try {
+            if (logger.isTraceEnabled())
+                logger.trace("applying {} buffered tombstones, queries={}", size, queries);
+            indexShard.getEngine().deleteByQueries(queries.toArray(new Query[queries.size()]));
+            batchMetric.inc();
+        } catch (Exception e) {
+            logger.error("Failed to apply buffered tombstones", e);
+        } finally {
+            partitions.clear();
+            ranges.clear();
+            tokens.clear();
+            size = 0;
+        }
+    }
+
+    public void stats(SecondaryIndexStats stats) {
+        stats.addTombstones(size, tombstoneMetric.count(), batchMetric.count());
+    }
+}
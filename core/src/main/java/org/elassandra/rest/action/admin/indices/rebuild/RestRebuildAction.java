@@ -40,6 +40,8 @@ public class RestRebuildAction extends BaseRestHandler {
     public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
         RebuildRequest rebuildRequest = rebuildRequest( Strings.splitStringByCommaToArray(request.param("index")));
         rebuildRequest.indicesOptions(IndicesOptions.fromRequest(request, rebuildRequest.indicesOptions()));
+        rebuildRequest.numThreads(request.paramAsInt("num_threads", rebuildRequest.numThreads()));
+        rebuildRequest.rangeSplits(request.paramAsInt("range_splits", rebuildRequest.rangeSplits()));
         return channel -> client.admin().indices().rebuild(rebuildRequest,new RestBuilderListener<RebuildResponse>(channel) {
             @Override
             public RestResponse buildResponse(RebuildResponse response, XContentBuilder builder) throws Exception {
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.admin.indices.stats;
 
+import org.elassandra.index.SecondaryIndexStats;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -100,6 +101,9 @@ public class CommonStats implements Writeable, ToXContent {
     @Nullable
     public RecoveryStats recoveryStats;
 
+    @Nullable
+    public SecondaryIndexStats secondaryIndex;
+
     public CommonStats() {
         this(CommonStatsFlags.NONE);
     }
@@ -160,6 +164,9 @@ public class CommonStats implements Writeable, ToXContent {
                 case Recovery:
                     recoveryStats = new RecoveryStats();
                     break;
+                case SecondaryIndex:
+                    secondaryIndex = new SecondaryIndexStats();
+                    break;
                 default:
                     throw new IllegalStateException("Unknown Flag: " + flag);
             }
@@ -221,6 +228,9 @@ public class CommonStats implements Writeable, ToXContent {
                 case Recovery:
                     recoveryStats = indexShard.recoveryStats();
                     break;
+                case SecondaryIndex:
+                    secondaryIndex = indexShard.secondaryIndexStats();
+                    break;
                 default:
                     throw new IllegalStateException("Unknown Flag: " + flag);
             }
@@ -244,6 +254,7 @@ public class CommonStats implements Writeable, ToXContent {
         translog = in.readOptionalStreamable(TranslogStats::new);
         requestCache = in.readOptionalStreamable(RequestCacheStats::new);
         recoveryStats = in.readOptionalStreamable(RecoveryStats::new);
+        secondaryIndex = in.readOptionalStreamable(SecondaryIndexStats::new);
     }
 
     @Override
@@ -264,6 +275,7 @@ public class CommonStats implements Writeable, ToXContent {
         out.writeOptionalStreamable(translog);
         out.writeOptionalStreamable(requestCache);
         out.writeOptionalStreamable(recoveryStats);
+        out.writeOptionalStreamable(secondaryIndex);
     }
 
     public void add(CommonStats stats) {
@@ -396,6 +408,14 @@ public class CommonStats implements Writeable, ToXContent {
         } else {
             recoveryStats.add(stats.getRecoveryStats());
         }
+        if (secondaryIndex == null) {
+            if (stats.getSecondaryIndex() != null) {
+                secondaryIndex = new SecondaryIndexStats();
+                secondaryIndex.add(stats.getSecondaryIndex());
+            }
+        } else {
+            secondaryIndex.add(stats.getSecondaryIndex());
+        }
     }
 
     @Nullable
@@ -478,6 +498,11 @@ public class CommonStats implements Writeable, ToXContent {
         return recoveryStats;
     }
 
+    @Nullable
+    public SecondaryIndexStats getSecondaryIndex() {
+        return secondaryIndex;
+    }
+
     /**
      * Utility method which computes total memory by adding
      * FieldData, PercolatorCache, Segments (memory, index writer, version map)
@@ -504,7 +529,7 @@ public class CommonStats implements Writeable, ToXContent {
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         final Stream<ToXContent> stream = Arrays.stream(new ToXContent[] {
             docs, store, indexing, get, search, merge, refresh, flush, warmer, queryCache,
-            fieldData, completion, segments, translog, requestCache, recoveryStats})
+            fieldData, completion, segments, translog, requestCache, recoveryStats, secondaryIndex})
             .filter(Objects::nonNull);
         for (ToXContent toXContent : ((Iterable<ToXContent>)stream::iterator)) {
             toXContent.toXContent(builder, params);
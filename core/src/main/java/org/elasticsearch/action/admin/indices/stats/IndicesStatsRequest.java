@@ -256,6 +256,15 @@ public class IndicesStatsRequest extends BroadcastRequest<IndicesStatsRequest> {
         return flags.isSet(Flag.Recovery);
     }
 
+    public IndicesStatsRequest secondaryIndex(boolean secondaryIndex) {
+        flags.set(Flag.SecondaryIndex, secondaryIndex);
+        return this;
+    }
+
+    public boolean secondaryIndex() {
+        return flags.isSet(Flag.SecondaryIndex);
+    }
+
     public boolean includeSegmentFileSizes() {
         return flags.includeSegmentFileSizes();
     }
@@ -160,6 +160,9 @@ public class TransportIndicesStatsAction extends TransportBroadcastByNodeAction<
         if (request.recovery()) {
             flags.set(CommonStatsFlags.Flag.Recovery);
         }
+        if (request.secondaryIndex()) {
+            flags.set(CommonStatsFlags.Flag.SecondaryIndex);
+        }
 
         return new ShardStats(indexShard.routingEntry(), indexShard.shardPath(), new CommonStats(indicesService.getIndicesQueryCache(), indexShard, flags), indexShard.commitStats());
     }
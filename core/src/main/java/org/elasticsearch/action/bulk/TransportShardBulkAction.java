@@ -24,6 +24,8 @@ import org.apache.cassandra.exceptions.RequestValidationException;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.apache.lucene.index.Term;
+import org.elassandra.action.bulk.BulkMutations;
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
@@ -53,6 +55,8 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.engine.VersionLessInternalEngine;
+import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.SourceToParse;
@@ -116,9 +120,16 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         long[] preVersions = new long[request.items().length];
         VersionType[] preVersionTypes = new VersionType[request.items().length];
         Translog.Location location = null;
+        final int concurrentWrites = primary.indexSettings().getValue(IndexMetaData.INDEX_BULK_CONCURRENT_WRITES_SETTING);
+        final BulkMutations mutations = (concurrentWrites > 0) ? new BulkMutations(concurrentWrites, threadPool.generic()) : null;
         for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
-            location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex);
+            // pending writes are flushed before any other item than an index, so that items of the same document apply in order.
+            if (mutations != null && !mutations.isEmpty() && request.items()[requestIndex].request().opType() != DocWriteRequest.OpType.INDEX)
+                flushMutations(request, mutations);
+            location = executeBulkItemRequest(metaData, primary, request, preVersions, preVersionTypes, location, requestIndex, mutations);
         }
+        if (mutations != null && !mutations.isEmpty())
+            flushMutations(request, mutations);
 
         BulkItemResponse[] responses = new BulkItemResponse[request.items().length];
         BulkItemRequest[] items = request.items();
@@ -129,11 +140,25 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return new WritePrimaryResult<>(request, response, location, null, primary, logger);
     }
 
+    /** Write the buffered mutations of index items, and replace the response of failed items */
+    private void flushMutations(BulkShardRequest request, BulkMutations mutations) {
+        for (Map.Entry<Integer, Exception> failure : mutations.flush().entrySet()) {
+            BulkItemRequest item = request.items()[failure.getKey()];
+            DocWriteRequest docWriteRequest = item.request();
+            logger.debug((Supplier<?>) () -> new ParameterizedMessage("{} failed to execute bulk item ({}) {}",
+                    request.shardId(), docWriteRequest.opType().getLowercase(), request), failure.getValue());
+            item.setIgnoreOnReplica();
+            item.setPrimaryResponse(new BulkItemResponse(item.id(), docWriteRequest.opType(),
+                    new BulkItemResponse.Failure(request.index(), docWriteRequest.type(), docWriteRequest.id(), failure.getValue())));
+        }
+    }
+
     /** Executes bulk item requests and handles request execution exceptions */
     private Translog.Location executeBulkItemRequest(IndexMetaData metaData, IndexShard primary,
                                                      BulkShardRequest request,
                                                      long[] preVersions, VersionType[] preVersionTypes,
-                                                     Translog.Location location, int requestIndex) throws Exception {
+                                                     Translog.Location location, int requestIndex,
+                                                     BulkMutations mutations) throws Exception {
         final DocWriteRequest itemRequest = request.items()[requestIndex].request();
         preVersions[requestIndex] = itemRequest.version();
         preVersionTypes[requestIndex] = itemRequest.versionType();
@@ -147,7 +172,8 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
                 case CREATE:
                 case INDEX:
                     final IndexRequest indexRequest = (IndexRequest) itemRequest;
-                    Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction, this.clusterService, this.indicesService, metaData);
+                    Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdatedAction, this.clusterService, this.indicesService, metaData,
+                            (opType == DocWriteRequest.OpType.INDEX) ? mutations : null, requestIndex);
                     if (indexResult.hasFailure()) {
                         response = null;
                     } else {
@@ -268,6 +294,17 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         Engine.Result updateOperationResult = null;
         UpdateResponse updateResponse = null;
         BulkItemRequest replicaRequest = request.items()[requestIndex];
+        try {
+            if (clusterService.updateWithoutRead(indicesService, updateRequest, metaData)) {
+                // the column update is not translated to an index request, so there is nothing to replay on replicas.
+                replicaRequest.setIgnoreOnReplica();
+                updateResponse = new UpdateResponse(primary.shardId(), updateRequest.type(), updateRequest.id(), 
+                        VersionLessInternalEngine.DOCUMENT_VERSION, DocWriteResponse.Result.UPDATED);
+                return new UpdateResultHolder(replicaRequest, new Engine.IndexResult(VersionLessInternalEngine.DOCUMENT_VERSION, false), updateResponse);
+            }
+        } catch (MapperParsingException | IllegalArgumentException e) {
+            return new UpdateResultHolder(replicaRequest, new Engine.IndexResult(e, updateRequest.version()), null);
+        }
         int maxAttempts = updateRequest.retryOnConflict();
         for (int attemptCount = 0; attemptCount <= maxAttempts; attemptCount++) {
             final UpdateHelper.Result translate;
@@ -461,37 +498,69 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     public static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
                                                                   MappingUpdatedAction mappingUpdatedAction, 
                                                                   ClusterService clusterService, IndicesService indicesService, IndexMetaData metaData) throws Exception {
-        Engine.Index operation;
+        return executeIndexRequestOnPrimary(request, primary, mappingUpdatedAction, clusterService, indicesService, metaData, null, -1);
+    }
+
+    /**
+     * Executes index operation on primary shard after updates mapping if dynamic mappings are found. 
+     * When mutations is not null, the cassandra mutation of the item is buffered rather than written.
+     */
+    public static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
+                                                                  MappingUpdatedAction mappingUpdatedAction, 
+                                                                  ClusterService clusterService, IndicesService indicesService, IndexMetaData metaData,
+                                                                  BulkMutations mutations, int requestIndex) throws Exception {
+        final Map<String, Object> sourceMap;
         try {
-            operation = prepareIndexOperationOnPrimary(request, primary);
-        } catch (MapperParsingException | IllegalArgumentException e) {
+            sourceMap = request.sourceAsMap();
+        } catch (ElasticsearchParseException e) {
             return new Engine.IndexResult(e, request.version());
         }
-        Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
-        final ShardId shardId = primary.shardId();
-        if (update != null) {
-            // can throw timeout exception when updating mappings or ISE for attempting to update default mappings
-            // which are bubbled up
-            try {
-                mappingUpdatedAction.updateMappingOnMaster(shardId.getIndex(), request.type(), update);
-            } catch (IllegalArgumentException e) {
-                // throws IAE on conflicts merging dynamic mappings
-                return new Engine.IndexResult(e, request.version());
-            }
+        
+        // the lucene document is built by the ElasticSecondaryIndex from the cassandra row, so the source is only parsed 
+        // by the document mapper when it may require a dynamic mapping update.
+        final DocumentMapper docMapper = primary.mapperService().documentMapper(request.type());
+        if (docMapper == null || !docMapper.isMapped(sourceMap)) {
+            Engine.Index operation;
             try {
                 operation = prepareIndexOperationOnPrimary(request, primary);
             } catch (MapperParsingException | IllegalArgumentException e) {
                 return new Engine.IndexResult(e, request.version());
             }
-            update = operation.parsedDoc().dynamicMappingsUpdate();
+            Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
+            final ShardId shardId = primary.shardId();
             if (update != null) {
-                throw new ReplicationOperation.RetryOnPrimaryException(shardId,
-                        "Dynamic mappings are not available on the node that holds the primary yet");
+                // can throw timeout exception when updating mappings or ISE for attempting to update default mappings
+                // which are bubbled up
+                try {
+                    mappingUpdatedAction.updateMappingOnMaster(shardId.getIndex(), request.type(), update);
+                } catch (IllegalArgumentException e) {
+                    // throws IAE on conflicts merging dynamic mappings
+                    return new Engine.IndexResult(e, request.version());
+                }
+                try {
+                    operation = prepareIndexOperationOnPrimary(request, primary);
+                } catch (MapperParsingException | IllegalArgumentException e) {
+                    return new Engine.IndexResult(e, request.version());
+                }
+                update = operation.parsedDoc().dynamicMappingsUpdate();
+                if (update != null) {
+                    throw new ReplicationOperation.RetryOnPrimaryException(shardId,
+                            "Dynamic mappings are not available on the node that holds the primary yet");
+                }
             }
         }
         
-        Long writetime = new Long(1);
-        clusterService.insertDocument(indicesService, request, metaData);
+        try {
+            if (mutations != null) {
+                mutations.add(requestIndex, clusterService.documentMutation(indicesService, request, metaData, sourceMap), 
+                        request.waitForActiveShards().toCassandraConsistencyLevel());
+            } else {
+                clusterService.insertDocument(indicesService, request, metaData, sourceMap);
+            }
+        } catch (MapperParsingException | IllegalArgumentException e) {
+            // field values are no more validated by the document mapper when the source is fully mapped.
+            return new Engine.IndexResult(e, request.version());
+        }
 
         assert request.versionType().validateVersionForWrites(request.version());
 
@@ -84,11 +84,13 @@ public class TransportShardMultiGetAction extends TransportSingleShardAction<Mul
             indexShard.refresh("refresh_flag_mget");
         }
 
+        // rows of the same partition are read at once, remaining items are read one by one.
+        GetResult[] results = indexShard.getService().multiGet(request.items, request.realtime());
         MultiGetShardResponse response = new MultiGetShardResponse();
         for (int i = 0; i < request.locations.size(); i++) {
             MultiGetRequest.Item item = request.items.get(i);
             try {
-                GetResult getResult = indexShard.getService().get(item.type(), item.id(), item.storedFields(), request.realtime(), item.version(),
+                GetResult getResult = (results[i] != null) ? results[i] : indexShard.getService().get(item.type(), item.id(), item.storedFields(), request.realtime(), item.version(),
                     item.versionType(), item.fetchSourceContext());
                 response.add(request.locations.get(i), new GetResponse(getResult));
             } catch (Exception e) {
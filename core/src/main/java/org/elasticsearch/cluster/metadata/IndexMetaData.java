@@ -25,6 +25,7 @@ import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
 
+import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.utils.FBUtilities;
 import org.elassandra.cluster.routing.AbstractSearchStrategy;
 import org.elassandra.cluster.routing.PrimaryFirstSearchStrategy;
@@ -54,6 +55,8 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.loader.SettingsLoader;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -340,6 +343,10 @@ public class IndexMetaData implements Diffable<IndexMetaData>, ToXContent {
     public static final Setting<Boolean> INDEX_SYNCHRONOUS_REFRESH_SETTING =
             Setting.boolSetting(SETTING_SYNCHRONOUS_REFRESH, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_SYNCHRONOUS_REFRESH), Property.Dynamic, Property.IndexScope);
     
+    public static final String SETTING_SYNCHRONOUS_REFRESH_WINDOW = "index."+ClusterService.SYNCHRONOUS_REFRESH_WINDOW; 
+    public static final Setting<TimeValue> INDEX_SYNCHRONOUS_REFRESH_WINDOW_SETTING =
+            Setting.timeSetting(SETTING_SYNCHRONOUS_REFRESH_WINDOW, TimeValue.timeValueMillis(Long.getLong(ClusterService.SETTING_SYSTEM_SYNCHRONOUS_REFRESH_WINDOW, 2)), TimeValue.timeValueMillis(0), Property.Dynamic, Property.IndexScope);
+    
     public static final String SETTING_DROP_ON_DELETE_INDEX = "index."+ClusterService.DROP_ON_DELETE_INDEX; 
     public static final Setting<Boolean> INDEX_DROP_ON_DELETE_INDEX_SETTING =
             Setting.boolSetting(SETTING_DROP_ON_DELETE_INDEX, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_DROP_ON_DELETE_INDEX), Property.Dynamic, Property.IndexScope);
@@ -368,6 +375,57 @@ public class IndexMetaData implements Diffable<IndexMetaData>, ToXContent {
     public static final Setting<Boolean> INDEX_INDEX_STATIC_DOCUMENT_SETTING =
             Setting.boolSetting(SETTING_INDEX_STATIC_DOCUMENT, false, Property.Final, Property.IndexScope);
     
+    public static final String SETTING_ASYNCHRONOUS_INDEXING = "index."+ClusterService.ASYNCHRONOUS_INDEXING; 
+    public static final Setting<Boolean> INDEX_ASYNCHRONOUS_INDEXING_SETTING =
+            Setting.boolSetting(SETTING_ASYNCHRONOUS_INDEXING, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_ASYNCHRONOUS_INDEXING), Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_ASYNCHRONOUS_INDEXING_QUEUE_SIZE = "index."+ClusterService.ASYNCHRONOUS_INDEXING+"_queue_size"; 
+    public static final Setting<Integer> INDEX_ASYNCHRONOUS_INDEXING_QUEUE_SIZE_SETTING =
+            Setting.intSetting(SETTING_ASYNCHRONOUS_INDEXING_QUEUE_SIZE, 10000, 1, Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_ASYNCHRONOUS_INDEXING_BATCH_SIZE = "index."+ClusterService.ASYNCHRONOUS_INDEXING+"_batch_size"; 
+    public static final Setting<Integer> INDEX_ASYNCHRONOUS_INDEXING_BATCH_SIZE_SETTING =
+            Setting.intSetting(SETTING_ASYNCHRONOUS_INDEXING_BATCH_SIZE, 256, 1, Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_ROW_CACHE_SIZE = "index."+ClusterService.ROW_CACHE_SIZE; 
+    public static final Setting<ByteSizeValue> INDEX_ROW_CACHE_SIZE_SETTING =
+            Setting.byteSizeSetting(SETTING_ROW_CACHE_SIZE, s -> System.getProperty(ClusterService.SETTING_SYSTEM_ROW_CACHE_SIZE, "0b"), Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_TOMBSTONE_BUFFER_SIZE = "index."+ClusterService.TOMBSTONE_BUFFER_SIZE; 
+    public static final Setting<Integer> INDEX_TOMBSTONE_BUFFER_SIZE_SETTING =
+            Setting.intSetting(SETTING_TOMBSTONE_BUFFER_SIZE, Integer.getInteger(ClusterService.SETTING_SYSTEM_TOMBSTONE_BUFFER_SIZE, 1024), 0, Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_STORED_SOURCE = "index."+ClusterService.STORED_SOURCE; 
+    public static final Setting<Boolean> INDEX_STORED_SOURCE_SETTING =
+            Setting.boolSetting(SETTING_STORED_SOURCE, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_STORED_SOURCE), Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_SOURCE_CACHE_SIZE = "index."+ClusterService.SOURCE_CACHE_SIZE; 
+    public static final Setting<ByteSizeValue> INDEX_SOURCE_CACHE_SIZE_SETTING =
+            Setting.byteSizeSetting(SETTING_SOURCE_CACHE_SIZE, s -> System.getProperty(ClusterService.SETTING_SYSTEM_SOURCE_CACHE_SIZE, "0b"), Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_FETCH_CONCURRENCY = "index."+ClusterService.FETCH_CONCURRENCY; 
+    public static final Setting<Integer> INDEX_FETCH_CONCURRENCY_SETTING =
+            Setting.intSetting(SETTING_FETCH_CONCURRENCY, Integer.getInteger(ClusterService.SETTING_SYSTEM_FETCH_CONCURRENCY, 1), 1, Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_BULK_CONCURRENT_WRITES = "index."+ClusterService.BULK_CONCURRENT_WRITES; 
+    public static final Setting<Integer> INDEX_BULK_CONCURRENT_WRITES_SETTING =
+            Setting.intSetting(SETTING_BULK_CONCURRENT_WRITES, Integer.getInteger(ClusterService.SETTING_SYSTEM_BULK_CONCURRENT_WRITES, 128), 0, Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_CREATE_CONSISTENCY = "index."+ClusterService.CREATE_CONSISTENCY; 
+    public static final Setting<ConsistencyLevel> INDEX_CREATE_CONSISTENCY_SETTING =
+            new Setting<>(SETTING_CREATE_CONSISTENCY, s -> System.getProperty(ClusterService.SETTING_SYSTEM_CREATE_CONSISTENCY, ConsistencyLevel.LOCAL_SERIAL.name()), 
+                    s -> {
+                        ConsistencyLevel cl = ConsistencyLevel.valueOf(s.toUpperCase(Locale.ROOT));
+                        // a non-serial consistency level is used to read the document before writing it.
+                        if (cl == ConsistencyLevel.ANY || cl == ConsistencyLevel.EACH_QUORUM)
+                            throw new IllegalArgumentException("Invalid value [" + s + "] for setting [" + SETTING_CREATE_CONSISTENCY + "], consistency level " + cl + " does not support reads");
+                        return cl;
+                    }, Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_UPDATE_WITHOUT_READ = "index."+ClusterService.UPDATE_WITHOUT_READ; 
+    public static final Setting<Boolean> INDEX_UPDATE_WITHOUT_READ_SETTING =
+            Setting.boolSetting(SETTING_UPDATE_WITHOUT_READ, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_UPDATE_WITHOUT_READ), Property.Dynamic, Property.IndexScope);
+    
     // hard-coded hash function as of 2.0
     // older indices will read which hash function to use in their index settings
     //private static final HashFunction MURMUR3_HASH_FUNCTION = new Murmur3HashFunction();
@@ -23,7 +23,6 @@ import ch.qos.logback.core.joran.spi.JoranException;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.net.InetAddresses;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
@@ -37,12 +36,20 @@ import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet.Row;
 import org.apache.cassandra.cql3.statements.IndexTarget;
+import org.apache.cassandra.cql3.statements.ModificationStatement;
 import org.apache.cassandra.cql3.statements.ParsedStatement;
+import org.apache.cassandra.cql3.statements.SchemaAlteringStatement;
 import org.apache.cassandra.cql3.statements.TableAttributes;
 import org.apache.cassandra.db.CBuilder;
+import org.apache.cassandra.db.Clustering;
 import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.IMutation;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.KeyspaceNotDefinedException;
+import org.apache.cassandra.db.LivenessInfo;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.PartitionColumns;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.BytesType;
@@ -54,6 +61,11 @@ import org.apache.cassandra.db.marshal.TupleType;
 import org.apache.cassandra.db.marshal.TypeParser;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.db.marshal.UserType;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.CellPath;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.InvalidRequestException;
@@ -75,8 +87,10 @@ import org.apache.cassandra.serializers.MarshalException;
 import org.apache.cassandra.serializers.SimpleDateSerializer;
 import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.ElassandraDaemon;
+import org.apache.cassandra.service.MigrationListener;
 import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.transport.ProtocolVersion;
 import org.apache.cassandra.transport.messages.ResultMessage;
@@ -95,7 +109,9 @@ import org.elassandra.NoPersistedMetaDataException;
 import org.elassandra.cluster.routing.AbstractSearchStrategy;
 import org.elassandra.cluster.routing.PrimaryFirstSearchStrategy;
 import org.elassandra.discovery.CassandraDiscovery;
+import org.elassandra.index.ElasticIdCodec;
 import org.elassandra.index.ExtendedElasticSecondaryIndex;
+import org.elassandra.index.RowSourceRenderer;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elassandra.index.search.TokenRangesService;
@@ -108,6 +124,7 @@ import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingClusterStateUpdateRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.replication.ReplicationResponse.ShardInfo;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateApplier;
@@ -132,9 +149,12 @@ import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
@@ -147,6 +167,7 @@ import org.elasticsearch.discovery.Discovery;
 import org.elasticsearch.gateway.MetaStateService;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.get.GetField;
@@ -167,13 +188,11 @@ import org.elasticsearch.index.mapper.Mapper.CqlStruct;
 import org.elasticsearch.index.mapper.MapperException;
 import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.MapperService;
-import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.MetadataFieldMapper;
 import org.elasticsearch.index.mapper.ObjectMapper;
 import org.elasticsearch.index.mapper.ParentFieldMapper;
 import org.elasticsearch.index.mapper.RoutingFieldMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
-import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.mapper.TTLFieldMapper;
 import org.elasticsearch.index.mapper.TimestampFieldMapper;
 import org.elasticsearch.index.mapper.Uid;
@@ -192,7 +211,6 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -238,6 +256,8 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public static final String INDEX_PREFIX = "index.";
     public static final String TABLE_PREFIX = "";
     private static final int CREATE_ELASTIC_ADMIN_RETRY_ATTEMPTS = Integer.getInteger(SYSTEM_PREFIX + "create_elastic_admin_retry_attempts", 5);
+    private static final int PREPARED_STATEMENT_CACHE_SIZE = Integer.getInteger(SYSTEM_PREFIX + "prepared_statement_cache_size", 1000);
+    private static final int MAX_FETCH_QUERIES_PER_MAPPING = 256;
 
     /**
      * Dynamic mapping update timeout
@@ -269,6 +289,11 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
      */
     public static final String SYNCHRONOUS_REFRESH   = "synchronous_refresh";
     
+    /**
+     * Delay a synchronous refresh to share it with concurrent writers of the same shard.
+     */
+    public static final String SYNCHRONOUS_REFRESH_WINDOW = "synchronous_refresh_window";
+    
     /**
      * When true, delete kespace/table when removing an index.
      */
@@ -314,6 +339,51 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
      */
     public static final String INDEX_STATIC_DOCUMENT = "index_static_document";
     
+    /**
+     * When true, lucene updates are queued per shard and applied by the secondary_index thread pool.
+     */
+    public static final String ASYNCHRONOUS_INDEXING = "asynchronous_indexing";
+    
+    /**
+     * Size of the cache of indexed column values used to complete partial updates without reading the table, 0 to disable.
+     */
+    public static final String ROW_CACHE_SIZE = "row_cache_size";
+    
+    /**
+     * Number of partition and range tombstones buffered per shard and applied in a single lucene delete, 0 to apply them immediately.
+     */
+    public static final String TOMBSTONE_BUFFER_SIZE = "tombstone_buffer_size";
+    
+    /**
+     * When true, the _source column is also stored in lucene, so that search hits and GET are served without reading the table.
+     */
+    public static final String STORED_SOURCE = "stored_source";
+    
+    /**
+     * Size of the per shard cache of _source rendered from cassandra rows for the fetch phase and GET, 0 to disable.
+     */
+    public static final String SOURCE_CACHE_SIZE = "source_cache_size";
+    
+    /**
+     * Number of chunks of hits rendered concurrently by the fetch phase, 1 to render hits on the search thread.
+     */
+    public static final String FETCH_CONCURRENCY = "fetch_concurrency";
+    
+    /**
+     * Maximum number of partitions written concurrently by a shard bulk request, 0 to write bulk items one by one.
+     */
+    public static final String BULK_CONCURRENT_WRITES = "bulk_concurrent_writes";
+    
+    /**
+     * Consistency level of create requests, a serial consistency for a PAXOS insert, or a regular one for a read-before-write.
+     */
+    public static final String CREATE_CONSISTENCY = "create_consistency";
+    
+    /**
+     * When true, partial updates without script are written as column updates of the supplied fields without reading the document.
+     */
+    public static final String UPDATE_WITHOUT_READ = "update_without_read";
+    
     // system property settings
     public static final String SETTING_SYSTEM_MAPPING_UPDATE_TIMEOUT = SYSTEM_PREFIX+MAPPING_UPDATE_TIMEOUT;
     public static final String SETTING_SYSTEM_SECONDARY_INDEX_CLASS = SYSTEM_PREFIX+SECONDARY_INDEX_CLASS;
@@ -321,12 +391,22 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public static final String SETTING_SYSTEM_INCLUDE_NODE_ID = SYSTEM_PREFIX+INCLUDE_NODE_ID;
     public static final String SETTING_SYSTEM_INDEX_ON_COMPACTION = SYSTEM_PREFIX+INDEX_ON_COMPACTION;
     public static final String SETTING_SYSTEM_SYNCHRONOUS_REFRESH = SYSTEM_PREFIX+SYNCHRONOUS_REFRESH;
+    public static final String SETTING_SYSTEM_SYNCHRONOUS_REFRESH_WINDOW = SYSTEM_PREFIX+SYNCHRONOUS_REFRESH_WINDOW;
     public static final String SETTING_SYSTEM_DROP_ON_DELETE_INDEX = SYSTEM_PREFIX+DROP_ON_DELETE_INDEX;
     public static final String SETTING_SYSTEM_SNAPSHOT_WITH_SSTABLE = SYSTEM_PREFIX+SNAPSHOT_WITH_SSTABLE;
     public static final String SETTING_SYSTEM_VERSION_LESS_ENGINE = SYSTEM_PREFIX+VERSION_LESS_ENGINE; 
     public static final String SETTING_SYSTEM_TOKEN_PRECISION_STEP = SYSTEM_PREFIX+TOKEN_PRECISION_STEP;
     public static final String SETTING_SYSTEM_TOKEN_RANGES_BITSET_CACHE = SYSTEM_PREFIX+TOKEN_RANGES_BITSET_CACHE;
     public static final String SETTING_SYSTEM_TOKEN_RANGES_QUERY_EXPIRE = SYSTEM_PREFIX+TOKEN_RANGES_QUERY_EXPIRE;
+    public static final String SETTING_SYSTEM_ASYNCHRONOUS_INDEXING = SYSTEM_PREFIX+ASYNCHRONOUS_INDEXING;
+    public static final String SETTING_SYSTEM_ROW_CACHE_SIZE = SYSTEM_PREFIX+ROW_CACHE_SIZE;
+    public static final String SETTING_SYSTEM_TOMBSTONE_BUFFER_SIZE = SYSTEM_PREFIX+TOMBSTONE_BUFFER_SIZE;
+    public static final String SETTING_SYSTEM_STORED_SOURCE = SYSTEM_PREFIX+STORED_SOURCE;
+    public static final String SETTING_SYSTEM_SOURCE_CACHE_SIZE = SYSTEM_PREFIX+SOURCE_CACHE_SIZE;
+    public static final String SETTING_SYSTEM_FETCH_CONCURRENCY = SYSTEM_PREFIX+FETCH_CONCURRENCY;
+    public static final String SETTING_SYSTEM_BULK_CONCURRENT_WRITES = SYSTEM_PREFIX+BULK_CONCURRENT_WRITES;
+    public static final String SETTING_SYSTEM_CREATE_CONSISTENCY = SYSTEM_PREFIX+CREATE_CONSISTENCY;
+    public static final String SETTING_SYSTEM_UPDATE_WITHOUT_READ = SYSTEM_PREFIX+UPDATE_WITHOUT_READ;
     
     // elassandra cluster settings
     public static final String SETTING_CLUSTER_MAPPING_UPDATE_TIMEOUT = CLUSTER_PREFIX+MAPPING_UPDATE_TIMEOUT;
@@ -340,6 +420,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public static final String SETTING_CLUSTER_VERSION_LESS_ENGINE = CLUSTER_PREFIX+VERSION_LESS_ENGINE; 
     public static final String SETTING_CLUSTER_TOKEN_PRECISION_STEP = CLUSTER_PREFIX+TOKEN_PRECISION_STEP;
     public static final String SETTING_CLUSTER_TOKEN_RANGES_BITSET_CACHE = CLUSTER_PREFIX+TOKEN_RANGES_BITSET_CACHE;
+    public static final String SETTING_CLUSTER_ASYNCHRONOUS_INDEXING = CLUSTER_PREFIX+ASYNCHRONOUS_INDEXING;
     
     public static int defaultPrecisionStep = Integer.getInteger(SETTING_SYSTEM_TOKEN_PRECISION_STEP, 6);
     
@@ -420,6 +501,42 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     
     private volatile CassandraShardStartedBarrier shardStartedBarrier;
     private final OperationRouting operationRouting;
+    
+    // CQL statements parsed by process(), invalidated on any schema change.
+    private final Cache<String, ParsedStatement.Prepared> preparedStatements = CacheBuilder.<String, ParsedStatement.Prepared>builder()
+            .setMaximumWeight(PREPARED_STATEMENT_CACHE_SIZE)
+            .build();
+    private final MigrationListener preparedStatementsInvalidator = new MigrationListener() {
+        @Override
+        public void onUpdateKeyspace(String ksName) {
+            preparedStatements.invalidateAll();
+        }
+        
+        @Override
+        public void onUpdateColumnFamily(String ksName, String cfName, boolean affectsStatements) {
+            preparedStatements.invalidateAll();
+        }
+        
+        @Override
+        public void onUpdateUserType(String ksName, String typeName) {
+            preparedStatements.invalidateAll();
+        }
+        
+        @Override
+        public void onDropKeyspace(String ksName) {
+            preparedStatements.invalidateAll();
+        }
+        
+        @Override
+        public void onDropColumnFamily(String ksName, String cfName) {
+            preparedStatements.invalidateAll();
+        }
+        
+        @Override
+        public void onDropUserType(String ksName, String typeName) {
+            preparedStatements.invalidateAll();
+        }
+    };
 
     @Inject
     public ClusterService(Settings settings, ClusterSettings clusterSettings, ThreadPool threadPool, Supplier<DiscoveryNode> localNodeSupplier) {
@@ -571,23 +688,40 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         
         // retreive prepared
         QueryState queryState = new QueryState(clientState);
-        ResultMessage.Prepared prepared = ClientState.getCQLQueryHandler().prepare(query, queryState, Collections.EMPTY_MAP);
+        ParsedStatement.Prepared prepared = prepare(clientState, query);
         
         // bind
         List<ByteBuffer> boundValues = new ArrayList<ByteBuffer>(values.length);
         for (int i = 0; i < values.length; i++) {
             Object v = values[i];
-            AbstractType type = prepared.metadata.names.get(i).type;
+            AbstractType type = prepared.boundNames.get(i).type;
             boundValues.add(v instanceof ByteBuffer || v == null ? (ByteBuffer) v : type.decompose(v));
         }
         
         // execute
         QueryOptions queryOptions = (serialConsistencyLevel == null) ? QueryOptions.forInternalCalls(cl, boundValues) : QueryOptions.forInternalCalls(cl, serialConsistencyLevel, boundValues);
-        ResultMessage result = ClientState.getCQLQueryHandler().process(query, queryState, queryOptions, Collections.EMPTY_MAP, System.nanoTime());
+        ResultMessage result = ClientState.getCQLQueryHandler().processPrepared(prepared.statement, queryState, queryOptions, Collections.EMPTY_MAP, System.nanoTime());
         writetime = queryState.getTimestamp();
         return (result instanceof ResultMessage.Rows) ? UntypedResultSet.create(((ResultMessage.Rows) result).result) : null;
     }
 
+    /**
+     * Parse a CQL statement, or get it from the cache of prepared statements. 
+     * Statements depending on the client keyspace and schema altering statements are not cached.
+     */
+    public ParsedStatement.Prepared prepare(ClientState clientState, final String query) throws RequestValidationException {
+        if (clientState.getRawKeyspace() != null)
+            return QueryProcessor.getStatement(query, clientState);
+        
+        ParsedStatement.Prepared prepared = preparedStatements.get(query);
+        if (prepared == null) {
+            prepared = QueryProcessor.getStatement(query, clientState);
+            if (!(prepared.statement instanceof SchemaAlteringStatement))
+                preparedStatements.put(query, prepared);
+        }
+        return prepared;
+    }
+
     public boolean processWriteConditional(final ConsistencyLevel cl, final ConsistencyLevel serialCl, final String query, Object... values) {
         return processWriteConditional(cl, serialCl, ClientState.forInternalCalls(), query, values);
     }
@@ -698,18 +832,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     }
     
     private static Object toJsonValue(Object o) {
-        if (o instanceof UUID)
-            return o.toString();
-        if (o instanceof Date)
-            return ((Date)o).getTime();
-        if (o instanceof ByteBuffer) {
-            // encode byte[] as Base64 encoded string
-            ByteBuffer bb = ByteBufferUtil.clone((ByteBuffer)o);
-            return Base64.getEncoder().encodeToString(ByteBufferUtil.getArray((ByteBuffer)o));
-        }
-        if (o instanceof InetAddress)
-            return InetAddresses.toAddrString((InetAddress)o);
-        return o;
+        return ElasticIdCodec.toIdValue(o);
     }
     
     private static org.codehaus.jackson.map.ObjectMapper jsonMapper = new org.codehaus.jackson.map.ObjectMapper();
@@ -726,27 +849,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     }
     
     public static String stringify(Object[] cols, int length) {
-        if (cols.length == 1)
-            return toJsonValue(cols[0]).toString();
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for(int i = 0; i < length; i++) {
-            if (i > 0)
-                sb.append(",");
-            Object val = toJsonValue(cols[i]);
-            if (val instanceof String) {
-                try {
-                    sb.append(jsonMapper.writeValueAsString(val));
-                } catch (IOException e) {
-                    Loggers.getLogger(ClusterService.class).error("Unexpected json encoding error", e);
-                    throw new RuntimeException(e);
-                }
-            } else {
-                sb.append(val);
-            }
-        }
-        return sb.append("]").toString();
+        return ElasticIdCodec.encode(cols, length);
     }
 
     public static ByteBuffer fromString(AbstractType<?> atype, String v) throws IOException {
@@ -1407,6 +1510,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     @Override
     protected void doStart() {
         super.doStart();
+        MigrationManager.instance.register(preparedStatementsInvalidator);
         // add post-applied because 2i shoukd be created/deleted after that cassandra indices have taken the new mapping.
         this.addStateApplier(cassandraSecondaryIndicesApplier);
         
@@ -1448,6 +1552,12 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         new Thread(task, "metadataSchemaUpdater").start();
     }
     
+    @Override
+    protected synchronized void doStop() {
+        MigrationManager.instance.unregister(preparedStatementsInvalidator);
+        super.doStop();
+    }
+    
     public void updateMapping(String ksName, MappingMetaData mapping) {
         cassandraSecondaryIndicesApplier.updateMapping( ksName, mapping);
     }
@@ -1895,6 +2005,48 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         return process(cl, buildFetchQuery(indexService, type, columns, docPk.isStaticDocument, columnDefs), docPk. values);
     }
     
+    /**
+     * Fetch the rows of a single partition from the coordinator node, with a single query restricting the clustering keys.
+     * Returned rows include the clustering columns, and may come in any order.
+     */
+    public UntypedResultSet fetchRows(final IndexService indexService, final String type, final List<DocPrimaryKey> docPks, final String[] columns, final ConsistencyLevel cl, Map<String,ColumnDefinition> columnDefs) throws InvalidRequestException,
+            RequestExecutionException, RequestValidationException, IOException {
+        return process(cl, buildMultiFetchQuery(indexService, type, columns, columnDefs), multiFetchValues(indexService, type, docPks));
+    }
+    
+    /**
+     * Fetch the rows of a single partition from the local tables, see {@link #fetchRows}.
+     */
+    public UntypedResultSet fetchRowsInternal(final IndexService indexService, final String type, final List<DocPrimaryKey> docPks, final String[] columns, Map<String,ColumnDefinition> columnDefs) throws ConfigurationException, IOException {
+        return QueryProcessor.executeInternal(buildMultiFetchQuery(indexService, type, columns, columnDefs), multiFetchValues(indexService, type, docPks));
+    }
+    
+    // partition key values followed by the list of clustering keys.
+    private Object[] multiFetchValues(final IndexService indexService, final String type, final List<DocPrimaryKey> docPks) {
+        CFMetaData metadata = getCFMetaData(indexService.keyspace(), typeToCfName(indexService.keyspace(), type));
+        List<ColumnDefinition> clusteringColumns = metadata.clusteringColumns();
+        int ptLen = metadata.partitionKeyColumns().size();
+        
+        List<Object> clusterings = new ArrayList<Object>(docPks.size());
+        for (DocPrimaryKey docPk : docPks) {
+            if (clusteringColumns.size() == 1) {
+                clusterings.add(docPk.values[ptLen]);
+            } else {
+                ByteBuffer[] components = new ByteBuffer[clusteringColumns.size()];
+                for (int i = 0; i < components.length; i++) {
+                    Object v = docPk.values[ptLen + i];
+                    AbstractType atype = clusteringColumns.get(i).type;
+                    components[i] = (v instanceof ByteBuffer) ? (ByteBuffer) v : atype.decompose(v);
+                }
+                clusterings.add(TupleType.buildValue(components));
+            }
+        }
+        Object[] values = new Object[ptLen + 1];
+        System.arraycopy(docPks.get(0).values, 0, values, 0, ptLen);
+        values[ptLen] = clusterings;
+        return values;
+    }
+    
     public Engine.GetResult fetchSourceInternal(final IndexService indexService, String type, String id, Map<String,ColumnDefinition> columnDefs, LongConsumer onRefresh) throws IOException {
         long time = System.nanoTime();
         DocPrimaryKey docPk = parseElasticId(indexService, type, id);
@@ -1952,6 +2104,45 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
             throws IndexNotFoundException, IOException 
     {
         DocumentMapper docMapper = indexService.mapperService().documentMapper(type);
+        if (columnDefs != docMapper.getColumnDefinitions())
+            return buildFetchQuery(indexService, docMapper, type, requiredColumns, forStaticDocument, false, columnDefs);
+        
+        // fetch queries of the mapping columns are built once per mapping.
+        String key = (forStaticDocument ? "static:" : "row:") + String.join(",", requiredColumns);
+        String query = docMapper.getFetchQueries().get(key);
+        if (query == null) {
+            query = buildFetchQuery(indexService, docMapper, type, requiredColumns, forStaticDocument, false, columnDefs);
+            if (docMapper.getFetchQueries().size() < MAX_FETCH_QUERIES_PER_MAPPING)
+                docMapper.getFetchQueries().putIfAbsent(key, query);
+        }
+        return query;
+    }
+    
+    /**
+     * Build a query fetching the rows of a partition matching a list of clustering keys bound to the last marker.
+     * Clustering columns are always selected to match rows with the requested primary keys.
+     */
+    public String buildMultiFetchQuery(final IndexService indexService, final String type, final String[] requiredColumns, Map<String, ColumnDefinition> columnDefs) 
+            throws IndexNotFoundException, IOException 
+    {
+        DocumentMapper docMapper = indexService.mapperService().documentMapper(type);
+        if (columnDefs != docMapper.getColumnDefinitions())
+            return buildFetchQuery(indexService, docMapper, type, requiredColumns, false, true, columnDefs);
+        
+        String key = "rows:" + String.join(",", requiredColumns);
+        String query = docMapper.getFetchQueries().get(key);
+        if (query == null) {
+            query = buildFetchQuery(indexService, docMapper, type, requiredColumns, false, true, columnDefs);
+            if (docMapper.getFetchQueries().size() < MAX_FETCH_QUERIES_PER_MAPPING)
+                docMapper.getFetchQueries().putIfAbsent(key, query);
+        }
+        return query;
+    }
+    
+    private String buildFetchQuery(final IndexService indexService, final DocumentMapper docMapper, final String type, final String[] requiredColumns, 
+            boolean forStaticDocument, boolean multiRows, Map<String, ColumnDefinition> columnDefs) 
+            throws IndexNotFoundException, IOException 
+    {
         String cfName = typeToCfName(indexService.keyspace(), type);
         CFMetaData metadata = getCFMetaData(indexService.keyspace(), cfName);
         DocumentMapper.CqlFragments cqlFragment = docMapper.getCqlFragments();
@@ -2010,6 +2201,16 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
                 }
             }
         }
+        if (multiRows) {
+            List<String> columns = Arrays.asList(requiredColumns);
+            for (ColumnDefinition cd : metadata.clusteringColumns()) {
+                if (!columns.contains(cd.name.toString()) || columnDefs.get(cd.name.toString()) == null)
+                    query.append(query.length() > prefixLength ? ',':' ').append("\"").append(cd.name.toString()).append("\"");
+            }
+            query.append(" FROM \"").append(indexService.keyspace()).append("\".\"").append(cfName)
+                 .append("\" WHERE ").append(cqlFragment.ptWhere).append(" AND ").append(cqlFragment.ckIn);
+            return query.toString();
+        }
         if (query.length() == prefixLength) {
             // no column match or requiredColumn is empty, add _id to avoid CQL syntax error...
             query.append("\"_id\"");
@@ -2287,45 +2488,313 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     
     
     public void updateDocument(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData) throws Exception {
-        upsertDocument(indicesService, request, indexMetaData, true);
+        upsertDocument(indicesService, request, indexMetaData, request.sourceAsMap(), true);
     }
     
     public void insertDocument(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData) throws Exception {
-        upsertDocument(indicesService, request, indexMetaData, false);
+        insertDocument(indicesService, request, indexMetaData, request.sourceAsMap());
+    }
+    
+    /**
+     * Insert a document from its already parsed source, the mapping of the index must include all its fields.
+     */
+    public void insertDocument(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, final Map<String, Object> sourceMap) throws Exception {
+        upsertDocument(indicesService, request, indexMetaData, sourceMap, false);
     }
     
-    private void upsertDocument(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, boolean updateOperation) throws Exception {
+    /**
+     * Serialized columns of the cassandra row of an indexed document, with their definition, the TTL and writetime.
+     */
+    private static class DocumentColumns {
+        final IndexShard indexShard;
+        final CFMetaData metadata;
+        final Map<String, ByteBuffer> map;
+        final Map<String, ColumnDefinition> columnDefs;
+        final Long ttl;
+        final Long writetime;
+        
+        DocumentColumns(IndexShard indexShard, CFMetaData metadata, Map<String, ByteBuffer> map, Map<String, ColumnDefinition> columnDefs, Long ttl, Long writetime) {
+            this.indexShard = indexShard;
+            this.metadata = metadata;
+            this.map = map;
+            this.columnDefs = columnDefs;
+            this.ttl = ttl;
+            this.writetime = writetime;
+        }
+    }
+    
+    private void upsertDocument(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, 
+            final Map<String, Object> sourceMap, boolean updateOperation) throws Exception {
+        final DocumentColumns columns = documentColumns(indicesService, request, indexMetaData, sourceMap);
+        final String keyspaceName = columns.metadata.ksName;
+        final String cfName = columns.metadata.cfName;
+        
+        String query;
+        ByteBuffer[] values;
+        if (request.opType() == DocWriteRequest.OpType.CREATE) {
+            final ConsistencyLevel createCl = columns.indexShard.indexSettings().getValue(IndexMetaData.INDEX_CREATE_CONSISTENCY_SETTING);
+            if (createCl.isSerialConsistency()) {
+                values = new ByteBuffer[columns.map.size()];
+                query = buildInsertQuery(keyspaceName, cfName, columns.map, request.id(), 
+                        true,                
+                        columns.ttl, // ttl
+                        columns.writetime,
+                        values, 0);
+                final boolean applied = processWriteConditional(request.waitForActiveShards().toCassandraConsistencyLevel(), createCl, query, (Object[])values);
+                if (!applied)
+                    throw new VersionConflictEngineException(columns.indexShard.shardId(), cfName, request.id(), "PAXOS insert failed, document already exists");
+            } else {
+                // read-before-write without PAXOS, concurrent creates of the same document may both succeed.
+                if (documentExists(columns, createCl))
+                    throw new VersionConflictEngineException(columns.indexShard.shardId(), cfName, request.id(), "document already exists");
+                StorageProxy.mutateWithTriggers(Collections.singletonList(documentMutation(columns, request)), 
+                        request.waitForActiveShards().toCassandraConsistencyLevel(), false, System.nanoTime());
+            }
+        } else {
+            StorageProxy.mutateWithTriggers(Collections.singletonList(documentMutation(columns, request)), 
+                    request.waitForActiveShards().toCassandraConsistencyLevel(), false, System.nanoTime());
+        }
+    }
+    
+    /**
+     * Read the primary key of a document at the given consistency level, a document without clustering key is a static document.
+     * Like the PAXOS IF NOT EXISTS insert, a static document exists when its static row exists, whatever the clustering rows.
+     */
+    private boolean documentExists(final DocumentColumns columns, final ConsistencyLevel cl) throws Exception {
+        final StringBuilder query = new StringBuilder();
+        final List<ByteBuffer> values = new ArrayList<>(columns.metadata.primaryKeyColumns().size());
+        boolean staticDocument = false;
+        for (ColumnDefinition cd : columns.metadata.primaryKeyColumns()) {
+            final ByteBuffer value = columns.map.get(cd.name.toString());
+            if (value == null) {
+                if (cd.isPartitionKey())
+                    throw new MapperParsingException("Missing partition key column [" + cd.name + "]");
+                staticDocument = true;
+                break;
+            }
+            query.append((values.isEmpty()) ? " WHERE \"" : " AND \"").append(cd.name.toString()).append("\" = ?");
+            values.add(value);
+        }
+        final List<String> staticColumns = new ArrayList<>();
+        if (staticDocument) {
+            for (ColumnDefinition cd : columns.metadata.allColumns())
+                if (cd.isStatic())
+                    staticColumns.add(cd.name.toString());
+        }
+        if (staticColumns.isEmpty()) {
+            query.insert(0, "SELECT \"" + columns.metadata.partitionKeyColumns().get(0).name + "\" FROM \"" + columns.metadata.ksName + "\".\"" + columns.metadata.cfName + "\"");
+        } else {
+            query.insert(0, "SELECT \"" + String.join("\",\"", staticColumns) + "\" FROM \"" + columns.metadata.ksName + "\".\"" + columns.metadata.cfName + "\"");
+        }
+        query.append(" LIMIT 1");
+        final UntypedResultSet rs = process(cl, query.toString(), values.toArray());
+        if (rs == null || rs.isEmpty())
+            return false;
+        if (staticColumns.isEmpty())
+            return true;
+        // clustering rows are returned with null static columns when the static row does not exist.
+        final Row row = rs.one();
+        for (String column : staticColumns)
+            if (row.has(column))
+                return true;
+        return false;
+    }
+    
+    /**
+     * Build the cassandra mutation of an index (not create) request without executing it, so that the bulk action can group 
+     * the mutations of a partition and write them concurrently (see {@link org.elassandra.action.bulk.BulkMutations}).
+     */
+    public Mutation documentMutation(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, 
+            final Map<String, Object> sourceMap) throws Exception {
+        assert request.opType() != DocWriteRequest.OpType.CREATE : "create requires a conditional insert";
+        return documentMutation(documentColumns(indicesService, request, indexMetaData, sourceMap), request);
+    }
+    
+    /**
+     * Apply a partial update without script as a column-level update of the supplied fields, without reading the document 
+     * (see {@link IndexMetaData#INDEX_UPDATE_WITHOUT_READ_SETTING}). Lists and sets are overwritten, as arrays in a partial document, 
+     * entries of non-frozen maps are added, or removed when null, and a null map is cleared. Only doc_as_upsert requests are 
+     * written this way, because a missing document is created with the supplied fields, and types having _source enabled 
+     * are read, because their _source column must be merged with the update.
+     * @return false when the update requires to read the document.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean updateWithoutRead(final IndicesService indicesService, final UpdateRequest request, final IndexMetaData indexMetaData) throws Exception {
+        final IndexService indexService = indicesService.indexService(indexMetaData.getIndex());
+        final IndexRequest doc = request.doc();
+        if (indexService == null || !indexService.getIndexSettings().getValue(IndexMetaData.INDEX_UPDATE_WITHOUT_READ_SETTING) 
+                || doc == null || !request.docAsUpsert() || request.script() != null || request.upsertRequest() != null 
+                || request.version() != Versions.MATCH_ANY || request.versionType() != VersionType.INTERNAL 
+                || request.parent() != null || doc.parent() != null
+                || (request.fetchSource() != null && request.fetchSource().fetchSource()) || (request.fields() != null && request.fields().length > 0))
+            return false;
+        
+        final DocumentMapper docMapper = indexService.mapperService().documentMapper(request.type());
+        final Map<String, Object> sourceMap = doc.sourceAsMap();
+        if (docMapper == null || docMapper.sourceMapper().enabled() || sourceMap.isEmpty() || !docMapper.isMapped(sourceMap))
+            return false;
+        
+        final CFMetaData metadata = getCFMetaData(indexMetaData.keyspace(), typeToCfName(indexMetaData.keyspace(), request.type()));
+        final Map<String, List<ByteBuffer>> removedKeys = new HashMap<>();
+        for (Map.Entry<String, Object> entry : sourceMap.entrySet()) {
+            if (!(entry.getValue() instanceof Map))
+                continue;
+            final ObjectMapper objectMapper = docMapper.objectMappers().get(entry.getKey());
+            final ColumnDefinition cd = (objectMapper == null) ? null : metadata.getColumnDefinition(objectMapper.cqlName());
+            if (cd == null || !cd.type.isMultiCell() || !(cd.type instanceof MapType))
+                return false; // sub-fields of frozen types and UDT would be overwritten rather than merged.
+            for (Iterator<Map.Entry<String, Object>> it = ((Map<String, Object>) entry.getValue()).entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Object> subEntry = it.next();
+                if (subEntry.getValue() == null) {
+                    removedKeys.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(((MapType<?, ?>) cd.type).getKeysType().fromString(subEntry.getKey()));
+                    it.remove();
+                }
+            }
+        }
+        
+        doc.index(request.index()).type(request.type()).id(request.id()).waitForActiveShards(request.waitForActiveShards());
+        final Mutation mutation = buildMutation(documentColumns(indicesService, doc, indexMetaData, sourceMap, true), true, removedKeys);
+        if (mutation == null)
+            return false;
+        StorageProxy.mutateWithTriggers(Collections.singletonList(mutation), request.waitForActiveShards().toCassandraConsistencyLevel(), false, System.nanoTime());
+        return true;
+    }
+    
+    private Mutation documentMutation(final DocumentColumns columns, final IndexRequest request) throws Exception {
+        Mutation mutation = buildMutation(columns, false, Collections.emptyMap());
+        return (mutation != null) ? mutation : cqlMutation(columns, request);
+    }
+    
+    /**
+     * Build the mutation of a document directly from its serialized columns, with the semantics of a CQL INSERT: 
+     * a primary key liveness info, null values written as tombstones and non-frozen collections overwritten.
+     * A partial mutation has the semantics of a CQL UPDATE of the supplied columns: no primary key liveness info, 
+     * non-frozen maps merged and their removedKeys deleted.
+     * @return the mutation, or null when the document requires the CQL statement (missing clustering key, or a non-frozen user type).
+     */
+    private Mutation buildMutation(final DocumentColumns columns, boolean partial, Map<String, List<ByteBuffer>> removedKeys) throws InvalidRequestException {
+        final CFMetaData metadata = columns.metadata;
+        for (ColumnDefinition cd : columns.columnDefs.values())
+            if (cd.type.isMultiCell() && !cd.type.isCollection())
+                return null;
+        
+        final CBuilder keyBuilder = CBuilder.create(metadata.getKeyValidatorAsClusteringComparator());
+        for (ColumnDefinition cd : metadata.partitionKeyColumns()) {
+            ByteBuffer value = columns.map.get(cd.name.toString());
+            if (value == null)
+                throw new InvalidRequestException("Missing mandatory PRIMARY KEY part " + cd.name);
+            keyBuilder.add(value);
+        }
+        final CBuilder clusteringBuilder = CBuilder.create(metadata.comparator);
+        for (ColumnDefinition cd : metadata.clusteringColumns()) {
+            ByteBuffer value = columns.map.get(cd.name.toString());
+            if (value == null)
+                return null;
+            clusteringBuilder.add(value);
+        }
+        
+        final long timestamp = (columns.writetime != null) ? columns.writetime * 1000 : ClientState.forInternalCalls().getTimestamp();
+        final int ttl = (columns.ttl != null) ? columns.ttl.intValue() : metadata.params.defaultTimeToLive;
+        final int nowInSec = FBUtilities.nowInSeconds();
+        
+        final PartitionColumns.Builder updatedColumns = PartitionColumns.builder();
+        final org.apache.cassandra.db.rows.Row.Builder regularRow = BTreeRow.unsortedBuilder(nowInSec);
+        final org.apache.cassandra.db.rows.Row.Builder staticRow = BTreeRow.unsortedBuilder(nowInSec);
+        regularRow.newRow(clusteringBuilder.build());
+        if (!partial)
+            regularRow.addPrimaryKeyLivenessInfo(LivenessInfo.create(timestamp, ttl, nowInSec));
+        staticRow.newRow(Clustering.STATIC_CLUSTERING);
+        boolean hasStatic = false;
+        for (Map.Entry<String, ByteBuffer> entry : columns.map.entrySet()) {
+            ColumnDefinition cd = columns.columnDefs.get(entry.getKey());
+            if (cd == null || cd.isPrimaryKeyColumn() || entry.getKey().equals(TokenFieldMapper.NAME))
+                continue;
+            hasStatic |= cd.isStatic();
+            final org.apache.cassandra.db.rows.Row.Builder builder = cd.isStatic() ? staticRow : regularRow;
+            final boolean merge = partial && entry.getValue() != null && cd.type.isCollection() && ((CollectionType<?>) cd.type).kind == CollectionType.Kind.MAP;
+            addCells(builder, cd, entry.getValue(), merge, timestamp, ttl, nowInSec);
+            for (ByteBuffer key : removedKeys.getOrDefault(entry.getKey(), Collections.emptyList()))
+                builder.addCell(BufferCell.tombstone(cd, timestamp, nowInSec, CellPath.create(key)));
+            updatedColumns.add(cd);
+        }
+        
+        final PartitionUpdate update = new PartitionUpdate(metadata, metadata.decorateKey(CFMetaData.serializePartitionKey(keyBuilder.build())), updatedColumns.build(), 1);
+        update.add(regularRow.build());
+        if (hasStatic)
+            update.add(staticRow.build());
+        Keyspace.openAndGetStore(metadata).indexManager.validate(update);
+        return new Mutation(update);
+    }
+    
+    private static void addCells(org.apache.cassandra.db.rows.Row.Builder builder, ColumnDefinition cd, ByteBuffer value, boolean merge, long timestamp, int ttl, int nowInSec) {
+        if (!cd.type.isMultiCell()) {
+            builder.addCell((value == null) ? BufferCell.tombstone(cd, timestamp, nowInSec) : cell(cd, value, null, timestamp, ttl, nowInSec));
+            return;
+        }
+        
+        // a non-frozen collection is overwritten unless merged, and its serialized value split into cells.
+        if (!merge)
+            builder.addComplexDeletion(cd, new DeletionTime(timestamp - 1, nowInSec));
+        if (value == null)
+            return;
+        final ByteBuffer input = value.duplicate();
+        final int size = CollectionSerializer.readCollectionSize(input, ProtocolVersion.CURRENT);
+        for (int i = 0; i < size; i++) {
+            ByteBuffer element = CollectionSerializer.readValue(input, ProtocolVersion.CURRENT);
+            switch (((CollectionType<?>) cd.type).kind) {
+            case LIST:
+                builder.addCell(cell(cd, element, CellPath.create(ByteBuffer.wrap(UUIDGen.getTimeUUIDBytes())), timestamp, ttl, nowInSec));
+                break;
+            case SET:
+                builder.addCell(cell(cd, ByteBufferUtil.EMPTY_BYTE_BUFFER, CellPath.create(element), timestamp, ttl, nowInSec));
+                break;
+            case MAP:
+                builder.addCell(cell(cd, CollectionSerializer.readValue(input, ProtocolVersion.CURRENT), CellPath.create(element), timestamp, ttl, nowInSec));
+                break;
+            }
+        }
+    }
+    
+    private static Cell cell(ColumnDefinition cd, ByteBuffer value, CellPath path, long timestamp, int ttl, int nowInSec) {
+        return (ttl == LivenessInfo.NO_TTL) ? BufferCell.live(cd, timestamp, value, path) : BufferCell.expiring(cd, timestamp, ttl, nowInSec, value, path);
+    }
+    
+    private Mutation cqlMutation(final DocumentColumns columns, final IndexRequest request) throws Exception {
+        final ByteBuffer[] values = new ByteBuffer[columns.map.size()];
+        final String query = buildInsertQuery(columns.metadata.ksName, columns.metadata.cfName, columns.map, request.id(), false, columns.ttl, columns.writetime, values, 0);
+        final ClientState clientState = ClientState.forInternalCalls();
+        final ParsedStatement.Prepared prepared = prepare(clientState, query);
+        final QueryOptions options = QueryOptions.forInternalCalls(request.waitForActiveShards().toCassandraConsistencyLevel(), 
+                Arrays.asList(values).subList(0, prepared.boundNames.size()));
+        // the client state provides increasing timestamps, so that successive updates of a document in a bulk request are ordered.
+        Collection<? extends IMutation> mutations = ((ModificationStatement) prepared.statement).getMutations(options, false, clientState.getTimestamp(), System.nanoTime());
+        return (Mutation) mutations.iterator().next();
+    }
+    
+    /**
+     * Serialize the parsed source of a document to cassandra columns. Dynamic mapping updates must have been applied before 
+     * (see {@link org.elasticsearch.action.bulk.TransportShardBulkAction#executeIndexRequestOnPrimary}), so that the source 
+     * is not parsed again by the document mapper. The sourceMap is modified.
+     */
+    private DocumentColumns documentColumns(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, 
+            final Map<String, Object> sourceMap) throws Exception {
+        return documentColumns(indicesService, request, indexMetaData, sourceMap, false);
+    }
+    
+    /**
+     * When partial, only the supplied fields are serialized, without the _source.
+     */
+    private DocumentColumns documentColumns(final IndicesService indicesService, final IndexRequest request, final IndexMetaData indexMetaData, 
+            final Map<String, Object> sourceMap, boolean partial) throws Exception {
         final IndexService indexService = indicesService.indexService(indexMetaData.getIndex());
         final IndexShard indexShard = indexService.getShard(0);
         
-        final SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, request.index(), request.type(), request.id(), request.source(), XContentType.JSON);
-        if (request.routing() != null)
-            sourceToParse.routing(request.routing());
-        if (request.parent() != null)
-            sourceToParse.parent(request.parent());
-        if (request.timestamp() != null)
-            sourceToParse.timestamp(request.timestamp());
-        if (request.ttl() != null)
-            sourceToParse.ttl(request.ttl());
-
         final String keyspaceName = indexMetaData.keyspace();
         final String cfName = typeToCfName(keyspaceName, request.type());
-
-        final Engine.Index operation = indexShard.prepareIndexOnPrimary(sourceToParse, request.version(), request.versionType(), request.getAutoGeneratedTimestamp(), false);
-        final Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
         final boolean dynamicMappingEnable = indexService.mapperService().dynamic();
-        if (update != null && dynamicMappingEnable) {
-            if (logger.isDebugEnabled()) 
-                logger.debug("Document source={} require a blocking mapping update of [{}]", request.sourceAsMap(), indexService.index().getName());
-            // blocking Elasticsearch mapping update (required to update cassandra schema before inserting a row, this is the cost of dynamic mapping)
-            blockingMappingUpdate(indexService, request.type(), update.toString());
-        }
-
-        // get the docMapper after a potential mapping update
         final DocumentMapper docMapper = indexShard.mapperService().documentMapperWithAutoCreate(request.type()).getDocumentMapper();
         
         // insert document into cassandra keyspace=index, table = type
-        final Map<String, Object> sourceMap = request.sourceAsMap();
         final Map<String, ObjectMapper> objectMappers = docMapper.objectMappers();
         final DocumentFieldMappers fieldMappers = docMapper.mappers();
 
@@ -2342,8 +2811,8 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
 
         final CFMetaData metadata = getCFMetaData(keyspaceName, cfName);
         
-        String id = request.id();
         Map<String, ByteBuffer> map = new HashMap<String, ByteBuffer>();
+        Map<String, ColumnDefinition> columnDefs = new HashMap<String, ColumnDefinition>();
         if (request.parent() != null) 
             sourceMap.put(ParentFieldMapper.NAME, request.parent());
         
@@ -2356,7 +2825,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
             sourceMap.put(ParentFieldMapper.NAME, request.type() + Uid.DELIMITER + sourceMap.get(ParentFieldMapper.NAME));
         } 
        
-        if (docMapper.sourceMapper().enabled()) {
+        if (docMapper.sourceMapper().enabled() && !partial) {
             sourceMap.put(SourceFieldMapper.NAME, request.source());
         }
         
@@ -2375,6 +2844,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
             final ColumnDefinition cd = metadata.getColumnDefinition(colName);
             if (cd != null) {
                 // we got a CQL column.
+                columnDefs.put(field, cd);
                 Object fieldValue = sourceMap.get(field);
                 try {
                     if (fieldValue == null) {
@@ -2385,6 +2855,9 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
                                 map.put(field, CollectionSerializer.pack(Collections.emptyList(), 0, ProtocolVersion.CURRENT)); 
                                 break;
                             case MAP :
+                                // a partial update removes all entries of a non-frozen map.
+                                if (partial)
+                                    map.put(field, null);
                                 break;
                             }
                         } else {
@@ -2425,42 +2898,35 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
                     map.put(field, serialize(request.index(), cfName, cd.type, field, fieldValue, mapper));
                 } catch (Exception e) {
                     logger.error("[{}].[{}] failed to parse field {}={}", e, request.index(), cfName, field, fieldValue );
-                    throw e;
+                    // reported as an item failure, as when the document mapper rejects a value.
+                    throw (e instanceof MapperParsingException) ? e : new MapperParsingException("failed to parse field [" + field + "]", e);
                 }
             }
         }
         
-        String query;
-        ByteBuffer[] values;
-        if (request.opType() == DocWriteRequest.OpType.CREATE) {
-            values = new ByteBuffer[map.size()];
-            query = buildInsertQuery(keyspaceName, cfName, map, id, 
-                    true,                
-                    (request.ttl() != null) ? request.ttl().getSeconds() : null, // ttl
-                    timestamp,
-                    values, 0);
-            final boolean applied = processWriteConditional(request.waitForActiveShards().toCassandraConsistencyLevel(), ConsistencyLevel.LOCAL_SERIAL, query, (Object[])values);
-            if (!applied)
-                throw new VersionConflictEngineException(indexShard.shardId(), cfName, request.id(), "PAXOS insert failed, document already exists");
-        } else {
+        if (request.opType() != DocWriteRequest.OpType.CREATE && !partial) {
             // set empty top-level fields to null to overwrite existing columns.
             for(FieldMapper m : fieldMappers) {
                 String fullname = m.name();
-                if (map.get(fullname) == null && !fullname.startsWith("_") && fullname.indexOf('.') == -1 && metadata.getColumnDefinition(m.cqlName()) != null) 
-                    map.put(fullname, null);
+                if (map.get(fullname) == null && !fullname.startsWith("_") && fullname.indexOf('.') == -1) {
+                    ColumnDefinition cd = metadata.getColumnDefinition(m.cqlName());
+                    if (cd != null) {
+                        map.put(fullname, null);
+                        columnDefs.put(fullname, cd);
+                    }
+                }
             }
             for(String m : objectMappers.keySet()) {
-                if (map.get(m) == null && m.indexOf('.') == -1 && metadata.getColumnDefinition(objectMappers.get(m).cqlName()) != null)
-                    map.put(m, null);
+                if (map.get(m) == null && m.indexOf('.') == -1) {
+                    ColumnDefinition cd = metadata.getColumnDefinition(objectMappers.get(m).cqlName());
+                    if (cd != null) {
+                        map.put(m, null);
+                        columnDefs.put(m, cd);
+                    }
+                }
             }
-            values = new ByteBuffer[map.size()];
-            query = buildInsertQuery(keyspaceName, cfName, map, id, 
-                    false,      
-                    (request.ttl() != null) ? request.ttl().getSeconds() : null,
-                    timestamp,
-                    values, 0);
-            process(request.waitForActiveShards().toCassandraConsistencyLevel(), query, (Object[])values);
         }
+        return new DocumentColumns(indexShard, metadata, map, columnDefs, (request.ttl() != null && request.ttl().getSeconds() > 0) ? request.ttl().getSeconds() : null, timestamp);
     }
 
     public String buildInsertQuery(final String ksName, final String cfName, Map<String, ByteBuffer> map, String id, final boolean ifNotExists, final Long ttl, 
@@ -2513,8 +2979,26 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public BytesReference source(IndexService indexService, DocumentMapper docMapper, Map sourceAsMap, String id) throws JsonParseException, JsonMappingException, IOException {
         return source( indexService, docMapper, sourceAsMap, new Uid(docMapper.type(), id));
     }
+    
+    /**
+     * Build _source directly from the row columns, or from {@link #rowAsMap} when the row has columns not supported by the {@link RowSourceRenderer}.
+     */
+    public BytesReference source(IndexService indexService, DocumentMapper docMapper, UntypedResultSet.Row row, Uid uid) throws JsonParseException, JsonMappingException, IOException {
+        BytesReference source = docMapper.getSourceRenderer().render(row, isStaticDocument(indexService, uid), XContentType.JSON);
+        if (source == null)
+            source = source(indexService, docMapper, rowAsMap(indexService, docMapper.type(), row), uid);
+        return source;
+    }
 
     
+    private static String[] decodeElasticId(String id) throws JsonParseException {
+        try {
+            return ElasticIdCodec.decode(id);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(e.getMessage(), org.codehaus.jackson.JsonLocation.NA, e);
+        }
+    }
+    
     public DocPrimaryKey parseElasticId(final IndexService indexService, final String type, final String id) throws IOException {
         return parseElasticId(indexService, type, id, null);
     }
@@ -2531,10 +3015,9 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         List<ColumnDefinition> clusteringColumns = metadata.clusteringColumns();
         int ptLen = partitionColumns.size();
         
-        if (id.startsWith("[") && id.endsWith("]")) {
+        if (ElasticIdCodec.isComposite(id)) {
             // _id is JSON array of values.
-            org.codehaus.jackson.map.ObjectMapper jsonMapper = new org.codehaus.jackson.map.ObjectMapper();
-            Object[] elements = jsonMapper.readValue(id, Object[].class);
+            String[] elements = decodeElasticId(id);
             Object[] values = (map != null) ? null : new Object[elements.length];
             String[] names = (map != null) ? null : new String[elements.length];
             if (elements.length > ptLen + clusteringColumns.size()) 
@@ -2545,9 +3028,9 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
                 AbstractType<?> atype = cd.type;
                 if (map == null) {
                     names[i] = cd.name.toString();
-                    values[i] = atype.compose( fromString(atype, elements[i].toString()) );
+                    values[i] = atype.compose( fromString(atype, elements[i]) );
                 } else {
-                    map.put(cd.name.toString(), atype.compose( fromString(atype, elements[i].toString()) ) );
+                    map.put(cd.name.toString(), atype.compose( fromString(atype, elements[i]) ) );
                 }
             }
             return (map != null) ? null : new DocPrimaryKey(names, values, (clusteringColumns.size() > 0 && elements.length == partitionColumns.size()) ) ;
@@ -2569,10 +3052,9 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         CFMetaData metadata = getCFMetaData(ksName, cfName);
         List<ColumnDefinition> partitionColumns = metadata.partitionKeyColumns();
         int ptLen = partitionColumns.size();
-        if (routing.startsWith("[") && routing.endsWith("]")) {
+        if (ElasticIdCodec.isComposite(routing)) {
             // _routing is JSON array of values.
-            org.codehaus.jackson.map.ObjectMapper jsonMapper = new org.codehaus.jackson.map.ObjectMapper();
-            Object[] elements = jsonMapper.readValue(routing, Object[].class);
+            String[] elements = decodeElasticId(routing);
             Object[] values = new Object[elements.length];
             String[] names = new String[elements.length];
             if (elements.length != ptLen) 
@@ -2582,8 +3064,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
                 ColumnDefinition cd = partitionColumns.get(i);
                 AbstractType<?> atype = cd.type;
                 names[i] = cd.name.toString();
-                values[i] = atype.compose( fromString(atype, elements[i].toString()) );
-                i++;
+                values[i] = atype.compose( fromString(atype, elements[i]) );
             }
             return new DocPrimaryKey(names, values) ;
         } else {
@@ -2602,6 +3083,30 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         return cfm.partitioner.getToken(CFMetaData.serializePartitionKey(builder.build()));
     }
     
+    /**
+     * @return the serialized partition key of the document, as provided to the secondary index.
+     */
+    public ByteBuffer partitionKey(final IndexService indexService, final String type, final DocPrimaryKey docPk) {
+        return partitionKey(getCFMetaData(indexService.keyspace(), typeToCfName(indexService.keyspace(), type)), docPk);
+    }
+    
+    private static ByteBuffer partitionKey(final CFMetaData cfm, final DocPrimaryKey docPk) {
+        CBuilder builder = CBuilder.create(cfm.getKeyValidatorAsClusteringComparator());
+        for (int i = 0; i < cfm.partitionKeyColumns().size(); i++)
+            builder.add(docPk.values[i]);
+        return CFMetaData.serializePartitionKey(builder.build());
+    }
+    
+    /**
+     * @return true if the local node is a natural replica of the partition of the document, so that the document can be 
+     * read from the local tables without going through the coordinator.
+     */
+    public boolean isLocalReplica(final IndexService indexService, final String type, final DocPrimaryKey docPk) {
+        CFMetaData cfm = getCFMetaData(indexService.keyspace(), typeToCfName(indexService.keyspace(), type));
+        Token token = cfm.partitioner.getToken(partitionKey(cfm, docPk));
+        return Keyspace.open(indexService.keyspace()).getReplicationStrategy().getNaturalEndpoints(token).contains(FBUtilities.getBroadcastAddress());
+    }
+    
     public Set<Token> getTokens(final IndexService indexService, final String[] types, final String routing) throws JsonParseException, JsonMappingException, IOException {
         Set<Token> tokens = new HashSet<Token>();
         if (types != null && types.length > 0) {
@@ -2614,10 +3119,8 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public boolean isStaticDocument(final IndexService indexService, Uid uid) throws JsonParseException, JsonMappingException, IOException {
         CFMetaData metadata = getCFMetaData(indexService.keyspace(), typeToCfName(indexService.keyspace(), uid.type()));
         String id = uid.id();
-        if (id.startsWith("[") && id.endsWith("]")) {
-            org.codehaus.jackson.map.ObjectMapper jsonMapper = new org.codehaus.jackson.map.ObjectMapper();
-            Object[] elements = jsonMapper.readValue(id, Object[].class);
-            return metadata.clusteringColumns().size() > 0 && elements.length == metadata.partitionKeyColumns().size();
+        if (ElasticIdCodec.isComposite(id)) {
+            return metadata.clusteringColumns().size() > 0 && decodeElasticId(id).length == metadata.partitionKeyColumns().size();
         } else {
             return metadata.clusteringColumns().size() != 0;
         }
@@ -92,6 +92,7 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexMetaData.INDEX_PARTITION_FUNCTION_SETTING,
         IndexMetaData.INDEX_PARTITION_FUNCTION_CLASS_SETTING,
         IndexMetaData.INDEX_SYNCHRONOUS_REFRESH_SETTING,
+        IndexMetaData.INDEX_SYNCHRONOUS_REFRESH_WINDOW_SETTING,
         IndexMetaData.INDEX_SNAPSHOT_WITH_SSTABLE_SETTING,
         IndexMetaData.INDEX_TOKEN_RANGES_BITSET_CACHE_SETTING,
         IndexMetaData.INDEX_SETTING_KEYSPACE_SETTING,
@@ -99,6 +100,17 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexMetaData.INDEX_INDEX_STATIC_COLUMNS_SETTING,
         IndexMetaData.INDEX_INDEX_STATIC_ONLY_SETTING,
         IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING,
+        IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_SETTING,
+        IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_QUEUE_SIZE_SETTING,
+        IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_BATCH_SIZE_SETTING,
+        IndexMetaData.INDEX_ROW_CACHE_SIZE_SETTING,
+        IndexMetaData.INDEX_TOMBSTONE_BUFFER_SIZE_SETTING,
+        IndexMetaData.INDEX_STORED_SOURCE_SETTING,
+        IndexMetaData.INDEX_SOURCE_CACHE_SIZE_SETTING,
+        IndexMetaData.INDEX_FETCH_CONCURRENCY_SETTING,
+        IndexMetaData.INDEX_BULK_CONCURRENT_WRITES_SETTING,
+        IndexMetaData.INDEX_CREATE_CONSISTENCY_SETTING,
+        IndexMetaData.INDEX_UPDATE_WITHOUT_READ_SETTING,
         
         SearchSlowLog.INDEX_SEARCH_SLOWLOG_THRESHOLD_FETCH_DEBUG_SETTING,
         SearchSlowLog.INDEX_SEARCH_SLOWLOG_THRESHOLD_FETCH_WARN_SETTING,
@@ -306,6 +306,14 @@ public abstract class Engine implements Closeable {
         
     }
     
+    /**
+     * Delete documents matching any of the queries in a single index writer operation.
+     * Unlike {@link #delete(DeleteByQuery)}, deletions become visible on the next refresh.
+     */
+    public void deleteByQueries(Query... queries) throws EngineException {
+        
+    }
+    
     public static class DeleteByQuery {
         private final Query query;
         private final BytesReference source;
@@ -96,6 +96,12 @@ import java.util.function.Function;
 import java.util.function.LongConsumer;
 
 public class VersionLessInternalEngine extends Engine {
+
+    /**
+     * Version of every indexed document, documents are not versioned in cassandra.
+     */
+    public static final long DOCUMENT_VERSION = 1L;
+
     /**
      * When we last pruned expired tombstones from versionMap.deletes:
      */
@@ -577,7 +583,7 @@ public class VersionLessInternalEngine extends Engine {
     private IndexingStrategy planIndexingAsPrimary(Index index) throws IOException {
         assert index.origin() == Operation.Origin.PRIMARY :
             "planing as primary but origin isn't. got " + index.origin();
-        final IndexingStrategy plan = IndexingStrategy.overrideExistingAsIfNotThere(1L);
+        final IndexingStrategy plan = IndexingStrategy.overrideExistingAsIfNotThere(DOCUMENT_VERSION);
         /*
         // resolve an external operation into an internal one which is safe to replay
         if (canOptimizeAddDocument(index)) {
@@ -1744,6 +1750,20 @@ public class VersionLessInternalEngine extends Engine {
         }
     }
 
+    @Override
+    public void deleteByQueries(Query... queries) throws EngineException {
+        try (ReleasableLock lock = readLock.acquire()) {
+            ensureOpen();
+            try (Releasable r = throttle.acquireThrottle()) {
+                indexWriter.deleteDocuments(queries);
+                translog.add(20L * queries.length, queries.length);  // arbitrary delete sizeInBytes=20
+            } catch (Exception t) {
+                maybeFailEngine("delete_by_query", t);
+                throw new EngineException(shardId, "delete by queries failed", t);
+            }
+        }
+    }
+
     private void innerDelete(DeleteByQuery delete) throws EngineException {
         try {
             Query query = delete.query();
@@ -35,6 +35,7 @@ import org.elasticsearch.index.mapper.TTLFieldMapper;
 import org.elasticsearch.index.mapper.TimestampFieldMapper;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
@@ -107,8 +108,11 @@ public class FieldsVisitor extends StoredFieldVisitor {
             }
         }
         if (loadSource()) {
-            for(String columnName : searchContext.mapperService().documentMapper(type).getColumnDefinitions().keySet()) 
-                requiredColumns.add( columnName );
+            // only read the columns matching the _source includes/excludes.
+            FetchSourceContext fetchSourceContext = searchContext.fetchSourceContext();
+            searchContext.mapperService().documentMapper(type).sourceColumns(requiredColumns, 
+                    (fetchSourceContext == null) ? null : fetchSourceContext.includes(), 
+                    (fetchSourceContext == null) ? null : fetchSourceContext.excludes());
         }
         return new TreeSet<String>(requiredColumns);
     }
@@ -19,12 +19,20 @@
 
 package org.elasticsearch.index.get;
 
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.exceptions.RequestExecutionException;
 import org.apache.cassandra.exceptions.RequestValidationException;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.elassandra.index.SourceCache;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.cluster.service.ClusterService.DocPrimaryKey;
 import org.elasticsearch.common.Nullable;
@@ -51,18 +59,26 @@ import org.elasticsearch.index.mapper.ParentFieldMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
 import org.elasticsearch.index.mapper.TTLFieldMapper;
 import org.elasticsearch.index.mapper.TimestampFieldMapper;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.fetch.subphase.ParentFieldSubFetchPhase;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -180,16 +196,76 @@ public final class ShardGetService extends AbstractIndexShardComponent {
         }
 
         fetchSourceContext = normalizeFetchSourceContent(fetchSourceContext, gFields);
+        Set<String> columns = fetchColumns(docMapper, gFields, fetchSourceContext);
+        
+        // the lucene copy of _source is only visible after a refresh, so realtime GET still reads cassandra.
+        if (isSourceOnly(docMapper, gFields, fetchSourceContext) && !realtime && indexSettings.getValue(IndexMetaData.INDEX_STORED_SOURCE_SETTING) && !mapperService.hasNested()) {
+            BytesReference storedSource = storedSource(type, id);
+            if (storedSource != null)
+                return new GetResult(shardId.getIndexName(), type, id, 1L, true, storedSource, null);
+        }
+        
+        // In elassandra, Engine does not store the source any more, but fetch it from cassandra.
+        try {
+            DocPrimaryKey docPk = clusterService.parseElasticId(this.indexService, type, id);
+            
+            final boolean local = clusterService.isLocalReplica(this.indexService, type, docPk);
+            SourceCache sourceCache = isSourceCacheable(local, docPk.isStaticDocument, isSourceOnly(docMapper, gFields, fetchSourceContext)) ? indexShard.sourceCache() : null;
+            ByteBuffer partitionKey = null;
+            String cacheId = null;
+            long generation = 0;
+            if (sourceCache != null) {
+                partitionKey = clusterService.partitionKey(this.indexService, type, docPk);
+                cacheId = ClusterService.stringify(docPk.values, docPk.values.length);
+                BytesReference source = sourceCache.get(type, partitionKey, cacheId, docMapper.getColumnDefinitions());
+                if (source != null)
+                    return new GetResult(shardId.getIndexName(), type, id, 1L, true, source, null);
+                generation = sourceCache.generation(type, partitionKey);
+            }
+            
+            UntypedResultSet result = fetchRow(type, docPk, columns.toArray(new String[columns.size()]), docMapper, local);
+            if (result.isEmpty()) {
+                return new GetResult(shardId.getIndexName(), type, id, -1, false, null, null);
+            }
+            GetResult getResult = getResult(type, id, gFields, fetchSourceContext, docMapper, result.one());
+            if (sourceCache != null && getResult.internalSourceRef() != null)
+                sourceCache.put(type, partitionKey, cacheId, docMapper.getColumnDefinitions(), getResult.internalSourceRef(), generation);
+            return getResult;
+        } catch (RequestExecutionException | RequestValidationException | IOException e1) {
+            throw new ElasticsearchException("Cannot fetch source type [" + type + "] and id [" + id + "]", e1);
+        }
+    }
+    
+    /**
+     * Read the row from the local tables when the local node is a replica of the document partition,
+     * or through the coordinator at LOCAL_ONE otherwise.
+     */
+    private UntypedResultSet fetchRow(String type, DocPrimaryKey docPk, String[] columns, DocumentMapper docMapper) 
+            throws RequestExecutionException, RequestValidationException, IOException {
+        return fetchRow(type, docPk, columns, docMapper, clusterService.isLocalReplica(this.indexService, type, docPk));
+    }
+    
+    private UntypedResultSet fetchRow(String type, DocPrimaryKey docPk, String[] columns, DocumentMapper docMapper, boolean local) 
+            throws RequestExecutionException, RequestValidationException, IOException {
+        indexShard.fetchStats().onGetRead(local);
+        return (local) ? 
+                clusterService.fetchRowInternal(this.indexService, type, docPk, columns, docMapper.getColumnDefinitions()) :
+                clusterService.fetchRow(this.indexService, type, docPk, columns, ConsistencyLevel.LOCAL_ONE, docMapper.getColumnDefinitions());
+    }
+    
+    private Set<String> fetchColumns(DocumentMapper docMapper, String[] gFields, FetchSourceContext fetchSourceContext) {
         Set<String> columns = new HashSet<String>();
-        if ((gFields != null) && (!fetchSourceContext.fetchSource())) {
+        if (gFields != null) {
             for (String field : gFields) {
                 int i = field.indexOf('.');
                 String colName = (i > 0) ? field.substring(0, i ) : field;
                 if (!columns.contains(colName))
                     columns.add(colName);
             }
-        } else {
-            columns.addAll( mapperService.documentMapper(type).getColumnDefinitions().keySet() );
+        }
+        if (fetchSourceContext.fetchSource()) {
+            // only read the columns matching the _source includes/excludes.
+            docMapper.sourceColumns(columns, fetchSourceContext.includes(), fetchSourceContext.excludes());
         }
 
         if (docMapper.parentFieldMapper().active()) {
@@ -204,7 +280,28 @@ public final class ShardGetService extends AbstractIndexShardComponent {
         if (docMapper.sourceMapper().enabled()) {
             columns.add(SourceFieldMapper.NAME);
         }
-        
+        return columns;
+    }
+    
+    /**
+     * The complete _source of a non-static document is cached only when read from the local replica, 
+     * because the cache is invalidated by the writes indexed on this node.
+     */
+    public static boolean isSourceCacheable(boolean localReplica, boolean staticDocument, boolean sourceOnly) {
+        return localReplica && !staticDocument && sourceOnly;
+    }
+    
+    private boolean isSourceOnly(DocumentMapper docMapper, String[] gFields, FetchSourceContext fetchSourceContext) {
+        SourceFieldMapper sourceFieldMapper = docMapper.sourceMapper();
+        boolean sourceFiltering = sourceFieldMapper.includes().length > 0 || sourceFieldMapper.excludes().length > 0 ||
+                fetchSourceContext.includes().length > 0 || fetchSourceContext.excludes().length > 0;
+        return fetchSourceContext.fetchSource() && (gFields == null || gFields.length == 0) && !sourceFiltering;
+    }
+    
+    /**
+     * Build the {@link GetResult} of an existing document from its cassandra row.
+     */
+    private GetResult getResult(String type, String id, String[] gFields, FetchSourceContext fetchSourceContext, DocumentMapper docMapper, UntypedResultSet.Row row) throws IOException {
         Map<String, GetField> fields = null;
      
         // deal with source, but only if it's enabled (we always have it from the translog)
@@ -212,20 +309,14 @@ public final class ShardGetService extends AbstractIndexShardComponent {
         BytesReference sourceToBeReturned = null;
         SourceFieldMapper sourceFieldMapper = docMapper.sourceMapper();
         
-        // In elassandra, Engine does not store the source any more, but fetch it from cassandra.
-        try {
-            String ksName = mapperService.keyspace();
-            UntypedResultSet result = clusterService.fetchRow(this.indexService, type, id, columns.toArray(new String[columns.size()]), 
-                    docMapper.getColumnDefinitions());
-            if (result.isEmpty()) {
-                return new GetResult(shardId.getIndexName(), type, id, -1, false, null, null);
-            }
-            sourceAsMap = clusterService.rowAsMap(this.indexService, type, result.one());
+        if (isSourceOnly(docMapper, gFields, fetchSourceContext)) {
+            // only _source requested, rendered from the row without building a map.
+            sourceToBeReturned = clusterService.source(this.indexService, docMapper, row, new Uid(type, id));
+        } else {
+            sourceAsMap = clusterService.rowAsMap(this.indexService, type, row);
             if (fetchSourceContext.fetchSource()) {
                 sourceToBeReturned = clusterService.source(this.indexService, docMapper, sourceAsMap, id);
             }
-        } catch (RequestExecutionException | RequestValidationException | IOException e1) {
-            throw new ElasticsearchException("Cannot fetch source type [" + type + "] and id [" + id + "]", e1);
         }
         
         if (gFields != null && gFields.length > 0) {
@@ -264,6 +355,172 @@ public final class ShardGetService extends AbstractIndexShardComponent {
 
         return new GetResult(shardId.getIndexName(), type, id, 1L, true, sourceToBeReturned, fields);
     }
+    
+    /**
+     * Rows of a partition requested by a multi-get with the same columns.
+     */
+    private static final class PartitionRead {
+        final String type;
+        final DocumentMapper docMapper;
+        final String[] columns;
+        final List<Integer> slots = new ArrayList<>();
+        final List<DocPrimaryKey> docPks = new ArrayList<>();
+        
+        PartitionRead(String type, DocumentMapper docMapper, String[] columns) {
+            this.type = type;
+            this.docMapper = docMapper;
+            this.columns = columns;
+        }
+    }
+    
+    /**
+     * Get the documents of a multi-get, grouped by type and partition key so that the requested rows of a partition are read 
+     * with a single CQL query, and partitions are read in parallel.
+     * @return the results in the request order, null for the items to get one by one with {@link #get}.
+     */
+    public GetResult[] multiGet(List<MultiGetRequest.Item> items, boolean realtime) {
+        final GetResult[] results = new GetResult[items.size()];
+        if (!realtime && indexSettings.getValue(IndexMetaData.INDEX_STORED_SOURCE_SETTING))
+            return results; // _source may be loaded from lucene.
+        
+        currentMetric.inc();
+        try {
+            final Map<List<Object>, PartitionRead> reads = new LinkedHashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                MultiGetRequest.Item item = items.get(i);
+                String type = item.type();
+                if (type == null || type.equals("_all"))
+                    continue;
+                DocumentMapper docMapper = mapperService.documentMapper(type);
+                if (docMapper == null)
+                    continue;
+                
+                CFMetaData metadata = ClusterService.getCFMetaData(indexService.keyspace(), ClusterService.typeToCfName(indexService.keyspace(), type));
+                int ptLen = metadata.partitionKeyColumns().size();
+                DocPrimaryKey docPk;
+                try {
+                    docPk = clusterService.parseElasticId(indexService, type, item.id());
+                } catch (Exception e) {
+                    continue; // failure reported by the single get.
+                }
+                if (docPk.isStaticDocument || docPk.values.length != ptLen + metadata.clusteringColumns().size())
+                    continue;
+                
+                FetchSourceContext fetchSourceContext = normalizeFetchSourceContent(item.fetchSourceContext(), item.storedFields());
+                Set<String> columns = fetchColumns(docMapper, item.storedFields(), fetchSourceContext);
+                List<Object> key = Arrays.asList(type, columns, Arrays.asList(Arrays.copyOf(docPk.values, ptLen)));
+                PartitionRead read = reads.get(key);
+                if (read == null) {
+                    read = new PartitionRead(type, docMapper, columns.toArray(new String[columns.size()]));
+                    reads.put(key, read);
+                }
+                read.slots.add(i);
+                read.docPks.add(docPk);
+            }
+            
+            // first partition read by the current thread, others on the generic thread pool.
+            final List<PartitionRead> partitionReads = new ArrayList<>(reads.values());
+            final List<Future<?>> futures = new ArrayList<>(partitionReads.size());
+            for (int k = 1; k < partitionReads.size(); k++) {
+                PartitionRead read = partitionReads.get(k);
+                futures.add(indexService.getThreadPool().generic().submit(() -> read(read, items, results)));
+            }
+            if (partitionReads.size() > 0)
+                read(partitionReads.get(0), items, results);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ElasticsearchException("Interrupted while reading multi-get rows", e);
+                } catch (ExecutionException e) {
+                    logger.debug("multi-get partition read failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            currentMetric.dec();
+        }
+    }
+    
+    private void read(PartitionRead read, List<MultiGetRequest.Item> items, GetResult[] results) {
+        long now = System.nanoTime();
+        try {
+            CFMetaData metadata = ClusterService.getCFMetaData(indexService.keyspace(), ClusterService.typeToCfName(indexService.keyspace(), read.type));
+            List<ColumnDefinition> clusteringColumns = metadata.clusteringColumns();
+            int ptLen = metadata.partitionKeyColumns().size();
+            Map<List<ByteBuffer>, UntypedResultSet.Row> rows = new HashMap<>();
+            if (clusteringColumns.isEmpty() || read.docPks.size() == 1) {
+                UntypedResultSet result = fetchRow(read.type, read.docPks.get(0), read.columns, read.docMapper);
+                if (result.isEmpty()) {
+                    for (int slot : read.slots)
+                        results[slot] = new GetResult(shardId.getIndexName(), read.type, items.get(slot).id(), -1, false, null, null);
+                } else {
+                    rows.put(clustering(read.docPks.get(0), ptLen, clusteringColumns), result.one());
+                }
+            } else {
+                boolean local = clusterService.isLocalReplica(this.indexService, read.type, read.docPks.get(0));
+                indexShard.fetchStats().onGetRead(local);
+                UntypedResultSet result = (local) ?
+                        clusterService.fetchRowsInternal(this.indexService, read.type, read.docPks, read.columns, read.docMapper.getColumnDefinitions()) :
+                        clusterService.fetchRows(this.indexService, read.type, read.docPks, read.columns, 
+                                ConsistencyLevel.LOCAL_ONE, read.docMapper.getColumnDefinitions());
+                for (UntypedResultSet.Row row : result) {
+                    List<ByteBuffer> clustering = new ArrayList<>(clusteringColumns.size());
+                    for (ColumnDefinition cd : clusteringColumns)
+                        clustering.add(row.getBytes(cd.name.toString()));
+                    rows.put(clustering, row);
+                }
+            }
+            
+            for (int k = 0; k < read.slots.size(); k++) {
+                int slot = read.slots.get(k);
+                UntypedResultSet.Row row = rows.get(clustering(read.docPks.get(k), ptLen, clusteringColumns));
+                // rows not matched are read again by the single get.
+                if (row != null) {
+                    MultiGetRequest.Item item = items.get(slot);
+                    FetchSourceContext fetchSourceContext = normalizeFetchSourceContent(item.fetchSourceContext(), item.storedFields());
+                    results[slot] = getResult(read.type, item.id(), item.storedFields(), fetchSourceContext, read.docMapper, row);
+                }
+                if (results[slot] != null) {
+                    if (results[slot].isExists())
+                        existsMetric.inc(System.nanoTime() - now);
+                    else
+                        missingMetric.inc(System.nanoTime() - now);
+                }
+            }
+        } catch (Exception e) {
+            // items without result are read again by the single get, reporting the failure.
+            logger.debug("multi-get read of type [" + read.type + "] failed", e);
+        }
+    }
+    
+    private static List<ByteBuffer> clustering(DocPrimaryKey docPk, int ptLen, List<ColumnDefinition> clusteringColumns) {
+        List<ByteBuffer> clustering = new ArrayList<>(clusteringColumns.size());
+        for (int i = 0; i < clusteringColumns.size(); i++) {
+            Object v = docPk.values[ptLen + i];
+            AbstractType atype = clusteringColumns.get(i).type;
+            clustering.add((v instanceof ByteBuffer) ? (ByteBuffer) v : atype.decompose(v));
+        }
+        return clustering;
+    }
+
+    /**
+     * Load the _source stored in lucene when index.stored_source is enabled.
+     * @return the stored _source, or null when the document is not found or was indexed without _source.
+     */
+    private BytesReference storedSource(String type, String id) {
+        try (Engine.Searcher searcher = indexShard.acquireSearcher("get")) {
+            TopDocs topDocs = searcher.searcher().search(new TermQuery(new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(type, id))), 1);
+            if (topDocs.totalHits == 0)
+                return null;
+            FieldsVisitor fieldVisitor = new FieldsVisitor(true);
+            searcher.searcher().doc(topDocs.scoreDocs[0].doc, fieldVisitor);
+            return fieldVisitor.source();
+        } catch (IOException e) {
+            throw new ElasticsearchException("Failed to get type [" + type + "] and id [" + id + "] from lucene", e);
+        }
+    }
 
     private GetResult innerGetLoadFromStoredFields(String type, String id, String[] gFields, FetchSourceContext fetchSourceContext, Engine.GetResult get, MapperService mapperService) {
         Map<String, GetField> fields = null;
@@ -282,9 +539,7 @@ public final class ShardGetService extends AbstractIndexShardComponent {
                         columnDefs.keySet().toArray(new String[columnDefs.size()]), 
                         ConsistencyLevel.LOCAL_ONE,
                         columnDefs);
-                Map<String, Object> sourceMap = clusterService.rowAsMap(this.indexService, type, result.one());
-               
-                source = clusterService.source(this.indexService, docMapper, sourceMap, fieldVisitor.uid().id());
+                source = clusterService.source(this.indexService, docMapper, result.one(), new Uid(type, id));
                 
                 fieldVisitor.source( BytesReference.toBytes(source) );
                 //docIdAndVersion.context.reader().document(docIdAndVersion.docId, fieldVisitor);
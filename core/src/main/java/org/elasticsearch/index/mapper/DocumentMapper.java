@@ -26,12 +26,14 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.elassandra.index.RowSourceRenderer;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elasticsearch.ElasticsearchGenerationException;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.ToXContent;
@@ -45,12 +47,14 @@ import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Collections.emptyMap;
 
@@ -135,6 +139,8 @@ public class DocumentMapper implements ToXContent {
     
     private CqlFragments cqlFragments = null;
     private Map<String, ColumnDefinition> columnDefs = null;
+    private RowSourceRenderer sourceRenderer = null;
+    private final Map<String, String> fetchQueries = new ConcurrentHashMap<String, String>();
     
     public CqlFragments getCqlFragments() {
         if (this.cqlFragments == null) {
@@ -152,6 +158,7 @@ public class DocumentMapper implements ToXContent {
         public String ptWhere;
         public String pkCols;
         public String pkWhere;
+        public String ckIn;     // IN restriction on the clustering key, null without clustering columns.
         
         CqlFragments(CFMetaData metadata) {
             StringBuilder pkColsBuilder = new StringBuilder();
@@ -180,6 +187,18 @@ public class DocumentMapper implements ToXContent {
             
             this.pkCols = pkColsBuilder.toString();
             this.pkWhere = pkWhereBuilder.toString();
+            
+            if (metadata.clusteringColumns().size() == 1) {
+                this.ckIn = '\"' + metadata.clusteringColumns().get(0).name.toString() + "\" IN ?";
+            } else if (metadata.clusteringColumns().size() > 1) {
+                StringBuilder ckInBuilder = new StringBuilder("(");
+                for (ColumnDefinition cd : metadata.clusteringColumns()) {
+                    if (ckInBuilder.length() > 1)
+                        ckInBuilder.append(',');
+                    ckInBuilder.append('\"').append(cd.name.toString()).append('\"');
+                }
+                this.ckIn = ckInBuilder.append(") IN ?").toString();
+            }
         }
     }
      
@@ -210,6 +229,62 @@ public class DocumentMapper implements ToXContent {
         return this.columnDefs;
     }
     
+    /**
+     * Add the columns required to build the _source filtered by the includes and excludes of a request and of the _source mapping.
+     * A column is read when an include may match the column or one of its sub-fields, and skipped when an exclude matches the whole column.
+     * When no column matches, the partition key columns are read, so that the row is still read and an empty _source is returned.
+     */
+    public void sourceColumns(Collection<String> columns, String[] includes, String[] excludes) {
+        boolean matched = false;
+        for(String columnName : getColumnDefinitions().keySet()) {
+            if (mayInclude(columnName, includes) && mayInclude(columnName, sourceMapper().includes()) &&
+                !Regex.simpleMatch(excludes, columnName) && !Regex.simpleMatch(sourceMapper().excludes(), columnName)) {
+                columns.add(columnName);
+                matched = true;
+            }
+        }
+        if (!matched) {
+            for(Map.Entry<String, ColumnDefinition> entry : getColumnDefinitions().entrySet()) {
+                if (entry.getValue().isPartitionKey())
+                    columns.add(entry.getKey());
+            }
+        }
+    }
+    
+    // true if an include pattern may match the column or a path below the column.
+    private static boolean mayInclude(String columnName, String[] includes) {
+        if (includes == null || includes.length == 0)
+            return true;
+        for(String include : includes) {
+            int wildcard = include.indexOf('*');
+            String prefix = (wildcard < 0) ? include : include.substring(0, wildcard);
+            int dot = prefix.indexOf('.');
+            if (dot >= 0) {
+                if (prefix.substring(0, dot).equals(columnName))
+                    return true;
+            } else if ((wildcard < 0) ? prefix.equals(columnName) : columnName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // CQL fetch queries of this mapping, by static document flag and required columns.
+    public Map<String, String> getFetchQueries() {
+        return this.fetchQueries;
+    }
+    
+    // render _source from cassandra rows with a column plan computed for this mapping.
+    public RowSourceRenderer getSourceRenderer() {
+        if (this.sourceRenderer == null) {
+            synchronized(this) {
+                if (this.sourceRenderer == null)
+                    this.sourceRenderer = new RowSourceRenderer(this);
+            }
+        }
+        return this.sourceRenderer;
+    }
+    
     public DocumentMapper(MapperService mapperService, Mapping mapping) {
         this.mapperService = mapperService;
         this.type = mapping.root().name();
@@ -360,6 +435,42 @@ public class DocumentMapper implements ToXContent {
         return this.objectMappers;
     }
 
+    /**
+     * @return true if all fields of a parsed _source are already mapped, so that parsing it cannot produce a dynamic mapping update.
+     * Top-level metadata fields are reported as unmapped because the document parser must reject them.
+     */
+    public boolean isMapped(Map<String, Object> source) {
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            if (entry.getKey().startsWith("_") || !isMapped(entry.getKey(), entry.getValue()))
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isMapped(String path, Object value) {
+        if (value == null || fieldMappers.getMapper(path) != null)
+            return true; // null values do not add mappings, and some fields (geo_point, completion...) accept objects.
+        if (value instanceof List) {
+            for (Object element : (List<Object>) value)
+                if (!isMapped(path, element))
+                    return false;
+            return true;
+        }
+        if (value instanceof Map) {
+            ObjectMapper objectMapper = objectMappers.get(path);
+            if (objectMapper == null)
+                return false;
+            if (!objectMapper.isEnabled())
+                return true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet())
+                if (!isMapped(path + "." + entry.getKey(), entry.getValue()))
+                    return false;
+            return true;
+        }
+        return false;
+    }
+
     // TODO this method looks like it is only used in tests...
     public ParsedDocument parse(String index, String type, String id, BytesReference source) throws MapperParsingException {
         return parse(SourceToParse.source(index, type, id, source, XContentType.JSON));
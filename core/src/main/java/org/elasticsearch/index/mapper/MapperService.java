@@ -540,6 +540,9 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
             checkFieldUniqueness(newMapper.type(), objectMappers, fieldMappers, fullPathObjectMappers, fieldTypes);
             checkObjectsCompatibility(objectMappers, updateAllTypes, fullPathObjectMappers);
             checkPartitionedIndexConstraints(newMapper);
+            if (reason == MergeReason.MAPPING_UPDATE) {
+                checkStoredSourceConstraints(newMapper);
+            }
 
             // update lookup data-structures
             // this will in particular make sure that the merged fields are compatible with other types
@@ -786,6 +789,14 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
         }
     }
 
+    private void checkStoredSourceConstraints(DocumentMapper newMapper) {
+        // the lucene copy of the _source is taken from the _source column, only written when _source is enabled.
+        if (indexSettings.getValue(IndexMetaData.INDEX_STORED_SOURCE_SETTING) && !newMapper.sourceMapper().enabled()) {
+            throw new IllegalArgumentException("mapping type [" + newMapper.type() + "] must have _source enabled when ["
+                    + IndexMetaData.SETTING_STORED_SOURCE + "] is true for index [" + indexSettings.getIndex().getName() + "]");
+        }
+    }
+
     public DocumentMapper parse(String mappingType, CompressedXContent mappingSource, boolean applyDefault) throws MapperParsingException {
         return documentParser.parse(mappingType, mappingSource, applyDefault ? defaultMappingSource : null);
     }
@@ -37,6 +37,13 @@ import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.ThreadInterruptedException;
 import org.elassandra.cluster.routing.AbstractSearchStrategy;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elassandra.index.FetchStats;
+import org.elassandra.index.RefreshCoalescer;
+import org.elassandra.index.SecondaryIndexStats;
+import org.elassandra.index.SecondaryIndexingQueue;
+import org.elassandra.index.SourceCache;
+import org.elassandra.index.TombstoneBuffer;
 import org.elassandra.util.ConcurrentReferenceHashMap;
 import org.elassandra.util.ConcurrentReferenceHashMap.ReferenceType;
 import org.elasticsearch.ElasticsearchException;
@@ -180,6 +187,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     
     private final IndexService indexService; 
     private final ClusterService clusterService;
+    private final SecondaryIndexingQueue secondaryIndexingQueue;
+    private final RefreshCoalescer refreshCoalescer;
+    private final TombstoneBuffer tombstoneBuffer;
+    private final FetchStats fetchStats = new FetchStats();
+    private final SourceCache sourceCache;
 
 
     /**
@@ -283,6 +295,13 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.tokenRangesBitsetFilterCache = new ShardBitsetFilterCache(shardId, indexSettings);
         this.indexService = indexService;
         this.clusterService = clusterService;
+        this.secondaryIndexingQueue = new SecondaryIndexingQueue(logger, threadPool,
+                IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_QUEUE_SIZE_SETTING.get(settings),
+                IndexMetaData.INDEX_ASYNCHRONOUS_INDEXING_BATCH_SIZE_SETTING.get(settings));
+        this.refreshCoalescer = new RefreshCoalescer(logger, this);
+        this.tombstoneBuffer = new TombstoneBuffer(logger, this, IndexMetaData.INDEX_TOMBSTONE_BUFFER_SIZE_SETTING.get(settings));
+        long sourceCacheSize = IndexMetaData.INDEX_SOURCE_CACHE_SIZE_SETTING.get(settings).getBytes();
+        this.sourceCache = (sourceCacheSize > 0) ? new SourceCache(sourceCacheSize) : null;
         state = IndexShardState.CREATED;
         this.path = path;
         /* create engine config */
@@ -328,6 +347,29 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return this.getService;
     }
 
+    public SecondaryIndexingQueue secondaryIndexingQueue() {
+        return this.secondaryIndexingQueue;
+    }
+
+    public RefreshCoalescer refreshCoalescer() {
+        return this.refreshCoalescer;
+    }
+    
+    public TombstoneBuffer tombstoneBuffer() {
+        return this.tombstoneBuffer;
+    }
+
+    public FetchStats fetchStats() {
+        return this.fetchStats;
+    }
+
+    /**
+     * @return the cache of _source rendered from cassandra rows, null if disabled.
+     */
+    public SourceCache sourceCache() {
+        return this.sourceCache;
+    }
+
     public ShardBitsetFilterCache shardBitsetFilterCache() {
         return shardBitsetFilterCache;
     }
@@ -626,6 +668,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         active.set(true);
         final Engine.IndexResult result;
         index = indexingOperationListeners.preIndex(shardId, index);
+        // keep buffered tombstones of the partition ordered before this document.
+        tombstoneBuffer.beforeIndex(index.parsedDoc().token());
         try {
             if (logger.isTraceEnabled()) {
                 logger.trace("index [{}][{}] (v# [{}])",  index.type(), index.id(), index.version());
@@ -711,6 +755,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      */
     public void refresh(String source) {
         verifyNotClosed();
+        tombstoneBuffer.flush();
 
         if (canIndex()) {
             long bytes = getEngine().getIndexBufferRAMBytesUsed();
@@ -751,6 +796,18 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()), listeners);
     }
 
+    public SecondaryIndexStats secondaryIndexStats() {
+        SecondaryIndexStats stats = new SecondaryIndexStats();
+        secondaryIndexingQueue.stats(stats);
+        refreshCoalescer.stats(stats);
+        tombstoneBuffer.stats(stats);
+        fetchStats.stats(stats);
+        if (sourceCache != null)
+            sourceCache.stats(stats);
+        ElasticSecondaryIndex.stats(shardId.getIndexName(), stats);
+        return stats;
+    }
+
     public FlushStats flushStats() {
         return new FlushStats(flushMetric.count(), TimeUnit.NANOSECONDS.toMillis(flushMetric.sum()));
     }
@@ -872,6 +929,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             throw new IllegalIndexShardStateException(shardId(), state, "flush is only allowed if the engine is not recovery" +
                 " from translog");
         }
+        tombstoneBuffer.flush();
         long time = System.nanoTime();
         Engine.CommitId commitId = engine.flush(force, waitIfOngoing);
         flushMetric.inc(System.nanoTime() - time);
@@ -1011,6 +1069,9 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     public void close(String reason, boolean flushEngine) throws IOException {
         synchronized (mutex) {
             try {
+                // apply pending asynchronous secondary index operations while the shard is still writable.
+                secondaryIndexingQueue.close();
+                tombstoneBuffer.flush();
                 changeState(IndexShardState.CLOSED, reason);
             } finally {
                 final Engine engine = this.currentEngineReference.getAndSet(null);
@@ -1900,7 +1961,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * @throws AlreadyClosedException if the engine or internal indexwriter in the engine is already closed
      */
     public boolean isRefreshNeeded() {
-        return getEngine().refreshNeeded() || (refreshListeners != null && refreshListeners.refreshNeeded());
+        return getEngine().refreshNeeded() || tombstoneBuffer.pending() > 0 || (refreshListeners != null && refreshListeners.refreshNeeded());
     }
 
     /**
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.indices;
 
+import org.elassandra.index.SecondaryIndexStats;
 import org.elasticsearch.action.admin.indices.stats.CommonStats;
 import org.elasticsearch.action.admin.indices.stats.IndexShardStats;
 import org.elasticsearch.action.admin.indices.stats.ShardStats;
@@ -146,6 +147,11 @@ public class NodeIndicesStats implements Streamable, ToXContent {
         return stats.getRecoveryStats();
     }
 
+    @Nullable
+    public SecondaryIndexStats getSecondaryIndex() {
+        return stats.getSecondaryIndex();
+    }
+
     public static NodeIndicesStats readIndicesStats(StreamInput in) throws IOException {
         NodeIndicesStats stats = new NodeIndicesStats();
         stats.readFrom(in);
@@ -76,6 +76,7 @@ public class RestIndicesStatsAction extends BaseRestHandler {
         metrics.put("request_cache", r -> r.requestCache(true));
         metrics.put("recovery", r -> r.recovery(true));
         metrics.put("translog", r -> r.translog(true));
+        metrics.put("secondary_index", r -> r.secondaryIndex(true));
         METRICS = Collections.unmodifiableMap(metrics);
     }
 
@@ -19,6 +19,10 @@
 
 package org.elasticsearch.search.fetch;
 
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.cql3.QueryOptions;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.ResultSet;
@@ -37,11 +41,13 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BitSet;
+import org.elassandra.index.SourceCache;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.cluster.service.ClusterService.DocPrimaryKey;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.logging.Loggers;
@@ -59,6 +65,8 @@ import org.elasticsearch.index.mapper.IdFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.ObjectMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
+import org.elasticsearch.index.mapper.TypeFieldMapper;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.SearchHits;
@@ -70,6 +78,7 @@ import org.elasticsearch.search.lookup.SourceLookup;
 import org.elasticsearch.tasks.TaskCancelledException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -78,6 +87,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
 
@@ -87,6 +100,25 @@ import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
  */
 public class FetchPhase implements SearchPhase {
 
+    /**
+     * Maximum number of cassandra reads of a fetch request submitted at once to the READ stage.
+     */
+    static final int MAX_CONCURRENT_READS = 64;
+
+    /**
+     * Stored fields available without reading cassandra.
+     */
+    static final Set<String> LUCENE_FIELDS = ImmutableSet.of(UidFieldMapper.NAME, IdFieldMapper.NAME, TypeFieldMapper.NAME, NodeFieldMapper.NAME);
+
+    /**
+     * Time spent by a fetch request to load lucene stored fields and cassandra rows.
+     */
+    protected static final class FetchTimes {
+        long luceneNanos = 0;
+        long cassandraNanos = 0;
+        int reads = 0;
+    }
+
     protected final FetchSubPhase[] fetchSubPhases;
     protected final ClusterService clusterService;
     
@@ -107,6 +139,7 @@ public class FetchPhase implements SearchPhase {
     @Override
     public void execute(SearchContext context) {
         final FieldsVisitor fieldsVisitor;
+        Supplier<FieldsVisitor> fieldsVisitorSupplier = null;
         Set<String> fieldNames = null;
         List<String> fieldNamePatterns = null;
         StoredFieldsContext storedFieldsContext = context.storedFieldsContext();
@@ -116,7 +149,9 @@ public class FetchPhase implements SearchPhase {
             if (!context.hasScriptFields() && !context.hasFetchSourceContext()) {
                 context.fetchSourceContext(new FetchSourceContext(true));
             }
-            fieldsVisitor = new FieldsVisitor(context.sourceRequested());
+            final boolean loadSource = context.sourceRequested();
+            fieldsVisitorSupplier = () -> new FieldsVisitor(loadSource);
+            fieldsVisitor = fieldsVisitorSupplier.get();
         } else if (storedFieldsContext.fetchFields() == false) {
             // disable stored fields entirely
             fieldsVisitor = null;
@@ -147,16 +182,24 @@ public class FetchPhase implements SearchPhase {
                     fieldNames.add(fieldName);
                 }
             }
-            boolean loadSource = context.sourceRequested();
+            final boolean loadSource = context.sourceRequested();
             if (fieldNames == null && fieldNamePatterns == null) {
                 // empty list specified, default to disable _source if no explicit indication
-                fieldsVisitor = new FieldsVisitor(loadSource);
+                fieldsVisitorSupplier = () -> new FieldsVisitor(loadSource);
             } else {
-                fieldsVisitor = new CustomFieldsVisitor(fieldNames == null ? Collections.emptySet() : fieldNames,
-                    fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns, loadSource);
+                final Set<String> fields = fieldNames == null ? Collections.emptySet() : fieldNames;
+                final List<String> patterns = fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns;
+                fieldsVisitorSupplier = () -> new CustomFieldsVisitor(fields, patterns, loadSource);
             }
+            fieldsVisitor = fieldsVisitorSupplier.get();
         }
 
+        // without nested documents, stored fields of all hits are loaded before executing sub-phases,
+        // so that cassandra rows are read in parallel rather than one after the other.
+        final FetchTimes times = new FetchTimes();
+        final FieldsVisitor[] loadedFieldsVisitors = (fieldsVisitor != null && context.docIdsToLoadSize() > 1 && !context.mapperService().hasNested()) ?
+                loadStoredFields(context, fieldsVisitorSupplier, times) : null;
+
         SearchHit[] hits = new SearchHit[context.docIdsToLoadSize()];
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
         for (int index = 0; index < context.docIdsToLoadSize(); index++) {
@@ -172,9 +215,11 @@ public class FetchPhase implements SearchPhase {
             try {
                 int rootDocId = findRootDocumentIfNested(context, subReaderContext, subDocId);
                 if (rootDocId != -1) {
-                    searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext);
+                    searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext, times);
+                } else if (loadedFieldsVisitors != null) {
+                    searchHit = createSearchHit(context, loadedFieldsVisitors[index], docId, subDocId, subReaderContext, true, times);
                 } else {
-                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext);
+                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext, false, times);
                 }
             } catch (IOException e) {
                 throw ExceptionsHelper.convertToElastic(e);
@@ -192,6 +237,13 @@ public class FetchPhase implements SearchPhase {
         }
 
         context.fetchResult().hits(new SearchHits(hits, context.queryResult().getTotalHits(), context.queryResult().getMaxScore()));
+
+        if (context.indexShard() != null)
+            context.indexShard().fetchStats().onFetch(hits.length, times.reads, times.luceneNanos, times.cassandraNanos);
+        Logger logger = Loggers.getLogger(FetchPhase.class);
+        if (logger.isDebugEnabled())
+            logger.debug("fetched hits={} cassandra reads={} lucene={}us cassandra={}us", 
+                    hits.length, times.reads, times.luceneNanos / 1000, times.cassandraNanos / 1000);
     }
 
     private int findRootDocumentIfNested(SearchContext context, LeafReaderContext subReaderContext, int subDocId) throws IOException {
@@ -204,11 +256,14 @@ public class FetchPhase implements SearchPhase {
         return -1;
     }
 
-    protected SearchHit createSearchHit(SearchContext context, FieldsVisitor fieldsVisitor, int docId, int subDocId, LeafReaderContext subReaderContext) {
+    protected SearchHit createSearchHit(SearchContext context, FieldsVisitor fieldsVisitor, int docId, int subDocId, LeafReaderContext subReaderContext, 
+            boolean loaded, FetchTimes times) {
         if (fieldsVisitor == null) {
             return new SearchHit(docId);
         }
-        loadStoredFields(context, subReaderContext, fieldsVisitor, subDocId);
+        if (!loaded) {
+            loadStoredFields(context, subReaderContext, fieldsVisitor, subDocId, times);
+        }
         fieldsVisitor.postProcess(context.mapperService());
 
         Map<String, SearchHitField> searchFields = null;
@@ -237,15 +292,15 @@ public class FetchPhase implements SearchPhase {
         return searchHit;
     }
 
-    private SearchHit createNestedSearchHit(SearchContext context, int nestedTopDocId, int nestedSubDocId, int rootSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext) throws IOException {
+    private SearchHit createNestedSearchHit(SearchContext context, int nestedTopDocId, int nestedSubDocId, int rootSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext, FetchTimes times) throws IOException {
         // Also if highlighting is requested on nested documents we need to fetch the _source from the root document,
         // otherwise highlighting will attempt to fetch the _source from the nested doc, which will fail,
         // because the entire _source is only stored with the root document.
         final FieldsVisitor rootFieldsVisitor = new FieldsVisitor(context.sourceRequested() || context.highlight() != null);
-        loadStoredFields(context, subReaderContext, rootFieldsVisitor, rootSubDocId);
+        loadStoredFields(context, subReaderContext, rootFieldsVisitor, rootSubDocId, times);
         rootFieldsVisitor.postProcess(context.mapperService());
 
-        Map<String, SearchHitField> searchFields = getSearchFields(context, nestedSubDocId, fieldNames, fieldNamePatterns, subReaderContext);
+        Map<String, SearchHitField> searchFields = getSearchFields(context, nestedSubDocId, fieldNames, fieldNamePatterns, subReaderContext, times);
         DocumentMapper documentMapper = context.mapperService().documentMapper(rootFieldsVisitor.uid().type());
         SourceLookup sourceLookup = context.lookup().source();
         sourceLookup.setSegmentAndDocument(subReaderContext, nestedSubDocId);
@@ -298,13 +353,13 @@ public class FetchPhase implements SearchPhase {
         return new SearchHit(nestedTopDocId, rootFieldsVisitor.uid().id(), documentMapper.typeText(), nestedIdentity, searchFields);
     }
 
-    private Map<String, SearchHitField> getSearchFields(SearchContext context, int nestedSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext) {
+    private Map<String, SearchHitField> getSearchFields(SearchContext context, int nestedSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext, FetchTimes times) {
         Map<String, SearchHitField> searchFields = null;
         if (context.hasStoredFields() && !context.storedFieldsContext().fieldNames().isEmpty()) {
             FieldsVisitor nestedFieldsVisitor = new CustomFieldsVisitor(fieldNames == null ? Collections.emptySet() : fieldNames,
                 fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns, false);
             if (nestedFieldsVisitor != null) {
-                loadStoredFields(context, subReaderContext, nestedFieldsVisitor, nestedSubDocId);
+                loadStoredFields(context, subReaderContext, nestedFieldsVisitor, nestedSubDocId, times);
                 nestedFieldsVisitor.postProcess(context.mapperService());
                 if (!nestedFieldsVisitor.fields().isEmpty()) {
                     searchFields = new HashMap<>(nestedFieldsVisitor.fields().size());
@@ -371,15 +426,35 @@ public class FetchPhase implements SearchPhase {
         return fieldVisitor.requiredColumns(searchContext);
     }
 
+    private void includeNode(SearchContext searchContext) {
+        IndexMetaData indexMetaData = clusterService.state().metaData().index(searchContext.request().shardId().getIndexName());
+        searchContext.includeNode(indexMetaData.getSettings().getAsBoolean(IndexMetaData.SETTING_INCLUDE_NODE_ID, clusterService.settings().getAsBoolean(ClusterService.SETTING_CLUSTER_INCLUDE_NODE_ID, false)));
+    }
+    
+    /**
+     * @return true when the hit is built from lucene only, without _source and with stored fields in {@link #LUCENE_FIELDS}. 
+     * Docvalue fields, including _token, are always loaded from lucene by their fetch sub-phase.
+     */
+    static boolean luceneOnly(FieldsVisitor fieldVisitor) {
+        if (fieldVisitor.loadSource())
+            return false;
+        if (fieldVisitor.requestedFields() != null) {
+            for (String field : fieldVisitor.requestedFields()) {
+                if (!LUCENE_FIELDS.contains(field))
+                    return false;
+            }
+        }
+        return true;
+    }
+    
     protected ParsedStatement.Prepared getCqlPreparedStatement(SearchContext searchContext, IndexService indexService, FieldsVisitor fieldVisitor, String typeKey, boolean staticDocument) throws IOException {
         ParsedStatement.Prepared cqlStatement = searchContext.getCqlPreparedStatement( typeKey );
         if (cqlStatement == null) {
             // fetch from requested stored_fields.
             NavigableSet<String> requiredColumns = requiredColumns(searchContext, fieldVisitor);
             if (requiredColumns.size() > 0) {
-                IndexMetaData indexMetaData = clusterService.state().metaData().index(searchContext.request().shardId().getIndexName());
                 if (requiredColumns.contains(NodeFieldMapper.NAME)) {
-                    searchContext.includeNode(indexMetaData.getSettings().getAsBoolean(IndexMetaData.SETTING_INCLUDE_NODE_ID, clusterService.settings().getAsBoolean(ClusterService.SETTING_CLUSTER_INCLUDE_NODE_ID, false)));
+                    includeNode(searchContext);
                     requiredColumns.remove(NodeFieldMapper.NAME);
                 }
                 DocumentMapper docMapper = searchContext.mapperService().documentMapper(fieldVisitor.uid().type());
@@ -405,6 +480,11 @@ public class FetchPhase implements SearchPhase {
         UntypedResultSet rs = UntypedResultSet.create(resultSet);
         if (!rs.isEmpty()) {
             Row row = rs.one();
+            if (fieldVisitor.loadSource() && (fieldVisitor.requestedFields() == null || fieldVisitor.requestedFields().isEmpty())) {
+                // only _source requested, rendered from the row without building a map.
+                fieldVisitor.source( clusterService.source(indexService, searchContext.mapperService().documentMapper(fieldVisitor.uid().type()), row, fieldVisitor.uid()) );
+                return;
+            }
             Map<String, Object> mapObject = clusterService.rowAsMap(indexService, fieldVisitor.uid().type(), row);
             if (searchContext.includeNode()) {
                 mapObject.put(NodeFieldMapper.NAME, clusterService.state().nodes().getLocalNodeId());
@@ -423,39 +503,255 @@ public class FetchPhase implements SearchPhase {
         }
     }
     
-    private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId) {
+    /**
+     * Prepare the cassandra read of the row of a document, or return null when no column is required, when the hit is built
+     * from lucene only, or when only the _source is requested and it was loaded from lucene (see index.stored_source).
+     */
+    private Callable<ResultMessage> cassandraRead(SearchContext searchContext, IndexService indexService, FieldsVisitor fieldVisitor) throws IOException {
+        if (luceneOnly(fieldVisitor)) {
+            // neither the _id is parsed nor a CQL statement prepared.
+            if (fieldVisitor.requestedFields() != null && fieldVisitor.requestedFields().contains(NodeFieldMapper.NAME))
+                includeNode(searchContext);
+            return null;
+        }
+        
+        if (fieldVisitor.loadSource() && fieldVisitor.source() != null && 
+            (fieldVisitor.requestedFields() == null || fieldVisitor.requestedFields().isEmpty()) &&
+            indexService.getIndexSettings().getValue(IndexMetaData.INDEX_STORED_SOURCE_SETTING))
+            return null;
+        
+        DocPrimaryKey docPk = clusterService.parseElasticId(indexService, fieldVisitor.uid().type(), fieldVisitor.uid().id());
+        String typeKey = fieldVisitor.uid().type();
+        if (docPk.isStaticDocument) 
+            typeKey += "_static";
+        
+        final ParsedStatement.Prepared cqlStatement = getCqlPreparedStatement(searchContext, indexService, fieldVisitor, typeKey, docPk.isStaticDocument);
+        if (cqlStatement == null)
+            return null;
+        final QueryOptions queryOptions = QueryOptions.forInternalCalls(ConsistencyLevel.ONE, docPk.serialize(cqlStatement));
+        
+        final DocumentMapper docMapper = searchContext.mapperService().documentMapper(fieldVisitor.uid().type());
+        final SourceCache sourceCache = sourceCache(searchContext, fieldVisitor, docPk, docMapper);
+        if (sourceCache != null) {
+            final String type = fieldVisitor.uid().type();
+            final ByteBuffer partitionKey = clusterService.partitionKey(indexService, type, docPk);
+            final String cacheId = ClusterService.stringify(docPk.values, docPk.values.length);
+            BytesReference source = sourceCache.get(type, partitionKey, cacheId, docMapper.getColumnDefinitions());
+            if (source != null) {
+                fieldVisitor.source(source);
+                return null;
+            }
+            // the _source is rendered and cached by the read.
+            final long generation = sourceCache.generation(type, partitionKey);
+            return () -> {
+                ResultMessage result = cqlStatement.statement.executeInternal(new QueryState(ClientState.forInternalCalls()), queryOptions);
+                if (result instanceof ResultMessage.Rows) {
+                    UntypedResultSet rs = UntypedResultSet.create(((ResultMessage.Rows)result).result);
+                    if (!rs.isEmpty()) {
+                        BytesReference rendered = clusterService.source(indexService, docMapper, rs.one(), fieldVisitor.uid());
+                        fieldVisitor.source(rendered);
+                        sourceCache.put(type, partitionKey, cacheId, docMapper.getColumnDefinitions(), rendered, generation);
+                    }
+                }
+                return null;
+            };
+        }
+        return () -> cqlStatement.statement.executeInternal(new QueryState(ClientState.forInternalCalls()), queryOptions);
+    }
+    
+    /**
+     * @return the source cache of the shard when only the complete _source of a non-static document is requested, null otherwise.
+     */
+    private SourceCache sourceCache(SearchContext searchContext, FieldsVisitor fieldVisitor, DocPrimaryKey docPk, DocumentMapper docMapper) {
+        SourceCache sourceCache = (searchContext.indexShard() == null) ? null : searchContext.indexShard().sourceCache();
+        if (sourceCache == null || docPk.isStaticDocument || !fieldVisitor.loadSource() ||
+            (fieldVisitor.requestedFields() != null && !fieldVisitor.requestedFields().isEmpty()))
+            return null;
+        FetchSourceContext fetchSourceContext = searchContext.fetchSourceContext();
+        if (fetchSourceContext != null && (fetchSourceContext.includes().length > 0 || fetchSourceContext.excludes().length > 0))
+            return null;
+        if (docMapper.sourceMapper().includes().length > 0 || docMapper.sourceMapper().excludes().length > 0)
+            return null;
+        return sourceCache;
+    }
+    
+    private void processCassandraResult(SearchContext searchContext, IndexService indexService, FieldsVisitor fieldVisitor, ResultMessage result) throws IOException {
+        if (result == null) {
+            // when only requesting for field _node
+            if (searchContext.includeNode()) {
+                List<Object> values = new ArrayList<Object>(1);
+                values.add(clusterService.state().nodes().getLocalNodeId());
+                fieldVisitor.setValues(NodeFieldMapper.NAME, values);
+            }
+        } else if (result instanceof ResultMessage.Rows) {
+            processCqlResultSet(searchContext, indexService, fieldVisitor, ((ResultMessage.Rows)result).result);
+        }
+    }
+    
+    private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId, FetchTimes times) {
         fieldVisitor.reset();
+        long start = System.nanoTime();
         try {
             readerContext.reader().document(docId, fieldVisitor);
         } catch (IOException e) {
             throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + docId + "]", e);
         }
+        times.luceneNanos += System.nanoTime() - start;
         
         // load field from cassandra
+        start = System.nanoTime();
         IndexService indexService = searchContext.indexShard().indexService();
         try {
-            DocPrimaryKey docPk = clusterService.parseElasticId(indexService, fieldVisitor.uid().type(), fieldVisitor.uid().id());
-            String typeKey = fieldVisitor.uid().type();
-            if (docPk.isStaticDocument) 
-                typeKey += "_static";
-            
-            ParsedStatement.Prepared cqlStatement = getCqlPreparedStatement(searchContext, indexService, fieldVisitor, typeKey, docPk.isStaticDocument);
-            if (cqlStatement != null) {
-                ResultMessage result = cqlStatement.statement.executeInternal(new QueryState(ClientState.forInternalCalls()), QueryOptions.forInternalCalls(ConsistencyLevel.ONE, docPk.serialize(cqlStatement)));
-                if (result instanceof ResultMessage.Rows) {
-                    processCqlResultSet(searchContext, indexService, fieldVisitor, ((ResultMessage.Rows)result).result);
-                }
-            } else {
-                // when only requesting for field _node
-                if (searchContext.includeNode()) {
-                    List<Object> values = new ArrayList<Object>(1);
-                    values.add(clusterService.state().nodes().getLocalNodeId());
-                    fieldVisitor.setValues(NodeFieldMapper.NAME, values);
-                }
-            }
+            Callable<ResultMessage> read = cassandraRead(searchContext, indexService, fieldVisitor);
+            if (read != null)
+                times.reads++;
+            processCassandraResult(searchContext, indexService, fieldVisitor, (read == null) ? null : read.call());
         } catch (Exception e) {
             Loggers.getLogger(FetchPhase.class).error("Fetch failed id=" + fieldVisitor.uid().id(), e);
             throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + fieldVisitor.uid().id() + "] from cassandra", e);
+        } finally {
+            times.cassandraNanos += System.nanoTime() - start;
+        }
+    }
+    
+    /**
+     * Load the stored fields of all hits. Cassandra rows are read in parallel on the READ stage by windows of 
+     * {@link #MAX_CONCURRENT_READS} hits, and processed in the hit order, or rendered by concurrent chunks of hits
+     * when index.fetch_concurrency is greater than 1.
+     * @return the loaded fields visitors, in the hit order.
+     */
+    private FieldsVisitor[] loadStoredFields(SearchContext searchContext, Supplier<FieldsVisitor> fieldsVisitorSupplier, FetchTimes times) {
+        final int size = searchContext.docIdsToLoadSize();
+        final List<LeafReaderContext> leaves = searchContext.searcher().getIndexReader().leaves();
+        final IndexService indexService = searchContext.indexShard().indexService();
+        final int concurrency = indexService.getIndexSettings().getValue(IndexMetaData.INDEX_FETCH_CONCURRENCY_SETTING);
+        final FieldsVisitor[] fieldsVisitors = new FieldsVisitor[size];
+        final List<Future<ResultMessage>> reads = new ArrayList<>(Math.min(size, MAX_CONCURRENT_READS));
+        
+        for (int from = 0; from < size; from += MAX_CONCURRENT_READS) {
+            if (searchContext.isCancelled()) {
+                throw new TaskCancelledException("cancelled");
+            }
+            final int to = Math.min(size, from + MAX_CONCURRENT_READS);
+            reads.clear();
+            try {
+                for (int index = from; index < to; index++) {
+                    int docId = searchContext.docIdsToLoad()[searchContext.docIdsToLoadFrom() + index];
+                    LeafReaderContext readerContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                    FieldsVisitor fieldVisitor = fieldsVisitorSupplier.get();
+                    fieldsVisitors[index] = fieldVisitor;
+                    long start = System.nanoTime();
+                    try {
+                        readerContext.reader().document(docId - readerContext.docBase, fieldVisitor);
+                    } catch (IOException e) {
+                        throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + docId + "]", e);
+                    }
+                    times.luceneNanos += System.nanoTime() - start;
+                    
+                    Callable<ResultMessage> read;
+                    try {
+                        read = cassandraRead(searchContext, indexService, fieldVisitor);
+                    } catch (IOException e) {
+                        throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + fieldVisitor.uid().id() + "] from cassandra", e);
+                    }
+                    if (read != null)
+                        times.reads++;
+                    reads.add(read == null ? null : StageManager.getStage(Stage.READ).submit(read));
+                }
+                
+                long start = System.nanoTime();
+                final ResultMessage[] results = new ResultMessage[to - from];
+                for (int index = from; index < to; index++) {
+                    Future<ResultMessage> read = reads.get(index - from);
+                    FieldsVisitor fieldVisitor = fieldsVisitors[index];
+                    try {
+                        if (concurrency > 1)
+                            results[index - from] = (read == null) ? null : read.get();
+                        else
+                            processCassandraResult(searchContext, indexService, fieldVisitor, (read == null) ? null : read.get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new FetchPhaseExecutionException(searchContext, "Interrupted while fetching doc id [" + fieldVisitor.uid().id() + "] from cassandra", e);
+                    } catch (ExecutionException | IOException e) {
+                        Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+                        Loggers.getLogger(FetchPhase.class).error("Fetch failed id=" + fieldVisitor.uid().id(), cause);
+                        throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + fieldVisitor.uid().id() + "] from cassandra", cause);
+                    }
+                }
+                if (concurrency > 1) {
+                    accountSourceBytes(searchContext, results);
+                    renderChunks(searchContext, indexService, fieldsVisitors, results, from, to, concurrency);
+                }
+                times.cassandraNanos += System.nanoTime() - start;
+            } finally {
+                // cancel pending reads on failure
+                for (Future<ResultMessage> read : reads)
+                    if (read != null)
+                        read.cancel(false);
+            }
+        }
+        return fieldsVisitors;
+    }
+    
+    /**
+     * Account the size of the cassandra rows about to be rendered concurrently on the request circuit breaker, as an estimate
+     * of the rendered _source. Bytes are released at the end of the fetch phase, once the hits have been returned.
+     */
+    private void accountSourceBytes(SearchContext searchContext, ResultMessage[] results) {
+        if (searchContext.bigArrays().breakerService() == null)
+            return;
+        long bytes = 0;
+        for (ResultMessage result : results) {
+            if (result instanceof ResultMessage.Rows) {
+                for (List<ByteBuffer> row : ((ResultMessage.Rows)result).result.rows)
+                    for (ByteBuffer value : row)
+                        if (value != null)
+                            bytes += value.remaining();
+            }
+        }
+        if (bytes > 0) {
+            final CircuitBreaker breaker = searchContext.bigArrays().breakerService().getBreaker(CircuitBreaker.REQUEST);
+            breaker.addEstimateBytesAndMaybeBreak(bytes, "<fetch_source>");
+            final long accountedBytes = bytes;
+            searchContext.addReleasable(() -> breaker.addWithoutBreaking(-accountedBytes), SearchContext.Lifetime.PHASE);
+        }
+    }
+    
+    /**
+     * Render the rows of hits [from, to[ read in parallel, by concurrent chunks on the READ stage, stopping at the first cancelled hit.
+     * Fetch sub-phases still run in the hit order on the search thread, because they share the {@link SearchContext} lookup.
+     */
+    private void renderChunks(SearchContext searchContext, IndexService indexService, FieldsVisitor[] fieldsVisitors, ResultMessage[] results, 
+            int from, int to, int concurrency) {
+        final int chunkSize = (to - from + concurrency - 1) / concurrency;
+        final List<Future<?>> chunks = new ArrayList<>(concurrency);
+        try {
+            for (int chunkFrom = from; chunkFrom < to; chunkFrom += chunkSize) {
+                final int first = chunkFrom;
+                final int last = Math.min(to, chunkFrom + chunkSize);
+                chunks.add(StageManager.getStage(Stage.READ).submit(() -> {
+                    for (int index = first; index < last; index++) {
+                        if (searchContext.isCancelled())
+                            throw new TaskCancelledException("cancelled");
+                        processCassandraResult(searchContext, indexService, fieldsVisitors[index], results[index - from]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> chunk : chunks)
+                chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchPhaseExecutionException(searchContext, "Interrupted while fetching docs from cassandra", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TaskCancelledException)
+                throw (TaskCancelledException) e.getCause();
+            Loggers.getLogger(FetchPhase.class).error("Fetch failed", e.getCause());
+            throw new FetchPhaseExecutionException(searchContext, "Failed to fetch docs from cassandra", e.getCause());
+        } finally {
+            // cancel pending chunks on failure
+            for (Future<?> chunk : chunks)
+                chunk.cancel(false);
         }
     }
 }
@@ -80,6 +80,7 @@ public class ThreadPool extends AbstractComponent implements Closeable {
         public static final String FORCE_MERGE = "force_merge";
         public static final String FETCH_SHARD_STARTED = "fetch_shard_started";
         public static final String FETCH_SHARD_STORE = "fetch_shard_store";
+        public static final String SECONDARY_INDEX = "secondary_index";
     }
 
     public enum ThreadPoolType {
@@ -135,6 +136,7 @@ public class ThreadPool extends AbstractComponent implements Closeable {
         map.put(Names.FORCE_MERGE, ThreadPoolType.FIXED);
         map.put(Names.FETCH_SHARD_STARTED, ThreadPoolType.SCALING);
         map.put(Names.FETCH_SHARD_STORE, ThreadPoolType.SCALING);
+        map.put(Names.SECONDARY_INDEX, ThreadPoolType.FIXED);
         THREAD_POOL_TYPES = Collections.unmodifiableMap(map);
     }
 
@@ -183,6 +185,8 @@ public class ThreadPool extends AbstractComponent implements Closeable {
         builders.put(Names.FETCH_SHARD_STARTED, new ScalingExecutorBuilder(Names.FETCH_SHARD_STARTED, 1, 2 * availableProcessors, TimeValue.timeValueMinutes(5)));
         builders.put(Names.FORCE_MERGE, new FixedExecutorBuilder(settings, Names.FORCE_MERGE, 1, -1));
         builders.put(Names.FETCH_SHARD_STORE, new ScalingExecutorBuilder(Names.FETCH_SHARD_STORE, 1, 2 * availableProcessors, TimeValue.timeValueMinutes(5)));
+        // elassandra asynchronous indexing, queues are bounded per shard by index.asynchronous_indexing_queue_size
+        builders.put(Names.SECONDARY_INDEX, new FixedExecutorBuilder(settings, Names.SECONDARY_INDEX, availableProcessors, -1));
         for (final ExecutorBuilder<?> builder : customBuilders) {
             if (builders.containsKey(builder.name())) {
                 throw new IllegalArgumentException("builder with name [" + builder.name() + "] already exists");
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.SecondaryIndexStats;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra asynchronous indexing tests.
+ */
+public class AsynchronousIndexingTests extends ESSingleNodeTestCase {
+    static long N = 1000;
+
+    @Test
+    public void asynchronousIndexingTest() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int, b text, primary key (a) )");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("test", Settings.builder()
+                .put("index.asynchronous_indexing", true)
+                .put("index.asynchronous_indexing_queue_size", 100)
+                .put("index.asynchronous_indexing_batch_size", 16)
+                .build(), "t1", mapping);
+        ensureGreen("test");
+
+        for(int i=0 ; i < N; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+        for(int i=0 ; i < 10; i++)
+            process(ConsistencyLevel.ONE,"delete from test.t1 where a = ?", i);
+
+        // cassandra flush drains the indexing queue before flushing lucene.
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+        client().admin().indices().prepareRefresh("test").get();
+
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(N - 10));
+
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getPending(), equalTo(0L));
+        assertThat(stats.getTotal() + stats.getRejected(), greaterThanOrEqualTo(N));
+    }
+}
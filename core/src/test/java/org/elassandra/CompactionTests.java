@@ -23,6 +23,7 @@ import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.SecondaryIndexStats;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -31,6 +32,7 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Map;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
@@ -174,6 +176,31 @@ public class CompactionTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("test").setTypes("t2").setQuery(QueryBuilders.queryStringQuery("b:y")).get().getHits().getTotalHits(), equalTo(2000L));
     }
     
+    @Test
+    public void overwriteCompactionTest() throws Exception {
+        createIndex("test", Settings.builder().put(IndexMetaData.SETTING_INDEX_ON_COMPACTION, true).build());
+        ensureGreen("test");
+        
+        long N = 10;
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\", \"_meta\": { \"index_on_compaction\":true } }}").get());
+        
+        for(int j=0 ; j < N; j++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", j, "x");
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+        for(int j=0 ; j < N; j++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", j, "y");
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+        
+        // overwritten cells removed by the compaction do not reindex documents.
+        StorageService.instance.forceKeyspaceCompaction(true, "test");
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getCompactionSkippedRows(), equalTo(N));
+        assertThat(stats.getCompactionDocuments(), equalTo(0L));
+        assertThat(stats.getCompactionTables(), equalTo(Collections.singleton("test.t1")));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("b:y")).get().getHits().getTotalHits(), equalTo(N));
+    }
+    
     @Test
     public void expiredTtlCompactionTest() throws Exception {
         createIndex("test", Settings.builder().put(IndexMetaData.SETTING_INDEX_ON_COMPACTION, true).build());
@@ -247,6 +274,9 @@ public class CompactionTests extends ESSingleNodeTestCase {
         System.out.println("t1.count = "+rs.size());
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(2*N));
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("b:y")).get().getHits().getTotalHits(), equalTo(0L));
+        // only expired rows were deleted by the compaction.
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getCompactionDocuments(), equalTo(N));
     }
     
     // gradle :core:test -Dtests.seed=C2C04213660E4546 -Dtests.class=org.elassandra.CompositeTests -Dtests.method="testReadBeforeWrite" -Dtests.security.manager=false -Dtests.locale=zh-TW -Dtests.timezone=Pacific/Pitcairn
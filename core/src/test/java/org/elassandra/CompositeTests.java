@@ -15,21 +15,43 @@
  */
 package org.elassandra;
 
+import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.SecondaryIndexStats;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 /**
  * Elassandra composite key tests.
@@ -424,7 +446,646 @@ curl -XGET "http://$NODE:9200/test/timeseries/_search?pretty=true&q=meta.region:
         assertThat( rsp.getHits().getTotalHits(), equalTo(2L));
     }
     
+    @Test
+    public void testRangeTombstones() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a text, b bigint, c uuid, d double, primary key ((a),b,c,d) ) WITH CLUSTERING ORDER BY (b DESC, c ASC, d ASC)");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.index_static_document",true).build()).addMapping("t1", mapping).get());
+        
+        for(long i=1; i <= 6; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (a, b, c, d) VALUES ('x', ?, uuid(), ?)", i, i * 1.5);
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (a, b, c, d) VALUES ('y', 3, uuid(), 4.5)");
+        
+        // bigint range on a reversed clustering column.
+        process(ConsistencyLevel.ONE,"DELETE FROM test.t1 WHERE a = 'x' AND b > 1 AND b <= 3");
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("a", "x")).get().getHits().getTotalHits(), equalTo(4L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("a", "y")).get().getHits().getTotalHits(), equalTo(1L));
+        
+        // uuid range, checked against the slice.
+        process(ConsistencyLevel.ONE,"DELETE FROM test.t1 WHERE a = 'x' AND b = 4 AND c > ?", java.util.UUID.fromString("00000000-0000-0000-0000-000000000000"));
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("a", "x")).get().getHits().getTotalHits(), equalTo(3L));
+        
+        // double range on the last clustering column.
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("b", 5)).get();
+        String c = (String) rsp.getHits().getHits()[0].getSource().get("c");
+        process(ConsistencyLevel.ONE,"DELETE FROM test.t1 WHERE a = 'x' AND b = 5 AND c = ? AND d >= 7.5", java.util.UUID.fromString(c));
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("a", "x")).get().getHits().getTotalHits(), equalTo(2L));
+    }
     
+    @Test
+    public void testBufferedPartitionDeletes() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.tombstone_buffer_size",16).build()).addMapping("t1", mapping).get());
+        
+        for(int i=0; i < 100; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, 1, 1)", "p"+i);
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, 2, 1)", "p"+i);
+        }
+        for(int i=0; i < 50; i++)
+            process(ConsistencyLevel.ONE,"DELETE FROM test.t1 WHERE partition = ?", "p"+i);
+        // a document indexed after a buffered partition delete is kept.
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, 3, 1)", "p49");
+        
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(101L));
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getTombstonesPending(), equalTo(0L));
+        assertThat(stats.getTombstonesTotal(), equalTo(50L));
+        assertThat(stats.getTombstoneBatches(), lessThan(50L));
+    }
     
+    @Test
+    public void testReadBeforeWriteWithRowCache() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, data text, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.row_cache_size","1mb").build()).addMapping("t1", mapping).get());
+        
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status, data) VALUES ('one', 1, 4, 'foo');");
+        
+        // first partial update reads the row and loads the cache, next ones are completed from the cache.
+        for(int i=5; i < 10; i++)
+            process(ConsistencyLevel.ONE,"UPDATE test.t1 SET status = ? WHERE partition = ?  AND clustering = ?", i, "one", 1);
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("status:9 AND data:foo")).get();
+        assertThat( rsp.getHits().getTotalHits(), equalTo(1L));
+        
+        process(ConsistencyLevel.ONE,"DELETE data FROM test.t1 WHERE partition = ?  AND clustering = ?", "one", 1);
+        process(ConsistencyLevel.ONE,"UPDATE test.t1 SET status = ? WHERE partition = ?  AND clustering = ?", 10, "one", 1);
+        rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("data:foo")).get();
+        assertThat( rsp.getHits().getTotalHits(), equalTo(0L));
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getRowCacheMisses(), equalTo(1L));
+        assertThat(stats.getRowCacheHits(), greaterThanOrEqualTo(4L));
+    }
+    
+    @Test
+    public void testBatchedFetch() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping).get());
+        
+        for(int i=0; i < 100; i++)
+            for(int j=0; j < 3; j++)
+                process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, ?, ?)", "p"+i, j, i * 3 + j);
+        
+        // more hits than concurrent reads, returned in the sort order with their cassandra row.
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .addSort("status", org.elasticsearch.search.sort.SortOrder.ASC).setSize(300).get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(300L));
+        for(int k=0; k < 300; k++) {
+            Map<String, Object> source = rsp.getHits().getHits()[k].getSource();
+            assertThat(source.get("status"), equalTo(k));
+            assertThat(source.get("partition"), equalTo("p"+(k / 3)));
+            assertThat(source.get("clustering"), equalTo(k % 3));
+        }
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getFetchHits(), greaterThanOrEqualTo(300L));
+        assertThat(stats.getFetchReads(), greaterThanOrEqualTo(300L));
+    }
+    
+    @Test
+    public void testStoredSource() throws Exception {
+        // the lucene copy of the _source requires _source enabled.
+        XContentBuilder noSourceMapping = XContentFactory.jsonBuilder().startObject().startObject("t1").startObject("properties")
+                .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                .endObject().endObject().endObject();
+        expectThrows(IllegalArgumentException.class, () -> client().admin().indices().prepareCreate("test0")
+                .setSettings(Settings.builder().put("index.stored_source",true).build()).addMapping("t1", noSourceMapping).get());
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1")
+                .startObject("_source").field("enabled", true).endObject()
+                .startObject("properties")
+                .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                .startObject("status").field("type", "integer").field("cql_collection", "singleton").endObject()
+                .endObject().endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.stored_source",true).build()).addMapping("t1", mapping).get());
+        ensureGreen("test");
+        
+        for(int i=0; i < 10; i++)
+            client().prepareIndex("test", "t1", Integer.toString(i)).setSource("{\"name\":\"n"+i+"\", \"status\":"+i+"}", XContentType.JSON).get();
+        // row inserted without _source, read from cassandra.
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (\"_id\", name, status) VALUES ('10', 'n10', 10)");
+        client().admin().indices().prepareRefresh("test").get();
+        
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .addSort("status", org.elasticsearch.search.sort.SortOrder.ASC).setSize(20).get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(11L));
+        for(int k=0; k < 11; k++) {
+            Map<String, Object> source = rsp.getHits().getHits()[k].getSource();
+            assertThat(source.get("name"), equalTo("n"+k));
+            assertThat(source.get("status"), equalTo(k));
+        }
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getFetchHits(), equalTo(11L));
+        assertThat(stats.getFetchReads(), equalTo(1L));
+        
+        // partial update through CQL, the lucene copy follows the _source column.
+        process(ConsistencyLevel.ONE,"UPDATE test.t1 SET status = 20 WHERE \"_id\" = '1'");
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("status", 20)).get().getHits().getHits()[0].getSource().get("name"), equalTo("n1"));
+        
+        assertThat(client().prepareGet("test", "t1", "2").setRealtime(false).get().getSource().get("name"), equalTo("n2"));
+        assertThat(client().prepareGet("test", "t1", "10").setRealtime(false).get().getSource().get("name"), equalTo("n10"));
+        assertThat(client().prepareGet("test", "t1", "2").get().getSource().get("name"), equalTo("n2"));
+    }
+    
+    @Test
+    public void testPartitionGroupedMultiGet() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a text, b int, c int, d int, primary key ((a),b,c) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping).get());
+        
+        for(int i=0; i < 3; i++)
+            for(int j=0; j < 3; j++)
+                process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (a, b, c, d) VALUES (?, ?, ?, ?)", "p"+i, j, j * 10, i * 3 + j);
+        
+        // rows of the same partition read together, results returned in the request order.
+        MultiGetResponse rsp = client().prepareMultiGet()
+                .add("test", "t1", "[\"p1\",2,20]", "[\"p0\",0,0]", "[\"p1\",0,0]", "[\"p1\",2,20]", "[\"p1\",1,0]", "[\"p2\",1,10]", "[\"p9\",0,0]")
+                .get();
+        MultiGetItemResponse[] items = rsp.getResponses();
+        assertThat(items.length, equalTo(7));
+        int[] expected = new int[] { 5, 0, 3, 5, -1, 7, -1 };
+        for(int k=0; k < items.length; k++) {
+            assertThat(items[k].getFailure(), nullValue());
+            assertThat(items[k].getResponse().isExists(), equalTo(expected[k] >= 0));
+            if (expected[k] >= 0)
+                assertThat(items[k].getResponse().getSource().get("d"), equalTo(expected[k]));
+        }
+        assertThat(items[0].getId(), equalTo("[\"p1\",2,20]"));
+        assertThat(items[6].getId(), equalTo("[\"p9\",0,0]"));
+    }
+    
+    @Test
+    public void testSourceColumnsProjection() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TYPE IF NOT EXISTS test.meta (region text, zone text)");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a text, b int, c blob, m frozen<meta>, primary key (a) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        IndexService indexService = createIndex("test", Settings.EMPTY, "t1", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("t1");
+        
+        assertThat(sourceColumns(docMapper, null, null), equalTo(new TreeSet<>(Arrays.asList("a", "b", "c", "m"))));
+        assertThat(sourceColumns(docMapper, new String[] { "b" }, null), equalTo(new TreeSet<>(Arrays.asList("b"))));
+        assertThat(sourceColumns(docMapper, new String[] { "m.region", "a*" }, null), equalTo(new TreeSet<>(Arrays.asList("a", "m"))));
+        assertThat(sourceColumns(docMapper, new String[] { "*.region" }, null), equalTo(new TreeSet<>(Arrays.asList("a", "b", "c", "m"))));
+        assertThat(sourceColumns(docMapper, null, new String[] { "c", "m.zone" }), equalTo(new TreeSet<>(Arrays.asList("a", "b", "m"))));
+        // an empty projection reads the partition key to return an empty _source.
+        assertThat(sourceColumns(docMapper, new String[] { "missing" }, null), equalTo(new TreeSet<>(Arrays.asList("a"))));
+        assertThat(sourceColumns(docMapper, null, new String[] { "*" }), equalTo(new TreeSet<>(Arrays.asList("a"))));
+        
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (a, b, c, m) VALUES ('1', 2, 0xCAFE, {region:'west', zone:'z1'})");
+        client().admin().indices().prepareRefresh("test").get();
+        
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(new String[] { "b", "m.region" }, null).get();
+        Map<String, Object> source = rsp.getHits().getHits()[0].getSource();
+        assertThat(source.keySet(), equalTo(new TreeSet<>(Arrays.asList("b", "m"))));
+        assertThat(((Map<String, Object>)source.get("m")).get("region"), equalTo("west"));
+        
+        source = client().prepareGet("test", "t1", "1").setFetchSource(null, new String[] { "c" }).get().getSource();
+        assertThat(source.keySet(), equalTo(new TreeSet<>(Arrays.asList("a", "b", "m"))));
+        
+        source = client().prepareGet("test", "t1", "1").setStoredFields("b").setFetchSource(new String[] { "a" }, null).get().getSource();
+        assertThat(source.keySet(), equalTo(new TreeSet<>(Arrays.asList("a"))));
+        
+        // includes matching no column or excludes matching all columns return an empty _source.
+        rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(new String[] { "missing" }, null).get();
+        assertThat(rsp.getHits().getHits()[0].getSource().isEmpty(), equalTo(true));
+        rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(null, new String[] { "*" }).get();
+        assertThat(rsp.getHits().getHits()[0].getSource().isEmpty(), equalTo(true));
+        assertThat(client().prepareGet("test", "t1", "1").setFetchSource(new String[] { "missing" }, null).get().getSource().isEmpty(), equalTo(true));
+        assertThat(client().prepareGet("test", "t1", "1").setFetchSource(null, new String[] { "*" }).get().getSource().isEmpty(), equalTo(true));
+    }
+    
+    @Test
+    public void testLocalReads() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping).get());
+        
+        for(int j=0; j < 3; j++)
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, ?, ?)", "p1", j, j);
+        
+        // the single node is a replica of all partitions, rows are read from the local tables.
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().getSource().get("status"), equalTo(1));
+        assertThat(client().prepareGet("test", "t1", "[\"p2\",1]").get().isExists(), equalTo(false));
+        assertThat(client().prepareMultiGet().add("test", "t1", "[\"p1\",0]", "[\"p1\",2]").get().getResponses()[1].getResponse().getSource().get("status"), equalTo(2));
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getLocalReads(), equalTo(3L));
+        assertThat(stats.getRemoteReads(), equalTo(0L));
+    }
+    
+    @Test
+    public void testDocValueOnlyHits() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping).get());
+        
+        for(int j=0; j < 10; j++)
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, ?, ?)", "p1", j, j);
+        
+        // ids and docvalues only, hits are built from lucene.
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(false).addDocValueField("status").addDocValueField("_token")
+                .addSort("status", org.elasticsearch.search.sort.SortOrder.ASC).setSize(10).get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(10L));
+        for(int k=0; k < 10; k++) {
+            assertThat(rsp.getHits().getHits()[k].getId(), equalTo("[\"p1\","+k+"]"));
+            assertThat(rsp.getHits().getHits()[k].field("status").getValue(), equalTo(Long.valueOf(k)));
+            assertThat(rsp.getHits().getHits()[k].field("_token"), notNullValue());
+        }
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getFetchHits(), equalTo(10L));
+        assertThat(stats.getFetchReads(), equalTo(0L));
+    }
+    
+    @Test
+    public void testSourceCache() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.source_cache_size","1mb").build()).addMapping("t1", mapping).get());
+        
+        for(int j=0; j < 2; j++)
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, ?, ?)", "p1", j, j);
+        
+        // first GET loads the cache, the next one and the search hit are served from it.
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().getSource().get("status"), equalTo(1));
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().getSource().get("status"), equalTo(1));
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("status", 1)).get();
+        assertThat(rsp.getHits().getHits()[0].getSource().get("status"), equalTo(1));
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getSourceCacheMisses(), equalTo(1L));
+        assertThat(stats.getSourceCacheHits(), equalTo(2L));
+        assertThat(stats.getFetchReads(), equalTo(0L));
+        
+        // an update of the partition invalidates the cached documents.
+        process(ConsistencyLevel.ONE,"UPDATE test.t1 SET status = ? WHERE partition = ? AND clustering = ?", 10, "p1", 0);
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().getSource().get("status"), equalTo(1));
+        process(ConsistencyLevel.ONE,"UPDATE test.t1 SET status = ? WHERE partition = ? AND clustering = ?", 20, "p1", 1);
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().getSource().get("status"), equalTo(20));
+        
+        stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getSourceCacheMisses(), equalTo(3L));
+        assertThat(stats.getSourceCacheCount(), equalTo(1L));
+        
+        // a delete of a cached document is visible to the next GET.
+        process(ConsistencyLevel.ONE,"DELETE FROM test.t1 WHERE partition = ? AND clustering = ?", "p1", 1);
+        assertThat(client().prepareGet("test", "t1", "[\"p1\",1]").get().isExists(), equalTo(false));
+        
+        // static documents are never cached.
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t2 ( partition text, clustering int , s text static, status int, primary key ((partition),clustering) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t2")
+                .setSource("{ \"t2\" : { \"discover\" : \".*\", \"_meta\": { \"index_static_document\":true } }}", XContentType.JSON).get());
+        process(ConsistencyLevel.ONE,"INSERT INTO test.t2 (partition, clustering, s, status) VALUES (?, ?, ?, ?)", "p1", 0, "a", 0);
+        stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        long misses = stats.getSourceCacheMisses();
+        long hits = stats.getSourceCacheHits();
+        assertThat(client().prepareGet("test", "t2", "p1").get().getSource().get("s"), equalTo("a"));
+        process(ConsistencyLevel.ONE,"UPDATE test.t2 SET s = ? WHERE partition = ?", "b", "p1");
+        assertThat(client().prepareGet("test", "t2", "p1").get().getSource().get("s"), equalTo("b"));
+        stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getSourceCacheMisses(), equalTo(misses));
+        assertThat(stats.getSourceCacheHits(), equalTo(hits));
+        assertThat(stats.getRemoteReads(), equalTo(0L));
+    }
+
+    @Test
+    public void testConcurrentFetch() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.fetch_concurrency",4).build()).addMapping("t1", mapping).get());
+
+        for(int i=0; i < 50; i++)
+            for(int j=0; j < 3; j++)
+                process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, ?, ?)", "p"+i, j, i * 3 + j);
 
+        // hits rendered by concurrent chunks are returned in the sort order, with and without _source.
+        for(int concurrency : new int[] { 4, 1 }) {
+            assertAcked(client().admin().indices().prepareUpdateSettings("test").setSettings(Settings.builder().put("index.fetch_concurrency", concurrency).build()).get());
+            SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                    .addSort("status", org.elasticsearch.search.sort.SortOrder.ASC).setSize(150).get();
+            assertThat(rsp.getHits().getTotalHits(), equalTo(150L));
+            for(int k=0; k < 150; k++) {
+                Map<String, Object> source = rsp.getHits().getHits()[k].getSource();
+                assertThat(source.get("status"), equalTo(k));
+                assertThat(source.get("partition"), equalTo("p"+(k / 3)));
+            }
+
+            rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).setFetchSource(false).storedFields("status")
+                    .addSort("status", org.elasticsearch.search.sort.SortOrder.ASC).setSize(150).get();
+            for(int k=0; k < 150; k++)
+                assertThat(rsp.getHits().getHits()[k].field("status").getValue(), equalTo(k));
+        }
+    }
+
+    @Test
+    public void testPartitionGroupedBulk() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, name text, primary key ((partition),clustering) )");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(Settings.builder().put("index.bulk_concurrent_writes",4).build()).addMapping("t1", mapping).get());
+        ensureGreen("test");
+
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for(int i=0; i < 10; i++)
+            for(int j=0; j < 3; j++)
+                bulk.add(client().prepareIndex("test", "t1", "[\"p"+i+"\","+j+"]").setSource("{\"status\":"+(i * 3 + j)+", \"name\":\"n"+j+"\"}", XContentType.JSON));
+        // successive items of a document apply in the bulk order, the last index overwrites the name.
+        bulk.add(client().prepareIndex("test", "t1", "[\"p0\",0]").setSource("{\"status\":100}", XContentType.JSON));
+        bulk.add(client().prepareDelete("test", "t1", "[\"p1\",0]"));
+        bulk.add(client().prepareIndex("test", "t1", "[\"p1\",0]").setSource("{\"status\":101}", XContentType.JSON));
+        BulkResponse response = bulk.get();
+        assertThat(response.hasFailures(), equalTo(false));
+
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM test.t1").size(), equalTo(30));
+        UntypedResultSet.Row row = process(ConsistencyLevel.ONE,"SELECT status, name FROM test.t1 WHERE partition = ? AND clustering = ?", "p0", 0).one();
+        assertThat(row.getInt("status"), equalTo(100));
+        assertThat(row.has("name"), equalTo(false));
+        assertThat(process(ConsistencyLevel.ONE,"SELECT status FROM test.t1 WHERE partition = ? AND clustering = ?", "p1", 0).one().getInt("status"), equalTo(101));
+        assertThat(process(ConsistencyLevel.ONE,"SELECT status FROM test.t1 WHERE partition = ? AND clustering = ?", "p9", 2).one().getInt("status"), equalTo(29));
+
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(30L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("status", 101)).get().getHits().getTotalHits(), equalTo(1L));
+    }
+
+    @Test
+    public void testDirectMutation() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int, status int, name text, tags list<text>, labels set<text>, s1 text static, primary key ((partition),clustering) )");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping).get());
+        ensureGreen("test");
+
+        client().prepareIndex("test", "t1", "[\"p1\",1]").setSource("{\"status\":1, \"name\":\"n1\", \"tags\":[\"a\",\"b\",\"a\"], \"labels\":[\"x\",\"y\"], \"s1\":\"static\"}", XContentType.JSON).get();
+        UntypedResultSet.Row row = process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE partition = ? AND clustering = ?", "p1", 1).one();
+        assertThat(row.getInt("status"), equalTo(1));
+        assertThat(row.getString("name"), equalTo("n1"));
+        assertThat(row.getList("tags", org.apache.cassandra.db.marshal.UTF8Type.instance), equalTo(Arrays.asList("a","b","a")));
+        assertThat(row.getSet("labels", org.apache.cassandra.db.marshal.UTF8Type.instance), equalTo(new TreeSet<>(Arrays.asList("x","y"))));
+        assertThat(row.getString("s1"), equalTo("static"));
+
+        // re-indexing overwrites collections and nulls absent columns, like a CQL INSERT.
+        client().prepareIndex("test", "t1", "[\"p1\",1]").setSource("{\"status\":2, \"tags\":[\"c\"]}", XContentType.JSON).get();
+        row = process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE partition = ? AND clustering = ?", "p1", 1).one();
+        assertThat(row.getInt("status"), equalTo(2));
+        assertThat(row.has("name"), equalTo(false));
+        assertThat(row.has("labels"), equalTo(false));
+        assertThat(row.getList("tags", org.apache.cassandra.db.marshal.UTF8Type.instance), equalTo(Arrays.asList("c")));
+
+        client().admin().indices().prepareRefresh("test").get();
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("status", 2)).get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSinglePassIndexing() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TYPE IF NOT EXISTS test.meta (region text, zone text)");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a text, b int, m frozen<meta>, primary key (a) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        IndexService indexService = createIndex("test", Settings.EMPTY, "t1", mapping);
+        DocumentMapper docMapper = indexService.mapperService().documentMapper("t1");
+        
+        Map<String, Object> source = XContentHelper.convertToMap(XContentType.JSON.xContent(), "{\"b\":[1,2], \"m\":{\"region\":\"eu\"}, \"c\":null}", false);
+        assertThat(docMapper.isMapped(source), equalTo(true));
+        source.put("d", "x");
+        assertThat(docMapper.isMapped(source), equalTo(false));
+        source.remove("d");
+        ((Map<String, Object>)source.get("m")).put("city", "paris");
+        assertThat(docMapper.isMapped(source), equalTo(false));
+        
+        // a mapped document is written without a mapping update, an unmapped field still updates the mapping and the table.
+        client().prepareIndex("test", "t1", "1").setSource("{\"b\":1, \"m\":{\"region\":\"eu\"}}", XContentType.JSON).get();
+        client().prepareIndex("test", "t1", "2").setSource("{\"b\":2, \"d\":\"x\"}", XContentType.JSON).get();
+        assertThat(indexService.mapperService().documentMapper("t1").mappers().getMapper("d"), notNullValue());
+        assertThat(process(ConsistencyLevel.ONE,"SELECT d FROM test.t1 WHERE a = ?", "2").one().getString("d"), equalTo("x"));
+        
+        // invalid values of mapped fields fail the bulk item only.
+        BulkResponse response = client().prepareBulk()
+                .add(client().prepareIndex("test", "t1", "3").setSource("{\"b\":\"abc\"}", XContentType.JSON))
+                .add(client().prepareIndex("test", "t1", "4").setSource("{\"b\":4}", XContentType.JSON))
+                .get();
+        assertThat(response.getItems()[0].isFailed(), equalTo(true));
+        assertThat(response.getItems()[1].isFailed(), equalTo(false));
+        
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("m.region", "eu")).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").get().getHits().getTotalHits(), equalTo(3L));
+    }
+
+    @Test
+    public void testCreateWithoutPaxos() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a text, b int, c text, s1 text static, primary key ((a),b) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_CREATE_CONSISTENCY, "one").build())
+                .addMapping("t1", mapping).get());
+        ensureGreen("test");
+        
+        client().prepareIndex("test", "t1", "[\"p1\",1]").setSource("{\"c\":\"x\"}", XContentType.JSON).setCreate(true).get();
+        client().prepareIndex("test", "t1", "[\"p1\",2]").setSource("{\"c\":\"y\"}", XContentType.JSON).setCreate(true).get();
+        expectThrows(VersionConflictEngineException.class, 
+                () -> client().prepareIndex("test", "t1", "[\"p1\",1]").setSource("{\"c\":\"z\"}", XContentType.JSON).setCreate(true).get());
+        assertThat(process(ConsistencyLevel.ONE,"SELECT c FROM test.t1 WHERE a = ? AND b = ?", "p1", 1).one().getString("c"), equalTo("x"));
+        
+        // bulk create items are checked after the previous items are written.
+        BulkResponse response = client().prepareBulk()
+                .add(client().prepareIndex("test", "t1", "[\"p2\",1]").setSource("{\"c\":\"x\"}", XContentType.JSON).setCreate(true))
+                .add(client().prepareIndex("test", "t1", "[\"p2\",1]").setSource("{\"c\":\"y\"}", XContentType.JSON).setCreate(true))
+                .get();
+        assertThat(response.getItems()[0].isFailed(), equalTo(false));
+        assertThat(response.getItems()[1].isFailed(), equalTo(true));
+        
+        // consistency levels that cannot read the document are rejected.
+        expectThrows(IllegalArgumentException.class, () -> client().admin().indices().prepareUpdateSettings("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_CREATE_CONSISTENCY, "ANY").build()).get());
+        expectThrows(IllegalArgumentException.class, () -> client().admin().indices().prepareUpdateSettings("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_CREATE_CONSISTENCY, "EACH_QUORUM").build()).get());
+        
+        // back to PAXOS inserts
+        assertAcked(client().admin().indices().prepareUpdateSettings("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_CREATE_CONSISTENCY, "LOCAL_SERIAL").build()).get());
+        expectThrows(VersionConflictEngineException.class, 
+                () -> client().prepareIndex("test", "t1", "[\"p2\",1]").setSource("{\"c\":\"z\"}", XContentType.JSON).setCreate(true).get());
+        
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").get().getHits().getTotalHits(), equalTo(3L));
+    }
+
+    @Test
+    public void testUpdateWithoutRead() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("properties")
+                        .startObject("id").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject()
+                        .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                        .startObject("count").field("type", "integer").field("cql_collection", "singleton").endObject()
+                        .startObject("tags").field("type", "keyword").field("cql_collection", "list").endObject()
+                        .startObject("meta").field("type", "nested").field("cql_collection", "singleton").field("cql_struct", "map").field("include_in_parent", true)
+                            .startObject("properties")
+                                .startObject("region").field("type", "keyword").endObject()
+                                .startObject("zone").field("type", "keyword").endObject()
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_UPDATE_WITHOUT_READ, true).build())
+                .addMapping("t1", mapping));
+        ensureGreen("test");
+        
+        client().prepareIndex("test", "t1", "1").setSource("{\"name\":\"a\", \"count\":1, \"tags\":[\"x\"], \"meta\":{\"region\":\"eu\"}}", XContentType.JSON).get();
+        
+        // supplied fields are updated, others are kept, map entries are merged and lists overwritten.
+        client().prepareUpdate("test", "t1", "1").setDoc("{\"count\":2, \"tags\":[\"y\",\"z\"], \"meta\":{\"zone\":\"z1\"}}", XContentType.JSON).setDocAsUpsert(true).get();
+        UntypedResultSet.Row row = process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE id = ?", "1").one();
+        assertThat(row.getString("name"), equalTo("a"));
+        assertThat(row.getInt("count"), equalTo(2));
+        assertThat(row.getList("tags", org.apache.cassandra.db.marshal.UTF8Type.instance), equalTo(Arrays.asList("y","z")));
+        assertThat(row.getMap("meta", org.apache.cassandra.db.marshal.UTF8Type.instance, org.apache.cassandra.db.marshal.UTF8Type.instance).get("region"), equalTo("eu"));
+        assertThat(row.getMap("meta", org.apache.cassandra.db.marshal.UTF8Type.instance, org.apache.cassandra.db.marshal.UTF8Type.instance).get("zone"), equalTo("z1"));
+        
+        // null map entries are removed, and bulk updates are written the same way.
+        BulkResponse response = client().prepareBulk()
+                .add(client().prepareUpdate("test", "t1", "1").setDoc("{\"meta\":{\"region\":null}}", XContentType.JSON).setDocAsUpsert(true))
+                .add(client().prepareUpdate("test", "t1", "1").setDoc("{\"count\":3}", XContentType.JSON).setDocAsUpsert(true))
+                .get();
+        assertThat(response.hasFailures(), equalTo(false));
+        row = process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE id = ?", "1").one();
+        assertThat(row.getInt("count"), equalTo(3));
+        assertThat(row.getMap("meta", org.apache.cassandra.db.marshal.UTF8Type.instance, org.apache.cassandra.db.marshal.UTF8Type.instance).containsKey("region"), equalTo(false));
+        assertThat(row.getMap("meta", org.apache.cassandra.db.marshal.UTF8Type.instance, org.apache.cassandra.db.marshal.UTF8Type.instance).get("zone"), equalTo("z1"));
+        
+        // a null map removes all its entries.
+        client().prepareUpdate("test", "t1", "1").setDoc("{\"meta\":null}", XContentType.JSON).setDocAsUpsert(true).get();
+        row = process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE id = ?", "1").one();
+        assertThat(row.getInt("count"), equalTo(3));
+        assertThat(row.has("meta"), equalTo(false));
+        
+        // updates returning the updated source still read the document.
+        client().prepareUpdate("test", "t1", "1").setDoc("{\"name\":\"b\"}", XContentType.JSON).setFetchSource(true).get();
+        assertThat(process(ConsistencyLevel.ONE,"SELECT name FROM test.t1 WHERE id = ?", "1").one().getString("name"), equalTo("b"));
+        
+        // a missing document is only created by doc_as_upsert updates.
+        expectThrows(DocumentMissingException.class, 
+                () -> client().prepareUpdate("test", "t1", "2").setDoc("{\"count\":1}", XContentType.JSON).get());
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE id = ?", "2").isEmpty(), equalTo(true));
+        client().prepareUpdate("test", "t1", "2").setDoc("{\"count\":1}", XContentType.JSON).setDocAsUpsert(true).get();
+        assertThat(process(ConsistencyLevel.ONE,"SELECT count FROM test.t1 WHERE id = ?", "2").one().getInt("count"), equalTo(1));
+        
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("count", 3)).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("tags", "z")).get().getHits().getTotalHits(), equalTo(1L));
+        
+        // with _source enabled, the stored _source is merged with the update.
+        XContentBuilder mapping2 = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("_source").field("enabled", true).endObject()
+                    .startObject("properties")
+                        .startObject("id").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject()
+                        .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                        .startObject("count").field("type", "integer").field("cql_collection", "singleton").endObject()
+                    .endObject()
+                .endObject();
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t2").setSource(mapping2).get());
+        client().prepareIndex("test", "t2", "1").setSource("{\"name\":\"a\", \"count\":1}", XContentType.JSON).get();
+        client().prepareUpdate("test", "t2", "1").setDoc("{\"count\":2}", XContentType.JSON).setDocAsUpsert(true).get();
+        Map<String, Object> source = client().prepareGet("test", "t2", "1").get().getSourceAsMap();
+        assertThat(source.get("name"), equalTo("a"));
+        assertThat(source.get("count"), equalTo(2));
+        client().admin().indices().prepareRefresh("test").get();
+        SearchResponse resp = client().prepareSearch().setIndices("test").setTypes("t2").setQuery(QueryBuilders.termQuery("count", 2)).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        assertThat(resp.getHits().getHits()[0].getSourceAsMap().get("name"), equalTo("a"));
+    }
+
+    @Test
+    public void testCoalescedSynchronousRefresh() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( partition text, clustering int , status int, primary key ((partition),clustering) )");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_SYNCHRONOUS_REFRESH, true).put(IndexMetaData.SETTING_SYNCHRONOUS_REFRESH_WINDOW, "50ms").build())
+                .addMapping("t1", mapping).get());
+        ensureGreen("test");
+        
+        // each writer sees its own write without an explicit refresh, concurrent writers share refreshes.
+        final int writers = 8, writes = 10;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] threads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            final int writer = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < writes; i++) {
+                        String partition = "w" + writer + "-" + i;
+                        process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (partition, clustering, status) VALUES (?, 1, 1)", partition);
+                        assertThat(client().prepareSearch().setIndices("test").setTypes("t1")
+                                .setQuery(QueryBuilders.termQuery("partition", partition)).get().getHits().getTotalHits(), equalTo(1L));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError("concurrent writer failed", failure.get());
+        
+        SecondaryIndexStats stats = client().admin().indices().prepareStats("test").clear().setSecondaryIndex(true).get().getTotal().getSecondaryIndex();
+        assertThat(stats.getRefreshRequested(), equalTo((long) writers * writes));
+        assertThat(stats.getRefreshPerformed(), greaterThanOrEqualTo(1L));
+        assertThat(stats.getRefreshPerformed(), lessThan(stats.getRefreshRequested()));
+    }
+
+    private static Set<String> sourceColumns(DocumentMapper docMapper, String[] includes, String[] excludes) {
+        Set<String> columns = new TreeSet<>();
+        docMapper.sourceColumns(columns, includes, excludes);
+        return columns;
+    }
+    
 }
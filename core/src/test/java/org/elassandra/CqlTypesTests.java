@@ -48,6 +48,7 @@ import java.util.UUID;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
 
 /**
  * Elassandra CQL types mapping tests.
@@ -488,5 +489,56 @@ public class CqlTypesTests extends ESSingleNodeTestCase {
         assertThat(resp.getHits().getTotalHits(), equalTo(2L));
         assertThat(resp.getFailedShards(), equalTo(0));
     }
+    
+    // _source rendered from the row columns, or from a map when the row has a collection.
+    @Test
+    public void testRowSourceRendering() throws Exception {
+        createIndex("ks2");
+        ensureGreen("ks2");
+        
+        process(ConsistencyLevel.ONE,
+                "CREATE TABLE ks2.natives (c1 text primary key, c2 text, c3 timestamp, c4 int, c5 bigint, c6 double, c7 float, c8 boolean, c9 blob, c10 uuid, c11 timeuuid, c12 smallint, c13 inet)");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks2.lists (c1 text primary key, c2 text, c3 list<text>)");
+        assertAcked(client().admin().indices().preparePutMapping("ks2").setType("natives")
+                .setSource("{ \"natives\" : { \"discover\" : \".*\", \"properties\": { \"c2\":{ \"type\":\"keyword\" }}}}").get());
+        assertAcked(client().admin().indices().preparePutMapping("ks2").setType("lists")
+                .setSource("{ \"lists\" : { \"discover\" : \".*\"}}").get());
+        
+        process(ConsistencyLevel.ONE,"insert into ks2.natives (c1,c2,c3,c4,c5,c6,c7,c8,c9,c10,c11,c12,c13) VALUES ('tutu', 'ti\"ti', '2016-11-11', 1, 45, 1.5, 2.23, false, textAsBlob('hello'), ae8c9260-dd02-11e6-b9d5-bbfb41c263ba, ae8c9260-dd02-11e6-b9d5-bbfb41c263ba, 3, '10.0.0.1')");
+        process(ConsistencyLevel.ONE,"insert into ks2.lists (c1,c2,c3) VALUES ('tutu', 'titi', ['a','b'])");
+        
+        Map<String,Object> source = client().prepareGet("ks2", "natives", "tutu").get().getSource();
+        assertThat(source.get("c1"), equalTo("tutu"));
+        assertThat(source.get("c2"), equalTo("ti\"ti"));
+        assertThat(source.get("c3"), notNullValue());
+        assertThat(source.get("c4"), equalTo(1));
+        assertThat(source.get("c5"), equalTo(45));
+        assertThat(source.get("c6"), equalTo(1.5));
+        assertThat(source.get("c7"), equalTo(2.23));
+        assertThat(source.get("c8"), equalTo(false));
+        assertThat(source.get("c9"), equalTo("aGVsbG8="));
+        assertThat(source.get("c10"), equalTo("ae8c9260-dd02-11e6-b9d5-bbfb41c263ba"));
+        assertThat(source.get("c11"), equalTo("ae8c9260-dd02-11e6-b9d5-bbfb41c263ba"));
+        assertThat(source.get("c12"), equalTo(3));
+        assertThat(source.get("c13"), equalTo("10.0.0.1"));
+        assertThat(client().prepareSearch("ks2").setTypes("natives").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getHits()[0].getSource(), equalTo(source));
+        
+        source = client().prepareGet("ks2", "lists", "tutu").get().getSource();
+        assertThat(source.get("c2"), equalTo("titi"));
+        assertThat(source.get("c3"), equalTo(java.util.Arrays.asList("a","b")));
+        assertThat(client().prepareSearch("ks2").setTypes("lists").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getHits()[0].getSource(), equalTo(source));
+    }
+    
+    @Test
+    public void testPreparedStatementInvalidation() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks4 WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks4.t1 (c1 text primary key, c2 text)");
+        process(ConsistencyLevel.ONE,"INSERT INTO ks4.t1 (c1, c2) VALUES (?, ?)", "a", "b");
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM ks4.t1 WHERE c1 = ?", "a").one().getString("c2"), equalTo("b"));
+        
+        // the cached SELECT * must see the new column after a schema change.
+        process(ConsistencyLevel.ONE,"ALTER TABLE ks4.t1 ADD c3 int");
+        process(ConsistencyLevel.ONE,"INSERT INTO ks4.t1 (c1, c2, c3) VALUES (?, ?, ?)", "a", "b", 3);
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM ks4.t1 WHERE c1 = ?", "a").one().getInt("c3"), equalTo(3));
+    }
 }
-
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.hamcrest.Matchers.equalTo;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elassandra.index.ElasticIdCodec;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+
+/**
+ * Check that the _id encoding is compatible with the JSON arrays written and read with Jackson.
+ */
+public class ElasticIdCodecTests extends ESTestCase {
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    
+    private String jacksonEncode(Object[] cols) throws Exception {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < cols.length; i++) {
+            if (i > 0)
+                sb.append(",");
+            Object val = ElasticIdCodec.toIdValue(cols[i]);
+            sb.append(val instanceof String ? jsonMapper.writeValueAsString(val) : val);
+        }
+        return sb.append("]").toString();
+    }
+    
+    private void assertRoundTrip(Object... cols) throws Exception {
+        String id = ElasticIdCodec.encode(cols, cols.length);
+        assertThat(id, equalTo(jacksonEncode(cols)));
+        
+        Object[] elements = jsonMapper.readValue(id, Object[].class);
+        String[] decoded = ElasticIdCodec.decode(id);
+        assertThat(decoded.length, equalTo(elements.length));
+        for(int i = 0; i < elements.length; i++) {
+            if (elements[i] instanceof Number)
+                assertThat(new BigDecimal(decoded[i]).compareTo(new BigDecimal(elements[i].toString())), equalTo(0));
+            else
+                assertThat(decoded[i], equalTo(elements[i].toString())); // strings and booleans
+        }
+    }
+    
+    @Test
+    public void testNativeTypes() throws Exception {
+        assertRoundTrip("a", 1, 2L, 3.5d, 4.25f, true, new BigDecimal("12.50"));
+        assertRoundTrip(UUID.randomUUID(), new Date(1500000000000L), InetAddress.getByName("10.0.0.1"), InetAddress.getByName("::1"));
+        assertRoundTrip(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), (short)5, (byte)6);
+    }
+    
+    @Test
+    public void testEscapedStrings() throws Exception {
+        assertRoundTrip("with \"quotes\"", "back\\slash", "tab\tnew\nline\rreturn\bbell\f", "control\u0001\u001f", "unicode é中/slash");
+        for(int i = 0; i < 100; i++)
+            assertRoundTrip(randomRealisticUnicodeOfLengthBetween(0, 20), randomUnicodeOfLengthBetween(0, 20), randomLong());
+    }
+    
+    @Test
+    public void testSingleColumn() throws Exception {
+        assertThat(ElasticIdCodec.encode(new Object[] { "a\"b" }, 1), equalTo("a\"b"));
+        assertThat(ElasticIdCodec.encode(new Object[] { 12 }, 1), equalTo("12"));
+        assertFalse(ElasticIdCodec.isComposite("12"));
+        assertTrue(ElasticIdCodec.isComposite("[\"a\",1]"));
+    }
+    
+    @Test
+    public void testDecodeJacksonLayout() throws Exception {
+        assertArrayEquals(new String[] { "a,b", "1", "2.5E10", "c]" }, ElasticIdCodec.decode(" [ \"a,b\" , 1,2.5E10 ,\"c]\"\n]"));
+        assertArrayEquals(new String[] { "é/" }, ElasticIdCodec.decode("[\"\\u00E9\\/\"]"));
+        assertArrayEquals(new String[] {}, ElasticIdCodec.decode("[]"));
+        expectThrows(IllegalArgumentException.class, () -> ElasticIdCodec.decode("[\"a\""));
+        expectThrows(IllegalArgumentException.class, () -> ElasticIdCodec.decode("[1,null]"));
+        expectThrows(IllegalArgumentException.class, () -> ElasticIdCodec.decode("[1,]"));
+    }
+}
@@ -18,13 +18,18 @@ package org.elassandra;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.TokenRangeIndexRebuilder;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
@@ -85,6 +90,41 @@ public class IndexBuildTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(2*N));
     }
     
+    @Test
+    public void indexTokenRangesRebuildTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t2 ( a int, b int, c text, s text static, primary key (a,b) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t2").setSource("{ \"t2\" : { \"discover\" : \".*\" }}").get());
+        
+        for(int j=0 ; j < N; j++)
+            process(ConsistencyLevel.ONE,"insert into test.t2 (a,b,c,s) VALUES (?,?,?,?)", j, 0, "x"+j, "s"+j);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t2").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(N));
+        
+        // close index, new rows are only in memtables.
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        for(int j=0 ; j < N; j++)
+            for(int k=1 ; k < 3; k++)
+                process(ConsistencyLevel.ONE,"insert into test.t2 (a,b,c) VALUES (?,?,?)", j, k, "x"+j+"_"+k);
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+        
+        assertThat(client().admin().indices().prepareRebuild("test").setNumThreads(3).setRangeSplits(16).get().getFailedShards(), equalTo(0));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t2").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(3*N));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t2").setQuery(QueryBuilders.termQuery("s", "s1")).get().getHits().getTotalHits(), equalTo(3L));
+    }
+    
+    @Test
+    public void tokenRangesSplitTest() throws Exception {
+        List<Range<Token>> ranges = TokenRangeIndexRebuilder.split(7);
+        assertThat(ranges.size(), equalTo(7));
+        assertThat(ranges.get(0).left, equalTo(new LongToken(Long.MIN_VALUE)));
+        assertThat(ranges.get(6).right, equalTo(new LongToken(Long.MAX_VALUE)));
+        for(int i=1; i < ranges.size(); i++)
+            assertThat(ranges.get(i).left, equalTo(ranges.get(i-1).right));
+    }
+    
     @Test
     public void indexFirstBuildTest() throws Exception {
         createIndex("test");
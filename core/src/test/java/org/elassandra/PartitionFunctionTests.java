@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.elassandra.index.MessageFormatPartitionFunction;
+import org.elassandra.index.PartitionFunction;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+
+/**
+ * Check that compiled partition functions produce the same index names as MessageFormat.
+ */
+public class PartitionFunctionTests extends ESTestCase {
+    private final MessageFormatPartitionFunction partitionFunction = new MessageFormatPartitionFunction();
+    
+    private void assertSameFormat(String pattern, Object... args) {
+        PartitionFunction.Formatter formatter = partitionFunction.compile(pattern);
+        assertThat(formatter.format(args), equalTo(partitionFunction.format(pattern, args)));
+    }
+    
+    @Test
+    public void testConcatenation() throws Exception {
+        assertSameFormat("{0}", "test");
+        assertSameFormat("ks_{0}_{1}", "foo", "bar");
+        assertSameFormat("{1}-{0}", "foo", "bar");
+        assertSameFormat("index_'{0}'_{0}", "foo");
+        assertSameFormat("it''s_{0}", "foo");
+        assertSameFormat("{0}", UUID.randomUUID());
+        assertSameFormat("{0}_{1}", "foo", null);
+        assertSameFormat("{0}_{1}", "foo");
+        // numbers and dates are formatted by MessageFormat.
+        assertSameFormat("index_{0}", 123456789L);
+        assertSameFormat("index_{0}", new Date());
+    }
+    
+    @Test
+    public void testDate() throws Exception {
+        assertSameFormat("logs_{0,date,yyyy.MM.dd}", new Date());
+        assertSameFormat("logs_{0,date,yyyy-MM-dd HH}", new Date(0));
+        assertSameFormat("logs_{0,date,yyyyMMdd_HHmmss}", System.currentTimeMillis());
+        assertSameFormat("{1}_{0,date,yy.M.d}", new Date(), "foo");
+        // not compiled but still formatted.
+        assertSameFormat("logs_{0,date,yyyy.MMM.dd}", new Date());
+        assertSameFormat("logs_{0,date,short}", new Date());
+        assertSameFormat("logs_{0,number,#}", 12345);
+    }
+    
+    @Test
+    public void testCachedDatePeriod() throws Exception {
+        PartitionFunction.Formatter formatter = partitionFunction.compile("logs_{0,date,yyyy.MM.dd}");
+        long now = System.currentTimeMillis();
+        for(int i = 0; i < 1000; i++) {
+            Date date = new Date(now + randomIntBetween(-10, 10) * 3600 * 1000L + randomIntBetween(0, 3600 * 1000));
+            assertThat(formatter.format(date), equalTo(partitionFunction.format("logs_{0,date,yyyy.MM.dd}", date)));
+        }
+    }
+}
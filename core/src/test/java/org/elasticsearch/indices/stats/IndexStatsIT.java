@@ -684,7 +684,7 @@ public class IndexStatsIT extends ESIntegTestCase {
     public void testFlagOrdinalOrder() {
         Flag[] flags = new Flag[]{Flag.Store, Flag.Indexing, Flag.Get, Flag.Search, Flag.Merge, Flag.Flush, Flag.Refresh,
                 Flag.QueryCache, Flag.FieldData, Flag.Docs, Flag.Warmer, Flag.Completion, Flag.Segments,
-                Flag.Translog, Flag.Suggest, Flag.RequestCache, Flag.Recovery};
+                Flag.Translog, Flag.Suggest, Flag.RequestCache, Flag.Recovery, Flag.SecondaryIndex};
 
         assertThat(flags.length, equalTo(Flag.values().length));
         for (int i = 0; i < flags.length; i++) {
@@ -943,6 +943,9 @@ public class IndexStatsIT extends ESIntegTestCase {
             case Recovery:
                 builder.setRecovery(set);
                 break;
+            case SecondaryIndex:
+                builder.setSecondaryIndex(set);
+                break;
             default:
                 fail("new flag? " + flag);
                 break;
@@ -985,6 +988,8 @@ public class IndexStatsIT extends ESIntegTestCase {
                 return response.getRequestCache() != null;
             case Recovery:
                 return response.getRecoveryStats() != null;
+            case SecondaryIndex:
+                return response.getSecondaryIndex() != null;
             default:
                 fail("new flag? " + flag);
                 return false;